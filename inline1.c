@@ -0,0 +1,3 @@
+/* compiled with inline2.c: CMinusCompiler -program inline1.c inline2.c */
+
+int one(void) { return 1; }
@@ -0,0 +1,10 @@
+/* one() is inlined at the start of a block, after an if-else; this once
+   left a run of empty blocks that the jump optimizer could not remove */
+
+void main(void)
+{
+  int m;
+  m = input();
+  if (m == 1) { m = 2; } else { m = 3; }
+  output(one());
+}
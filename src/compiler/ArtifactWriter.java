@@ -0,0 +1,96 @@
+package compiler;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Writes the dumps of one compile on a background thread.  The compile
+ * prints each dump into a string while the code is in the state the dump
+ * shows, since the passes which follow change it, and hands the string over
+ * here; the file itself is written while the compile goes on.  Every compile
+ * shares the one writer thread.
+ */
+public class ArtifactWriter {
+  private static final ExecutorService WRITER =
+      Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable task) {
+          Thread thread = new Thread(task, "artifact writer");
+            // close() waits for anything a compile needs, so the JVM need not
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  private ArrayList<Future<Void>> pending = new ArrayList<Future<Void>>();
+
+  /**
+   * Write <code>text</code> to <code>fileName</code>, replacing it.
+   */
+  public void write(final String fileName, final String text) {
+    pending.add(WRITER.submit(new Callable<Void>() {
+      public Void call() throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(fileName));
+        try {
+          out.write(text);
+        }
+        finally {
+          out.close();
+        }
+        return null;
+      }
+    }));
+  }
+
+  /**
+   * Print <code>text</code> to <code>out</code>.
+   */
+  public void print(final PrintStream out, final String text) {
+    pending.add(WRITER.submit(new Callable<Void>() {
+      public Void call() {
+        out.print(text);
+        out.flush();
+        return null;
+      }
+    }));
+  }
+
+  /**
+   * Wait until everything handed over so far has been written.
+   * @throws IOException the first error writing any of it
+   */
+  public void close() throws IOException {
+    IOException error = null;
+    for (Future<Void> write : pending) {
+      try {
+        write.get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        if (error == null) {
+          error = new IOException("interrupted waiting for dumps");
+        }
+      }
+      catch (ExecutionException e) {
+        if (error == null) {
+          error = (e.getCause() instanceof IOException)
+              ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+      }
+    }
+    pending.clear();
+
+    if (error != null) {
+      throw error;
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package compiler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import parser.ParserType;
+
+/**
+ * Compiles many source files in one JVM, each with its own
+ * CompilationContext, on a work-stealing pool.  The largest files are started
+ * first so that one big file left until last cannot hold up the whole batch.
+ *
+ * usage: BatchCompiler [options] file... | @listfile
+ *
+ * A list file names one source file per line.  Besides the options of a
+ * single compile, <code>-threads=N</code> sets the number of compiles run at
+ * once, one per processor by default.  Only the .s files are written, a
+ * declaration at a time, unless <code>-keep</code> or
+ * <code>-emit=ast,ll,...</code> asks for dumps too, and output is cached in
+ * .outcache unless <code>-nocache</code> is given.  <code>-budget=MS</code>
+ * and <code>-filebudget=MS</code> bound the milliseconds each function and
+ * each file may take before the back end falls back to cheaper passes; see
+ * FunctionBackEnd.
+ */
+public class BatchCompiler {
+  private CompilationContext options;
+  private int threads;
+
+  public BatchCompiler(CompilationContext options, int threads) {
+    this.options = options;
+    this.threads = threads;
+  }
+
+  /**
+   * Compile every file in <code>sources</code>.
+   * @return the number of files which failed to compile
+   */
+  public int compileAll(String[] sources) throws IOException {
+    File[] files = new File[sources.length];
+    for (int i = 0; i < sources.length; i++) {
+      files[i] = new File(sources[i]);
+    }
+
+      // biggest first; the sort is stable, so equal sizes keep their order
+    File[] bySize = files.clone();
+    Arrays.sort(bySize, new Comparator<File>() {
+      public int compare(File a, File b) {
+        long diff = b.length() - a.length();
+        return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+      }
+    });
+
+      // in async mode queued tasks are taken oldest first, so they start in
+      // the order they were submitted
+    ForkJoinPool pool = new ForkJoinPool(threads,
+        ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+
+      // opened now so that every compile shares it
+    OutputCache outputCache = options.getOutputCache();
+
+    long start = System.nanoTime();
+    ArrayList<ForkJoinTask<String>> results = new ArrayList<ForkJoinTask<String>>();
+    for (File file : bySize) {
+      results.add(pool.submit(new CompileTask(options.forSource(file.getPath()))));
+    }
+
+    int failures = 0;
+    for (int i = 0; i < bySize.length; i++) {
+      String error;
+      try {
+        error = results.get(i).get();
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        error = "interrupted";
+      }
+      catch (ExecutionException e) {
+        error = e.getCause().toString();
+      }
+
+      if (error != null) {
+        System.err.println(bySize[i].getPath() + ": " + error);
+        failures++;
+      }
+    }
+    long end = System.nanoTime();
+    pool.shutdown();
+
+    double seconds = (end - start) / 1e9;
+    System.out.printf("compiled %d of %d files in %.2f s on %d threads: %.1f files/sec%n",
+        files.length - failures, files.length, seconds, threads,
+        files.length / seconds);
+    if (outputCache != null) {
+      System.out.printf("output cache: %d hits, %d misses%n",
+          outputCache.getHits(), outputCache.getMisses());
+      if (options.isIncremental()) {
+        System.out.printf("functions: %d reused, %d compiled%n",
+            outputCache.getFragmentHits(), outputCache.getFragmentMisses());
+      }
+    }
+
+    return failures;
+  }
+
+  /**
+   * One compile, which gives back null or why it failed.
+   */
+  private static class CompileTask implements Callable<String> {
+    private CompilationContext context;
+
+    public CompileTask(CompilationContext context) {
+      this.context = context;
+    }
+
+    public String call() throws IOException {
+      if (!new File(context.getSourceFile()).isFile()) {
+        return "no such file";
+      }
+
+      return new CMinusCompiler(context).compile() ? null : "did not parse";
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    CompilationContext options = new CompilationContext("");
+      // the files are already compiled in parallel, so a parser which splits
+      // each one up only competes with them
+    options.setParserType(ParserType.DESCENT);
+    options.setKeepIntermediates(false);
+    options.setPrintDebug(false);
+      // only the .s files are written, so each can be compiled a declaration
+      // at a time; -keep turns this off
+    options.setStreaming(true);
+    options.setOutputCacheDirectory(new File(".outcache"));
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    ArrayList<String> sources = new ArrayList<String>();
+    for (String arg : args) {
+      if (arg.startsWith("-threads=")) {
+        threads = Integer.parseInt(arg.substring(9));
+      }
+      else if (arg.startsWith("@")) {
+        readList(arg.substring(1), sources);
+      }
+      else if (!options.applyOption(arg)) {
+        sources.add(arg);
+      }
+    }
+
+    if (sources.isEmpty()) {
+      System.err.println("usage: BatchCompiler [options] file... | @listfile");
+      return;
+    }
+
+    int failures = new BatchCompiler(options, threads)
+        .compileAll(sources.toArray(new String[sources.size()]));
+    if (failures > 0) {
+      System.exit(1);
+    }
+  }
+
+  private static void readList(String listFile, ArrayList<String> sources)
+      throws IOException {
+    BufferedReader in = new BufferedReader(new FileReader(listFile));
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+        line = line.trim();
+        if (line.length() > 0) {
+          sources.add(line);
+        }
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+}
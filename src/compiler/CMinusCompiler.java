@@ -1,10 +1,12 @@
 package compiler;
 
 import parser.*;
-import scanner.CMinusScanner;
+import scanner.MappedCMinusScanner;
+import scanner.ParallelLexer;
 import lowlevel.*;
 import java.util.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 
 import optimizer.*;
 import x86codegen.*;
@@ -12,50 +14,219 @@ import dataflow.*;
 
 public class CMinusCompiler {
 
-  public static HashMap globalHash = new HashMap();
-  public static String filePrefix;
+  // part of every cache key, so bump it whenever the output can change
+  public static final String VERSION = "1.3";
 
-  public CMinusCompiler() {
+  private CompilationContext context;
+  private EmissionPolicy emission;
+  private ArtifactWriter artifacts = new ArtifactWriter();
+
+  public CMinusCompiler(CompilationContext context) {
+    this.context = context;
+    this.emission = context.getEmission();
   }
 
   public static void main(String[] args) throws IOException {
-    filePrefix = "test5";
-    String fileName = filePrefix + ".c";
-    Parser myParser = new CMinusParser(new CMinusScanner(fileName));
-
-    BufferedWriter out = new BufferedWriter(new FileWriter(filePrefix + ".ast"));
-    
-    Program parseTree = myParser.parse();
-    parseTree.printTree(out);
-    out.close();
+    if (args.length > 0 && args[0].equals("-daemon")) {
+        // stay resident and take compile requests; see CompileDaemon
+      CompileDaemon.main(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
+    if (args.length > 0 && (args[0].equals("-watch") || args[0].equals("--watch"))) {
+        // recompile sources as they change; see WatchCompiler
+      try {
+        WatchCompiler.main(Arrays.copyOfRange(args, 1, args.length));
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return;
+    }
+    if (args.length > 0 && args[0].equals("-program")) {
+        // several files as one program; see WholeProgramCompiler
+      WholeProgramCompiler.main(Arrays.copyOfRange(args, 1, args.length));
+      return;
+    }
 
-    CodeItem lowLevelCode = parseTree.genLLCode();
+    CompilationContext context = new CompilationContext("test5.c");
+    for (String arg : args) {
+      context.applyOption(arg);
+    }
 
-    fileName = filePrefix + ".ll";
-    PrintWriter outFile =
-        new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
-    lowLevelCode.printLLCode(outFile);
-    outFile.close();
+    new CMinusCompiler(context).compile();
+  }
+
+  /**
+   * Compile the source file of the context, writing the output files it
+   * names.
+   * @return false if the source did not parse
+   */
+  public boolean compile() throws IOException {
+    ByteBuffer source = MappedCMinusScanner.mapFile(context.getSourceFile());
+
+    OutputCache outputCache = context.getOutputCache();
+    boolean incremental = context.isIncremental() && outputCache != null;
+    if (incremental) {
+        // only the .s is written, so only the .s can be cached
+      context.setKeepIntermediates(false);
+    }
+
+    byte[] key = null;
+    if (outputCache != null) {
+      key = OutputCache.key(source, context);
+      if (outputCache.fetch(key, context)) {
+        return true;
+      }
+    }
+
+    if (incremental) {
+        // unchanged functions come from the cache; see IncrementalCompiler
+      if (!new IncrementalCompiler(context, outputCache).compile(source)) {
+        return false;
+      }
+      outputCache.store(key, context);
+      return true;
+    }
+
+    if (context.isStreaming() && !context.isSinglePass() &&
+        !context.getKeepIntermediates() && !context.getPrintDebug()) {
+        // one declaration at a time, so memory grows with the largest
+        // function rather than the program; see StreamingCompiler
+      if (!new StreamingCompiler(context).compile(source)) {
+        return false;
+      }
+      if (outputCache != null) {
+        outputCache.store(key, context);
+      }
+      return true;
+    }
+
+    boolean compiled = compileProgram(source);
+      // the dumps must be on disk before they can be cached
+    artifacts.close();
+    if (!compiled) {
+      return false;
+    }
+
+    if (outputCache != null) {
+      outputCache.store(key, context);
+    }
+    return true;
+  }
+
+  /**
+   * Take the whole program through every phase, writing the .s file and the
+   * dumps the emission policy asks for.
+   * @return false if the source did not parse
+   */
+  private boolean compileProgram(ByteBuffer source) throws IOException {
+    CompileBudget budget = CompileBudget.start(context);
+    CodeItem lowLevelCode;
+    if (context.isSinglePass()) {
+        // straight from tokens to low-level code, with no tree to print or
+        // simplify
+      lowLevelCode = new CMinusTranslator(ParallelLexer.scan(source)).translate();
+      if (lowLevelCode == null) {
+        return false;
+      }
+    }
+    else if (context.getParserType() == ParserType.FLAT) {
+        // lowered straight from the arrays of the flat tree, so no node
+        // objects are built; it is not simplified
+      FlatAst flatTree = new FlatParser(ParallelLexer.scan(source)).parse();
+      if (flatTree == null) {
+        return false;
+      }
+
+      if (emission.isOn(EmissionPolicy.Dump.AST)) {
+        StringWriter text = new StringWriter();
+        BufferedWriter out = new BufferedWriter(text);
+        flatTree.printTree(out);
+        out.close();
+        artifacts.write(context.getOutputFile(".ast"), text.toString());
+      }
+
+      lowLevelCode = flatTree.genLLCode();
+    }
+    else {
+      Program parseTree;
+      if (context.getAstCacheDirectory() != null) {
+        AstCache astCache = new AstCache(context.getAstCacheDirectory(),
+            context.getAstCacheBytes(), context.getParserType());
+        parseTree = astCache.parse(source);
+      }
+      else {
+        parseTree = context.getParserType().create(ParallelLexer.scan(source)).parse();
+      }
+      if (parseTree == null) {
+        return false;
+      }
+
+      if (emission.isOn(EmissionPolicy.Dump.AST)) {
+        StringWriter text = new StringWriter();
+        BufferedWriter out = new BufferedWriter(text);
+        parseTree.printTree(out);
+        out.close();
+        artifacts.write(context.getOutputFile(".ast"), text.toString());
+      }
+
+      parseTree.simplify();
+
+      // identical subexpressions are shared, so a block need only compute each once
+      SymbolTable symbols = new SymbolTable(parseTree.getIdentifiers());
+      symbols.setReuseValues(true);
+      lowLevelCode = parseTree.genLLCode(symbols);
+    }
+
+    dumpLLCode(lowLevelCode, EmissionPolicy.Dump.LL);
+
+    boolean printDebug = emission.isOn(EmissionPolicy.Dump.DEBUG);
+    if (context.isParallel()) {
+        // each function through the whole back end on its own task; see
+        // ParallelBackEnd
+      PrintWriter outFile =
+          new PrintWriter(new BufferedWriter(new FileWriter(context.getOutputFile(".s"))));
+      new ParallelBackEnd(new FunctionBackEnd(context, budget)).compile(lowLevelCode, outFile);
+      outFile.close();
+
+      dumpLLCode(lowLevelCode, EmissionPolicy.Dump.DEBUG);
+      return true;
+    }
+
+    if (budget != null) {
+        // a function at a time, so each is held to its own budget; the .opti
+        // and .x86 files are not written then
+      FunctionBackEnd backEnd = new FunctionBackEnd(context, budget);
+      for (CodeItem currItem = lowLevelCode; currItem != null;
+                                             currItem = currItem.getNextItem()) {
+        if (currItem instanceof Function) {
+          backEnd.compile((Function) currItem);
+        }
+      }
+
+      dumpLLCode(lowLevelCode, EmissionPolicy.Dump.DEBUG);
+      writeAssembly(lowLevelCode);
+      return true;
+    }
 
-    int optiLevel = 2;
     LowLevelCodeOptimizer lowLevelOpti =
-          new LowLevelCodeOptimizer(lowLevelCode, optiLevel);
+          new LowLevelCodeOptimizer(lowLevelCode, context.getOptiLevel());
     lowLevelOpti.optimize();
 
-    fileName = filePrefix + ".opti";
-    outFile =
-        new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
-    lowLevelCode.printLLCode(outFile);
-    outFile.close();
+    dumpLLCode(lowLevelCode, EmissionPolicy.Dump.OPTI);
 
     X86CodeGenerator x86gen = new X86CodeGenerator(lowLevelCode);
     x86gen.convertToX86();
 
-    fileName = filePrefix + ".x86";
-    outFile =
-        new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
-    lowLevelCode.printLLCode(outFile);
-    outFile.close();
+    dumpLLCode(lowLevelCode, EmissionPolicy.Dump.X86);
+
+    if (context.getOptiLevel() == 0) {
+        // every virtual reg in a stack slot: no flow analysis, no coloring
+      new X86StackAllocator(lowLevelCode).performAllocation();
+      dumpLLCode(lowLevelCode, EmissionPolicy.Dump.DEBUG);
+      writeAssembly(lowLevelCode);
+      return true;
+    }
 
 //    lowLevelCode.printLLCode(null);
 
@@ -72,22 +243,48 @@ public class CMinusCompiler {
 //    du.printAnalysis();
 
     LivenessAnalysis liveness = new LivenessAnalysis(lowLevelCode);
+    liveness.setPrintDebug(printDebug);
     liveness.performAnalysis();
-    liveness.printAnalysis();
+    if (printDebug) {
+      liveness.printAnalysis();
+    }
 
-    int numRegs = 7;
-    X86RegisterAllocator regAlloc = new X86RegisterAllocator(lowLevelCode, numRegs);
+    X86RegisterAllocator regAlloc =
+        new X86RegisterAllocator(lowLevelCode, context.getNumRegs());
+    regAlloc.setPrintDebug(printDebug);
     regAlloc.performAllocation();
 
-    lowLevelCode.printLLCode(null);
+    dumpLLCode(lowLevelCode, EmissionPolicy.Dump.DEBUG);
+    writeAssembly(lowLevelCode);
+    return true;
+  }
 
-    fileName = filePrefix + ".s";
-    outFile =
-        new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+  private void writeAssembly(CodeItem lowLevelCode) throws IOException {
+    PrintWriter outFile =
+        new PrintWriter(new BufferedWriter(new FileWriter(context.getOutputFile(".s"))));
     X86AssemblyGenerator assembler =
         new X86AssemblyGenerator(lowLevelCode, outFile);
     assembler.generateAssembly();
     outFile.close();
   }
 
+    // prints the code as it is now and hands it to the writer; nothing is
+    // printed if the policy has the dump off
+  private void dumpLLCode(CodeItem lowLevelCode, EmissionPolicy.Dump dump) {
+    if (!emission.isOn(dump)) {
+      return;
+    }
+
+    StringWriter text = new StringWriter();
+    PrintWriter out = new PrintWriter(text);
+    lowLevelCode.printLLCode(out);
+    out.close();
+    if (dump.getExtension() == null) {
+      artifacts.print(System.out, text.toString());
+    }
+    else {
+      artifacts.write(context.getOutputFile(dump.getExtension()), text.toString());
+    }
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,273 @@
+package compiler;
+
+import java.io.File;
+import java.io.IOException;
+
+import parser.ParserType;
+
+/**
+ * Everything one compile needs to know: the source file, where the output
+ * goes and the options it is compiled with.  A compile keeps all of its state
+ * here or in objects it creates itself, so any number of compiles with their
+ * own contexts can run at the same time.
+ */
+public class CompilationContext {
+  private String sourceFile;
+  private String outputPrefix;
+
+  private ParserType parserType = ParserType.PARALLEL;
+  private boolean singlePass = false;
+    // whether unchanged functions reuse their assembly; needs the output cache
+  private boolean incremental = false;
+    // whether the program is compiled a declaration at a time; only the .s
+    // file is written then
+  private boolean streaming = false;
+    // whether the functions go through the back end in parallel; the .opti
+    // and .x86 files are not written then
+  private boolean parallel = false;
+    // at 0 the jump optimizer, liveness and the graph coloring allocator are
+    // skipped, and every virtual reg lives in a stack slot
+  private int optiLevel = 2;
+  private int numRegs = 7;
+    // milliseconds each function, and the whole file, may take before the
+    // back end falls back to cheaper passes; 0 for no limit
+  private long functionBudget = 0;
+  private long fileBudget = 0;
+
+    // parsed programs are cached here, or not at all if null
+  private File astCacheDirectory = null;
+  private long astCacheBytes = 64L * 1024 * 1024;
+    // output is cached here, or not at all if null
+  private File outputCacheDirectory = null;
+  private long outputCacheBytes = 256L * 1024 * 1024;
+  private OutputCache outputCache = null;
+
+    // which of the .ast, .ll, .opti and .x86 files are written as well as
+    // the .s, and whether the final low-level code is printed
+  private EmissionPolicy emission = EmissionPolicy.all();
+
+  /**
+   * A context for compiling <code>sourceFile</code>, writing the output next
+   * to it under the same name less its <code>.c</code> extension.
+   */
+  public CompilationContext(String sourceFile) {
+    this.sourceFile = sourceFile;
+    if (sourceFile.endsWith(".c")) {
+      outputPrefix = sourceFile.substring(0, sourceFile.length() - 2);
+    }
+    else {
+      outputPrefix = sourceFile;
+    }
+  }
+
+  /**
+   * A copy of this context for compiling <code>sourceFile</code> with the same
+   * options.
+   */
+  public CompilationContext forSource(String sourceFile) {
+    CompilationContext context = new CompilationContext(sourceFile);
+    context.parserType = parserType;
+    context.singlePass = singlePass;
+    context.incremental = incremental;
+    context.streaming = streaming;
+    context.parallel = parallel;
+    context.optiLevel = optiLevel;
+    context.numRegs = numRegs;
+    context.functionBudget = functionBudget;
+    context.fileBudget = fileBudget;
+    context.astCacheDirectory = astCacheDirectory;
+    context.astCacheBytes = astCacheBytes;
+    context.outputCacheDirectory = outputCacheDirectory;
+    context.outputCacheBytes = outputCacheBytes;
+    context.outputCache = outputCache;
+    context.emission = emission.copy();
+    return context;
+  }
+
+  /**
+   * Apply a command line option which affects a single compile.
+   * @return false if <code>arg</code> is not such an option
+   */
+  public boolean applyOption(String arg) {
+    if (arg.startsWith("-parser=")) {
+      parserType = ParserType.valueOf(arg.substring(8).toUpperCase());
+    }
+    else if (arg.matches("-O[0-9]")) {
+      optiLevel = arg.charAt(2) - '0';
+    }
+    else if (arg.startsWith("-budget=")) {
+      functionBudget = Long.parseLong(arg.substring(8));
+    }
+    else if (arg.startsWith("-filebudget=")) {
+      fileBudget = Long.parseLong(arg.substring(12));
+    }
+    else if (arg.equals("-singlepass")) {
+      singlePass = true;
+    }
+    else if (arg.equals("-incremental")) {
+      incremental = true;
+      if (outputCacheDirectory == null) {
+        outputCacheDirectory = new File(".outcache");
+      }
+    }
+    else if (arg.equals("-streaming")) {
+      streaming = true;
+    }
+    else if (arg.equals("-parallel")) {
+      parallel = true;
+    }
+    else if (arg.equals("-nocache")) {
+      astCacheDirectory = null;
+      outputCacheDirectory = null;
+      outputCache = null;
+    }
+    else if (arg.equals("-outcache")) {
+      outputCacheDirectory = new File(".outcache");
+    }
+    else if (arg.startsWith("-outcache=")) {
+      outputCacheDirectory = new File(arg.substring(10));
+    }
+    else if (arg.equals("-astcache")) {
+      astCacheDirectory = new File(".astcache");
+    }
+    else if (arg.startsWith("-astcache=")) {
+      astCacheDirectory = new File(arg.substring(10));
+    }
+    else if (arg.equals("-keep")) {
+      emission.setIntermediates(true);
+    }
+    else if (arg.startsWith("-emit=")) {
+      emission = EmissionPolicy.parse(arg.substring(6));
+    }
+    else {
+      return false;
+    }
+
+    return true;
+  }
+
+  public String getSourceFile() {
+    return sourceFile;
+  }
+
+  /**
+   * The name of an output file, <code>extension</code> including its dot.
+   */
+  public String getOutputFile(String extension) {
+    return outputPrefix + extension;
+  }
+  public String getOutputPrefix() {
+    return outputPrefix;
+  }
+  public void setOutputPrefix(String prefix) {
+    outputPrefix = prefix;
+  }
+
+  public ParserType getParserType() {
+    return parserType;
+  }
+  public void setParserType(ParserType type) {
+    parserType = type;
+  }
+  public boolean isSinglePass() {
+    return singlePass;
+  }
+  public void setSinglePass(boolean singlePass) {
+    this.singlePass = singlePass;
+  }
+  public boolean isIncremental() {
+    return incremental;
+  }
+  public void setIncremental(boolean incremental) {
+    this.incremental = incremental;
+  }
+  public boolean isStreaming() {
+    return streaming;
+  }
+  public void setStreaming(boolean streaming) {
+    this.streaming = streaming;
+  }
+  public boolean isParallel() {
+    return parallel;
+  }
+  public void setParallel(boolean parallel) {
+    this.parallel = parallel;
+  }
+  public int getOptiLevel() {
+    return optiLevel;
+  }
+  public void setOptiLevel(int level) {
+    optiLevel = level;
+  }
+  public long getFunctionBudget() {
+    return functionBudget;
+  }
+  public void setFunctionBudget(long millis) {
+    functionBudget = millis;
+  }
+  public long getFileBudget() {
+    return fileBudget;
+  }
+  public void setFileBudget(long millis) {
+    fileBudget = millis;
+  }
+  public boolean isBudgeted() {
+    return functionBudget != 0 || fileBudget != 0;
+  }
+  public int getNumRegs() {
+    return numRegs;
+  }
+  public void setNumRegs(int numRegs) {
+    this.numRegs = numRegs;
+  }
+
+  public File getAstCacheDirectory() {
+    return astCacheDirectory;
+  }
+  public long getAstCacheBytes() {
+    return astCacheBytes;
+  }
+  public void setAstCache(File directory, long maxBytes) {
+    astCacheDirectory = directory;
+    astCacheBytes = maxBytes;
+  }
+
+  public File getOutputCacheDirectory() {
+    return outputCacheDirectory;
+  }
+  public void setOutputCacheDirectory(File directory) {
+    outputCacheDirectory = directory;
+  }
+
+  /**
+   * The output cache, opening it the first time it is asked for.  Contexts
+   * made from this one by forSource after that share it, so open it first if
+   * they are to run at the same time.
+   * @return the cache, or null if output is not cached
+   */
+  public OutputCache getOutputCache() throws IOException {
+    if (outputCache == null && outputCacheDirectory != null) {
+      outputCache = new OutputCache(outputCacheDirectory, outputCacheBytes);
+    }
+    return outputCache;
+  }
+
+  public EmissionPolicy getEmission() {
+    return emission;
+  }
+  public void setEmission(EmissionPolicy emission) {
+    this.emission = emission;
+  }
+  public boolean getKeepIntermediates() {
+    return emission.writesIntermediates();
+  }
+  public void setKeepIntermediates(boolean keep) {
+    emission.setIntermediates(keep);
+  }
+  public boolean getPrintDebug() {
+    return emission.isOn(EmissionPolicy.Dump.DEBUG);
+  }
+  public void setPrintDebug(boolean print) {
+    emission.setOn(EmissionPolicy.Dump.DEBUG, print);
+  }
+}
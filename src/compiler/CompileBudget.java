@@ -0,0 +1,72 @@
+package compiler;
+
+import lowlevel.Function;
+
+/**
+ * The time one compile may spend, per function and for the whole file.  The
+ * file's clock starts when the budget is made, and a function's when it
+ * reaches the back end; see FunctionBackEnd for what is given up when either
+ * runs out.  Each function compiled with less than it asked for is logged on
+ * standard error, with the reason, so a pathological function can be found.
+ */
+public class CompileBudget {
+  private String sourceFile;
+  private long functionNanos;
+    // System.nanoTime() the file must be done by, or 0 if it is unbounded
+  private long fileDeadline;
+
+  /**
+   * A budget of <code>functionMillis</code> for each function and
+   * <code>fileMillis</code> for the file, either 0 for no limit.
+   */
+  public CompileBudget(String sourceFile, long functionMillis, long fileMillis) {
+    this.sourceFile = sourceFile;
+    functionNanos = functionMillis * 1000000L;
+    fileDeadline = (fileMillis > 0) ? deadline(fileMillis * 1000000L) : 0;
+  }
+
+  /**
+   * The budget the options of <code>context</code> set, starting now.
+   * @return the budget, or null if the compile is unbounded
+   */
+  public static CompileBudget start(CompilationContext context) {
+    if (!context.isBudgeted()) {
+      return null;
+    }
+    return new CompileBudget(context.getSourceFile(),
+        context.getFunctionBudget(), context.getFileBudget());
+  }
+
+  /**
+   * The System.nanoTime() a function starting now must be done by: its own
+   * budget or what is left of the file's, whichever ends first.
+   * @return the deadline, or 0 if there is none
+   */
+  public long functionDeadline() {
+    if (functionNanos == 0) {
+      return fileDeadline;
+    }
+    long deadline = deadline(functionNanos);
+    if (fileDeadline != 0 && fileDeadline - deadline < 0) {
+      return fileDeadline;
+    }
+    return deadline;
+  }
+
+  public boolean isFileSpent() {
+    return fileDeadline != 0 && System.nanoTime() - fileDeadline > 0;
+  }
+
+  /**
+   * Log that <code>function</code> got less than it asked for, and why.
+   */
+  public void degraded(Function function, String reason) {
+    System.err.println(sourceFile + ": " + function.getName() + ": " + reason);
+  }
+
+    // never 0, which means no deadline
+  private static long deadline(long nanos) {
+    long deadline = System.nanoTime() + nanos;
+    return (deadline == 0) ? 1 : deadline;
+  }
+}
@@ -0,0 +1,200 @@
+package compiler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import parser.ParserType;
+
+/**
+ * Keeps the compiler resident so that a stream of small compiles pays for JVM
+ * startup and JIT warm-up once.  Requests arrive one per line on standard
+ * input and replies go to standard output, one line each:
+ *
+ * <pre>
+ *   compile &lt;id&gt; &lt;source&gt; &lt;output prefix&gt; [options]
+ *     -&gt; ok &lt;id&gt; &lt;ms&gt;  |  error &lt;id&gt; &lt;message&gt;
+ *   stats
+ *     -&gt; stats requests=N ok=N failed=N p50=Xms p99=Yms
+ *              cache_hits=N cache_misses=N function_hits=N function_misses=N
+ *   quit
+ * </pre>
+ *
+ * Fields are separated by whitespace and the options are those of a single
+ * compile.  Compiles run on a fixed number of threads, so replies can come
+ * back in a different order from their requests; the id says which is which.
+ * Anything the compiler itself prints goes to standard error, leaving
+ * standard output to the replies.
+ */
+public class CompileDaemon {
+    // latencies are kept for this many of the most recent requests
+  private static final int LATENCY_WINDOW = 4096;
+
+  private CompilationContext options;
+  private ExecutorService workers;
+  private PrintStream replies;
+  private OutputCache outputCache;
+
+  private int requests = 0;
+  private int failures = 0;
+  private long[] latencies = new long[LATENCY_WINDOW];
+
+  public CompileDaemon(CompilationContext options, int threads, PrintStream replies)
+      throws IOException {
+    this.options = options;
+      // opened now so that every compile shares it
+    this.outputCache = options.getOutputCache();
+    this.workers = Executors.newFixedThreadPool(threads);
+    this.replies = replies;
+  }
+
+  /**
+   * Serve requests from <code>in</code> until it ends or asks to quit, then
+   * finish the compiles already started.
+   */
+  public void serve(BufferedReader in) throws IOException {
+    String line;
+    while ((line = in.readLine()) != null) {
+      String[] fields = line.trim().split("\\s+");
+      if (fields[0].equals("quit")) {
+        break;
+      }
+      else if (fields[0].equals("stats")) {
+        reply(stats());
+      }
+      else if (fields[0].equals("compile") && fields.length >= 4) {
+        submit(fields);
+      }
+      else if (fields[0].length() > 0) {
+        reply("error - unknown request: " + line);
+      }
+    }
+
+    workers.shutdown();
+    try {
+      workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void submit(String[] fields) {
+    final String id = fields[1];
+    final CompilationContext context = options.forSource(fields[2]);
+    context.setOutputPrefix(fields[3]);
+    for (int i = 4; i < fields.length; i++) {
+      if (!context.applyOption(fields[i])) {
+        reply("error " + id + " unknown option " + fields[i]);
+        return;
+      }
+    }
+
+    workers.execute(new Runnable() {
+      public void run() {
+        long start = System.nanoTime();
+        String error;
+        try {
+          if (!new File(context.getSourceFile()).isFile()) {
+            error = "no such file";
+          }
+          else {
+            error = new CMinusCompiler(context).compile() ? null : "did not parse";
+          }
+        }
+        catch (Throwable e) {
+            // errors too, such as a stack overflow on deeply nested input;
+            // the client waits for a reply either way
+          error = e.toString();
+        }
+        long nanos = System.nanoTime() - start;
+
+        record(nanos, error == null);
+        if (error == null) {
+          reply(String.format("ok %s %.3f", id, nanos / 1e6));
+        }
+        else {
+          reply("error " + id + " " + error);
+        }
+      }
+    });
+  }
+
+  private synchronized void record(long nanos, boolean ok) {
+    latencies[requests % LATENCY_WINDOW] = nanos;
+    requests++;
+    if (!ok) {
+      failures++;
+    }
+  }
+
+  /**
+   * The request counts, and the median and 99th percentile latency of the
+   * most recent requests.
+   */
+  public synchronized String stats() {
+    int count = Math.min(requests, LATENCY_WINDOW);
+    long[] sorted = Arrays.copyOf(latencies, count);
+    Arrays.sort(sorted);
+
+    String stats = String.format("stats requests=%d ok=%d failed=%d p50=%.3fms p99=%.3fms",
+        requests, requests - failures, failures,
+        percentile(sorted, 50) / 1e6, percentile(sorted, 99) / 1e6);
+
+    if (outputCache != null) {
+      stats += " cache_hits=" + outputCache.getHits() + " cache_misses=" + outputCache.getMisses() +
+          " function_hits=" + outputCache.getFragmentHits() +
+          " function_misses=" + outputCache.getFragmentMisses();
+    }
+    return stats;
+  }
+
+  private static long percentile(long[] sorted, int percent) {
+    if (sorted.length == 0) {
+      return 0;
+    }
+    int rank = (int) Math.ceil(sorted.length * percent / 100.0) - 1;
+    return sorted[Math.max(rank, 0)];
+  }
+
+  private void reply(String line) {
+    synchronized (replies) {
+      replies.println(line);
+      replies.flush();
+    }
+  }
+
+  /**
+   * usage: CompileDaemon [-threads=N] [options]
+   */
+  public static void main(String[] args) throws IOException {
+    CompilationContext options = new CompilationContext("");
+    options.setParserType(ParserType.DESCENT);
+    options.setKeepIntermediates(false);
+    options.setPrintDebug(false);
+    options.setOutputCacheDirectory(new File(".outcache"));
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    for (String arg : args) {
+      if (arg.startsWith("-threads=")) {
+        threads = Integer.parseInt(arg.substring(9));
+      }
+      else if (!options.applyOption(arg)) {
+        System.err.println("unknown option " + arg);
+        return;
+      }
+    }
+
+    PrintStream replies = System.out;
+    System.setOut(System.err);
+
+    new CompileDaemon(options, threads, replies)
+        .serve(new BufferedReader(new InputStreamReader(System.in)));
+  }
+}
@@ -0,0 +1,124 @@
+package compiler;
+
+import java.util.EnumSet;
+
+/**
+ * Which dumps a compile produces besides the .s file.  Every dump is checked
+ * here before anything is printed for it, so a dump which is off costs
+ * nothing.
+ */
+public class EmissionPolicy {
+  public enum Dump {
+    AST(".ast"),
+    LL(".ll"),
+    OPTI(".opti"),
+    X86(".x86"),
+      // the final low-level code and the traces of the back-end passes, on
+      // standard output
+    DEBUG(null);
+
+    private String extension;
+
+    private Dump(String extension) {
+      this.extension = extension;
+    }
+
+    /**
+     * The extension of the file this dump is written to, or null if it goes
+     * to standard output.
+     */
+    public String getExtension() {
+      return extension;
+    }
+  }
+
+  private EnumSet<Dump> dumps;
+
+  private EmissionPolicy(EnumSet<Dump> dumps) {
+    this.dumps = dumps;
+  }
+
+  /**
+   * A policy with every dump on.
+   */
+  public static EmissionPolicy all() {
+    return new EmissionPolicy(EnumSet.allOf(Dump.class));
+  }
+
+  /**
+   * A policy with every dump off, so only the .s file is written.
+   */
+  public static EmissionPolicy none() {
+    return new EmissionPolicy(EnumSet.noneOf(Dump.class));
+  }
+
+  /**
+   * The policy named by a comma separated list of dumps, such as
+   * <code>ast,ll,debug</code>.  An empty list or <code>none</code> turns
+   * them all off.
+   */
+  public static EmissionPolicy parse(String list) {
+    EmissionPolicy policy = none();
+    for (String name : list.split(",")) {
+      if (name.length() > 0 && !name.equals("none")) {
+        policy.dumps.add(Dump.valueOf(name.toUpperCase()));
+      }
+    }
+    return policy;
+  }
+
+  public EmissionPolicy copy() {
+    return new EmissionPolicy(EnumSet.copyOf(dumps));
+  }
+
+  public boolean isOn(Dump dump) {
+    return dumps.contains(dump);
+  }
+  public void setOn(Dump dump, boolean on) {
+    if (on) {
+      dumps.add(dump);
+    }
+    else {
+      dumps.remove(dump);
+    }
+  }
+
+  /**
+   * Whether the file with <code>extension</code> is written.  The .s file
+   * always is.
+   */
+  public boolean writes(String extension) {
+    if (extension.equals(".s")) {
+      return true;
+    }
+    for (Dump dump : dumps) {
+      if (extension.equals(dump.getExtension())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Whether any dump is written to a file.
+   */
+  public boolean writesIntermediates() {
+    for (Dump dump : dumps) {
+      if (dump.getExtension() != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Turn every dump written to a file on or off.
+   */
+  public void setIntermediates(boolean on) {
+    for (Dump dump : Dump.values()) {
+      if (dump.getExtension() != null) {
+        setOn(dump, on);
+      }
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package compiler;
+
+import lowlevel.Function;
+import optimizer.LowLevelCodeOptimizer;
+import x86codegen.AllocationAbandonedException;
+import x86codegen.X86CodeGenerator;
+import x86codegen.X86RegisterAllocator;
+import x86codegen.X86StackAllocator;
+import dataflow.ControlFlowAnalysis;
+import dataflow.LivenessAnalysis;
+
+/**
+ * Takes one lowered function through the back end, at the level of the
+ * context and within its budget, leaving it ready to assemble.  Passes are
+ * made per call, so functions may go through the same FunctionBackEnd at
+ * the same time.
+ *
+ * With a budget, a function which runs out of time is finished cheaply
+ * rather than stalling the compile: the jump optimizer stops iterating
+ * where it is, and if the register allocator is still working, or cannot
+ * allocate the function at all, its regs are put in stack slots as at -O0.
+ * Once the file's budget is spent, each function left is compiled at -O0
+ * from the start.  Without one, the passes run to the end, and a function
+ * the allocator cannot handle fails the compile as before.
+ */
+public class FunctionBackEnd {
+  private CompilationContext context;
+  private CompileBudget budget;
+
+  /**
+   * @param budget the budget to hold functions to, or null for none
+   */
+  public FunctionBackEnd(CompilationContext context, CompileBudget budget) {
+    this.context = context;
+    this.budget = budget;
+  }
+
+  public void compile(Function function) {
+    int optiLevel = context.getOptiLevel();
+    long deadline = 0;
+    if (budget != null && optiLevel > 0) {
+      if (budget.isFileSpent()) {
+        budget.degraded(function, "file budget spent, compiled at -O0");
+        optiLevel = 0;
+      }
+      else {
+        deadline = budget.functionDeadline();
+      }
+    }
+
+    LowLevelCodeOptimizer lowLevelOpti =
+        new LowLevelCodeOptimizer(function, optiLevel);
+    lowLevelOpti.setDeadline(deadline);
+    if (!lowLevelOpti.optimize(function)) {
+      budget.degraded(function, "out of time, jump optimization stopped early");
+    }
+
+    new X86CodeGenerator(function).convertToX86(function);
+
+    if (optiLevel == 0 || !allocateRegisters(function, deadline)) {
+      new X86StackAllocator(function).performAllocation(function);
+    }
+  }
+
+    // colors the function's regs, returning false if the allocator gave up
+    // and the function is left for the stack allocator
+  private boolean allocateRegisters(Function function, long deadline) {
+    new ControlFlowAnalysis(function).performAnalysis(function);
+    LivenessAnalysis liveness = new LivenessAnalysis(function);
+    liveness.setPrintDebug(context.getPrintDebug());
+    liveness.setDeadline(deadline);
+    if (!liveness.performAnalysis(function)) {
+        // only a budget sets a deadline
+      budget.degraded(function,
+          "out of time in liveness analysis, regs put in stack slots");
+      return false;
+    }
+
+    X86RegisterAllocator regAlloc =
+        new X86RegisterAllocator(function, context.getNumRegs());
+    regAlloc.setPrintDebug(context.getPrintDebug());
+    regAlloc.setDeadline(deadline);
+    try {
+      regAlloc.performAllocation(function);
+      return true;
+    }
+    catch (AllocationAbandonedException e) {
+      if (budget == null) {
+        throw e;
+      }
+      budget.degraded(function, e.getMessage() + ", regs put in stack slots");
+      return false;
+    }
+  }
+}
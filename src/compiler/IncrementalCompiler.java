@@ -0,0 +1,140 @@
+package compiler;
+
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+
+import lowlevel.Function;
+import parser.SymbolTable;
+import scanner.TokenStream;
+import scanner.TokenType;
+import x86codegen.X86AssemblyGenerator;
+
+/**
+ * Compiles a program a function at a time, reusing the assembly of every
+ * function which has not changed since it was last compiled.
+ *
+ * Every pass after lowering works on one function at a time, and lowering a
+ * function only depends on its own tokens and on which names are globals
+ * when it is reached.  So the assembly of a function is cached under a
+ * fingerprint of exactly those, and the options which change the output.
+ * Declarations are streamed as StreamingCompiler does, and only the functions
+ * whose fingerprint misses are parsed, lowered and taken through the back
+ * end.  The .s file is written in source order from cached and new assembly,
+ * and is the same as a full compile writes.
+ */
+public class IncrementalCompiler extends StreamingCompiler {
+  private OutputCache cache;
+
+    // the globals declared so far, as a set and as the sum of their hashes
+  private HashSet<String> globals = new HashSet<String>();
+  private long globalsHash = 0;
+
+  private int reused = 0;
+  private int compiled = 0;
+
+  public IncrementalCompiler(CompilationContext context, OutputCache cache) {
+    super(context);
+    this.cache = cache;
+  }
+
+  protected void declaredGlobal(String name) {
+    if (globals.add(name)) {
+      globalsHash += hash(name);
+    }
+  }
+
+  protected boolean compileFunction(TokenStream declaration, SymbolTable symbols,
+                                    X86AssemblyGenerator assembler) throws IOException {
+    byte[] key = fingerprint(declaration.slice(declaration.position(), declaration.size()),
+        globalsHash);
+    String assembly = cache.fetchFragment(key);
+    if (assembly != null) {
+      reused++;
+    }
+    else {
+      Function function = lowerFunction(declaration, symbols);
+      if (function == null) {
+        return false;
+      }
+
+      assembly = X86AssemblyGenerator.assembleFunction(function);
+      cache.storeFragment(key, assembly);
+      compiled++;
+    }
+
+    assembler.generateFunction(assembly);
+    return true;
+  }
+
+  /**
+   * The number of functions whose assembly was reused by the last compile.
+   */
+  public int getReused() {
+    return reused;
+  }
+
+  /**
+   * The number of functions compiled from scratch by the last compile.
+   */
+  public int getCompiled() {
+    return compiled;
+  }
+
+  /**
+   * The cache key for the function made of <code>declaration</code>, with
+   * the globals summed up by <code>globalsHash</code>.
+   */
+  private byte[] fingerprint(TokenStream declaration, long globalsHash) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not available", e);
+    }
+
+    digest.update(CMinusCompiler.VERSION.getBytes());
+    digest.update((byte) 1);
+    digest.update((byte) context.getOptiLevel());
+    digest.update((byte) context.getNumRegs());
+      // output compiled within a budget may have been degraded, so it is
+      // never handed to a compile without one
+    digest.update((byte) (context.isBudgeted() ? 1 : 0));
+    for (int shift = 0; shift < 64; shift += 8) {
+      digest.update((byte) (globalsHash >>> shift));
+    }
+
+    for (TokenType type = declaration.peek(); type != TokenType.EOF; type = declaration.peek()) {
+      digest.update((byte) type.ordinal());
+      if (type == TokenType.ID) {
+        digest.update(declaration.symbolName().getBytes());
+        digest.update((byte) 0);
+      }
+      else if (type == TokenType.NUM) {
+        int value = declaration.intValue();
+        for (int shift = 0; shift < 32; shift += 8) {
+          digest.update((byte) (value >>> shift));
+        }
+      }
+      declaration.advance();
+    }
+
+    return digest.digest();
+  }
+
+  /**
+   * A 64-bit hash of a global's name.  The set of globals is hashed as the
+   * sum of these, so it does not depend on the order they were declared in.
+   */
+  private static long hash(String name) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < name.length(); i++) {
+      hash = (hash ^ name.charAt(i)) * 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    return hash ^ (hash >>> 33);
+  }
+}
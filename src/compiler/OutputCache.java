@@ -0,0 +1,536 @@
+package compiler;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import parser.ParserType;
+
+/**
+ * An on-disk cache of compiler output.  An entry holds the .s file of one
+ * compile and, if it kept them, its .ll, .opti and .x86 files, under the
+ * SHA-1 of the compiler version, the options which change the output and the
+ * source bytes.  A hit copies the files into place without running the
+ * compiler at all.  Entries can also be the assembly of single functions,
+ * under keys IncrementalCompiler makes.
+ *
+ * The files live in the cache directory named by key and extension.  Which
+ * keys are present is recorded in an index file which is memory-mapped, so a
+ * lookup is a few probes of an open addressing table rather than any file
+ * system calls.  The index is only touched while holding a lock on it, so
+ * the threads of a batch and separate processes can all share one cache.
+ *
+ * The entries are capped at a total size, and also at three quarters of the
+ * slots of the index; storing past either evicts the least recently used.
+ * Threads share a cache by sharing one OutputCache, as a process may only
+ * hold one lock on the index.
+ */
+public class OutputCache {
+  private static final int MAGIC = 0x434d4f43;
+  private static final int FORMAT_VERSION = 1;
+
+    // artifacts, as bits of an entry's artifact set; a fragment is the
+    // assembly of one function, cached on its own for incremental compiles
+  private static final String[] EXTENSIONS = { ".s", ".ll", ".opti", ".x86", ".fn" };
+  private static final int ASSEMBLY = 1;
+  private static final int FRAGMENT_INDEX = 4;
+  private static final int FRAGMENT = 1 << FRAGMENT_INDEX;
+
+    // the header: magic, format, slot count, entry count, total bytes, clock
+  private static final int HEADER_SIZE = 64;
+  private static final int COUNT = 12;
+  private static final int TOTAL_BYTES = 16;
+  private static final int CLOCK = 24;
+
+    // a slot: key, artifact set (0 if the slot is empty), size, last use
+  private static final int KEY_SIZE = 20;
+  private static final int ARTIFACTS = 20;
+  private static final int SIZE = 24;
+  private static final int LAST_USED = 32;
+  private static final int SLOT_SIZE = 40;
+
+  private File directory;
+  private long maxBytes;
+  private int slots;
+  private FileChannel channel;
+  private MappedByteBuffer index;
+
+  private int hits = 0;
+  private int misses = 0;
+  private int fragmentHits = 0;
+  private int fragmentMisses = 0;
+
+    // the most recently used fragments by hex key, if they are kept in memory
+  private LinkedHashMap<String, String> recentFragments = null;
+
+  public OutputCache(File directory, long maxBytes) throws IOException {
+    this(directory, maxBytes, 16384);
+  }
+
+  /**
+   * @param slots the number of entries the index can hold, a power of two
+   */
+  public OutputCache(File directory, long maxBytes, int slots) throws IOException {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+    this.slots = slots;
+    directory.mkdirs();
+
+    channel = new RandomAccessFile(new File(directory, "index"), "rw").getChannel();
+    index = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+        HEADER_SIZE + (long) slots * SLOT_SIZE);
+
+    FileLock lock = channel.lock();
+    try {
+      if (index.getInt(0) != MAGIC || index.getInt(4) != FORMAT_VERSION ||
+          index.getInt(8) != slots) {
+        reset();
+      }
+    }
+    finally {
+      lock.release();
+    }
+  }
+
+  /**
+   * The cache key for compiling <code>source</code> with the options of
+   * <code>context</code>.
+   */
+  public static byte[] key(ByteBuffer source, CompilationContext context) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-1 is not available", e);
+    }
+
+    digest.update(CMinusCompiler.VERSION.getBytes());
+    digest.update((byte) 0);
+    digest.update((byte) context.getOptiLevel());
+    digest.update((byte) context.getNumRegs());
+      // output compiled within a budget may have been degraded, so it is
+      // never handed to a compile without one
+    digest.update((byte) (context.isBudgeted() ? 1 : 0));
+    digest.update((byte) (context.isSinglePass() ? 1 : 0));
+      // the flat tree is lowered without being simplified
+    digest.update((byte) (context.getParserType() == ParserType.FLAT ? 1 : 0));
+    digest.update(source.duplicate());
+    return digest.digest();
+  }
+
+  /**
+   * Copy the output of the entry for <code>key</code> to the files
+   * <code>context</code> names, if there is an entry with every file the
+   * context wants.
+   * @return whether it was a hit
+   */
+  public boolean fetch(byte[] key, CompilationContext context) throws IOException {
+    int wanted = wanted(context);
+
+    if (lookup(key, wanted)) {
+      try {
+        for (int i = 0; i < FRAGMENT_INDEX; i++) {
+          if ((wanted & (1 << i)) != 0) {
+            Files.copy(artifact(key, i).toPath(),
+                new File(context.getOutputFile(EXTENSIONS[i])).toPath(),
+                StandardCopyOption.REPLACE_EXISTING);
+          }
+        }
+        countHit();
+        return true;
+      }
+      catch (IOException e) {
+        // evicted by someone else since the lookup
+        remove(key);
+      }
+    }
+
+    countMiss();
+    return false;
+  }
+
+  /**
+   * The artifacts <code>context</code> writes, one bit per extension.
+   */
+  private static int wanted(CompilationContext context) {
+    int wanted = 0;
+    for (int i = 0; i < FRAGMENT_INDEX; i++) {
+      if (context.getEmission().writes(EXTENSIONS[i])) {
+        wanted |= 1 << i;
+      }
+    }
+    return wanted;
+  }
+
+  /**
+   * Store the output files <code>context</code> names as the entry for
+   * <code>key</code>, then evict entries until the cache is back under its
+   * caps.
+   */
+  public void store(byte[] key, CompilationContext context) throws IOException {
+    int wanted = wanted(context);
+    int artifacts = 0;
+    long size = 0;
+    for (int i = 0; i < FRAGMENT_INDEX; i++) {
+      File output = new File(context.getOutputFile(EXTENSIONS[i]));
+      if ((wanted & (1 << i)) != 0 && output.isFile()) {
+        byte[] bytes = Files.readAllBytes(output.toPath());
+        writeArtifact(key, i, bytes);
+        artifacts |= 1 << i;
+        size += bytes.length;
+      }
+    }
+
+    if ((artifacts & ASSEMBLY) != 0) {
+      record(key, artifacts, size);
+    }
+  }
+
+  /**
+   * The assembly of a single function stored under <code>key</code> by
+   * storeFragment.
+   * @return the assembly text, or null if there is none
+   */
+  public String fetchFragment(byte[] key) throws IOException {
+    String assembly = recentFragment(key);
+    if (assembly != null) {
+      countFragmentHit();
+      return assembly;
+    }
+
+    if (lookup(key, FRAGMENT)) {
+      try {
+        assembly = new String(
+            Files.readAllBytes(artifact(key, FRAGMENT_INDEX).toPath()), "UTF-8");
+        rememberFragment(key, assembly);
+        countFragmentHit();
+        return assembly;
+      }
+      catch (IOException e) {
+        remove(key);
+      }
+    }
+
+    countFragmentMiss();
+    return null;
+  }
+
+  public void storeFragment(byte[] key, String assembly) throws IOException {
+    byte[] bytes = assembly.getBytes("UTF-8");
+    writeArtifact(key, FRAGMENT_INDEX, bytes);
+    record(key, FRAGMENT, bytes.length);
+    rememberFragment(key, assembly);
+  }
+
+  /**
+   * Also keep the <code>count</code> most recently used fragments in memory,
+   * for a process which compiles the same files over and over.  A key always
+   * names the same assembly, so these never go out of date, even once the
+   * entry has been evicted from disk.
+   */
+  public synchronized void keepFragmentsInMemory(final int count) {
+    recentFragments = new LinkedHashMap<String, String>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > count;
+      }
+    };
+  }
+
+  private synchronized String recentFragment(byte[] key) {
+    return (recentFragments == null) ? null : recentFragments.get(hex(key));
+  }
+
+  private synchronized void rememberFragment(byte[] key, String assembly) {
+    if (recentFragments != null) {
+      recentFragments.put(hex(key), assembly);
+    }
+  }
+
+  /**
+   * Whether there is an entry for <code>key</code> with all of
+   * <code>wanted</code>, marking it used if there is.
+   */
+  private synchronized boolean lookup(byte[] key, int wanted) throws IOException {
+    FileLock lock = channel.lock();
+    try {
+      int slot = find(key);
+      if (slot < 0 || (index.getInt(offset(slot) + ARTIFACTS) & wanted) != wanted) {
+        return false;
+      }
+
+      index.putLong(offset(slot) + LAST_USED, tick());
+      return true;
+    }
+    finally {
+      lock.release();
+    }
+  }
+
+  /**
+   * Enter <code>key</code> in the index once its files are in place, then
+   * evict entries until the cache is back under its caps.
+   */
+  private synchronized void record(byte[] key, int artifacts, long size) throws IOException {
+    FileLock lock = channel.lock();
+    try {
+      int slot = find(key);
+      if (slot >= 0) {
+        index.putLong(TOTAL_BYTES, index.getLong(TOTAL_BYTES) -
+            index.getLong(offset(slot) + SIZE));
+      }
+      else {
+        slot = insert(key);
+        index.putInt(COUNT, index.getInt(COUNT) + 1);
+      }
+
+      int at = offset(slot);
+      index.putInt(at + ARTIFACTS, artifacts);
+      index.putLong(at + SIZE, size);
+      index.putLong(at + LAST_USED, tick());
+      index.putLong(TOTAL_BYTES, index.getLong(TOTAL_BYTES) + size);
+
+      evict();
+    }
+    finally {
+      lock.release();
+    }
+  }
+
+  private void writeArtifact(byte[] key, int artifact, byte[] bytes) throws IOException {
+    // write a temporary file first so a reader never sees half of one
+    File temp = File.createTempFile(hex(key), ".tmp", directory);
+    try {
+      Files.write(temp.toPath(), bytes);
+      Files.move(temp.toPath(), artifact(key, artifact).toPath(),
+          StandardCopyOption.REPLACE_EXISTING);
+    }
+    finally {
+      temp.delete();
+    }
+  }
+
+  public synchronized void close() throws IOException {
+    channel.close();
+  }
+
+  public synchronized int getHits() {
+    return hits;
+  }
+
+  public synchronized int getMisses() {
+    return misses;
+  }
+
+  public synchronized int getFragmentHits() {
+    return fragmentHits;
+  }
+
+  public synchronized int getFragmentMisses() {
+    return fragmentMisses;
+  }
+
+  private synchronized void countFragmentHit() {
+    fragmentHits++;
+  }
+
+  private synchronized void countFragmentMiss() {
+    fragmentMisses++;
+  }
+
+  private synchronized void countHit() {
+    hits++;
+  }
+
+  private synchronized void countMiss() {
+    misses++;
+  }
+
+  private synchronized void remove(byte[] key) throws IOException {
+    FileLock lock = channel.lock();
+    try {
+      int slot = find(key);
+      if (slot >= 0) {
+        delete(slot);
+      }
+    }
+    finally {
+      lock.release();
+    }
+  }
+
+  /**
+   * Delete the least recently used entries until the cache fits both caps.
+   * Called with the index locked.
+   */
+  private void evict() {
+    while (index.getLong(TOTAL_BYTES) > maxBytes || index.getInt(COUNT) * 4 > slots * 3) {
+      int oldest = -1;
+      long oldestUse = Long.MAX_VALUE;
+      for (int slot = 0; slot < slots; slot++) {
+        int at = offset(slot);
+        if (index.getInt(at + ARTIFACTS) != 0 && index.getLong(at + LAST_USED) < oldestUse) {
+          oldest = slot;
+          oldestUse = index.getLong(at + LAST_USED);
+        }
+      }
+      if (oldest < 0) {
+        return;
+      }
+
+      delete(oldest);
+    }
+  }
+
+  /**
+   * Remove the entry in <code>slot</code> and its files, then move up any
+   * entries after it which could no longer be found past the hole.  Called
+   * with the index locked.
+   */
+  private void delete(int slot) {
+    byte[] key = keyAt(slot);
+    int artifacts = index.getInt(offset(slot) + ARTIFACTS);
+    for (int i = 0; i < EXTENSIONS.length; i++) {
+      if ((artifacts & (1 << i)) != 0) {
+        artifact(key, i).delete();
+      }
+    }
+    index.putLong(TOTAL_BYTES, index.getLong(TOTAL_BYTES) - index.getLong(offset(slot) + SIZE));
+    index.putInt(COUNT, index.getInt(COUNT) - 1);
+
+    int mask = slots - 1;
+    int hole = slot;
+    for (int next = (hole + 1) & mask; index.getInt(offset(next) + ARTIFACTS) != 0;
+         next = (next + 1) & mask) {
+      int home = home(keyAt(next));
+      // the entry at next may fill the hole if its home is not between them
+      if (((next - home) & mask) >= ((next - hole) & mask)) {
+        copySlot(next, hole);
+        hole = next;
+      }
+    }
+    clearSlot(hole);
+  }
+
+  /**
+   * The slot holding <code>key</code>, or -1.  Called with the index locked.
+   */
+  private int find(byte[] key) {
+    int mask = slots - 1;
+    for (int slot = home(key); index.getInt(offset(slot) + ARTIFACTS) != 0;
+         slot = (slot + 1) & mask) {
+      if (Arrays.equals(keyAt(slot), key)) {
+        return slot;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * Claim the empty slot <code>key</code> belongs in.  Eviction keeps a
+   * quarter of the slots empty, so there always is one.  Called with the
+   * index locked.
+   */
+  private int insert(byte[] key) {
+    int mask = slots - 1;
+    int slot = home(key);
+    while (index.getInt(offset(slot) + ARTIFACTS) != 0) {
+      slot = (slot + 1) & mask;
+    }
+
+    int at = offset(slot);
+    for (int i = 0; i < KEY_SIZE; i++) {
+      index.put(at + i, key[i]);
+    }
+    return slot;
+  }
+
+  private void reset() {
+    for (int i = 0; i < HEADER_SIZE + slots * SLOT_SIZE; i += 8) {
+      index.putLong(i, 0);
+    }
+    index.putInt(0, MAGIC);
+    index.putInt(4, FORMAT_VERSION);
+    index.putInt(8, slots);
+
+    // files the old index knew about are unreachable now
+    File[] old = directory.listFiles(new FilenameFilter() {
+      public boolean accept(File dir, String name) {
+        for (String extension : EXTENSIONS) {
+          if (name.endsWith(extension)) {
+            return true;
+          }
+        }
+        return name.endsWith(".tmp");
+      }
+    });
+    if (old != null) {
+      for (File file : old) {
+        file.delete();
+      }
+    }
+  }
+
+  private long tick() {
+    long clock = index.getLong(CLOCK) + 1;
+    index.putLong(CLOCK, clock);
+    return clock;
+  }
+
+  private int home(byte[] key) {
+    // the key is already a hash, so any four bytes of it will do
+    return ((key[0] & 0xff) | (key[1] & 0xff) << 8 | (key[2] & 0xff) << 16 |
+            (key[3] & 0xff) << 24) & (slots - 1);
+  }
+
+  private byte[] keyAt(int slot) {
+    byte[] key = new byte[KEY_SIZE];
+    int at = offset(slot);
+    for (int i = 0; i < KEY_SIZE; i++) {
+      key[i] = index.get(at + i);
+    }
+    return key;
+  }
+
+  private void copySlot(int from, int to) {
+    for (int i = 0; i < SLOT_SIZE; i++) {
+      index.put(offset(to) + i, index.get(offset(from) + i));
+    }
+  }
+
+  private void clearSlot(int slot) {
+    for (int i = 0; i < SLOT_SIZE; i += 8) {
+      index.putLong(offset(slot) + i, 0);
+    }
+  }
+
+  private static int offset(int slot) {
+    return HEADER_SIZE + slot * SLOT_SIZE;
+  }
+
+  private File artifact(byte[] key, int artifact) {
+    return new File(directory, hex(key) + EXTENSIONS[artifact]);
+  }
+
+  private static String hex(byte[] key) {
+    StringBuilder hex = new StringBuilder();
+    for (byte b : key) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+      hex.append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+}
@@ -0,0 +1,124 @@
+package compiler;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import lowlevel.CodeItem;
+import lowlevel.Data;
+import lowlevel.Function;
+import x86codegen.X86AssemblyGenerator;
+
+/**
+ * Takes the functions of a lowered program through the back end in parallel,
+ * one fork/join task per function.  Each task takes its function through
+ * the FunctionBackEnd and assembles it, so no state is shared between them.
+ * The assembly is then written in the order of the CodeItem chain, and is
+ * the same as a sequential compile writes.
+ *
+ * The tasks run in the fork/join pool of the caller, or in a shared pool if
+ * it is not in one, so a batch of parallel compiles shares the batch's
+ * threads.
+ * Because every function goes through all the passes at once, the low-level
+ * code between passes is never complete, and cannot be written out.
+ */
+public class ParallelBackEnd {
+  private static ForkJoinPool sharedPool;
+
+  private FunctionBackEnd backEnd;
+
+  public ParallelBackEnd(FunctionBackEnd backEnd) {
+    this.backEnd = backEnd;
+  }
+
+  /**
+   * The pool for compiles started outside of any fork/join pool, created the
+   * first time it is needed.
+   */
+  public static synchronized ForkJoinPool getPool() {
+    if (sharedPool == null) {
+      sharedPool = new ForkJoinPool();
+    }
+
+    return sharedPool;
+  }
+
+  /**
+   * Run all of <code>tasks</code> and wait for them.  A thread that is not a
+   * fork/join worker cannot fork, so then they are handed to the shared pool.
+   */
+  static void invokeAll(List<? extends ForkJoinTask<?>> tasks) {
+    if (ForkJoinTask.inForkJoinPool()) {
+      ForkJoinTask.invokeAll(tasks);
+    }
+    else {
+      getPool().invoke(new AllTasks(tasks));
+    }
+  }
+
+  /**
+   * Compile the program starting at <code>first</code> and write its
+   * assembly to <code>out</code>.
+   */
+  public void compile(CodeItem first, PrintWriter out) {
+    ArrayList<FunctionTask> tasks = new ArrayList<FunctionTask>();
+    for (CodeItem currItem = first; currItem != null;
+                                    currItem = currItem.getNextItem()) {
+      if (currItem instanceof Function) {
+        tasks.add(new FunctionTask((Function) currItem));
+      }
+    }
+    invokeAll(tasks);
+
+    X86AssemblyGenerator assembler = new X86AssemblyGenerator(null, out);
+    int next = 0;
+    for (CodeItem currItem = first; currItem != null;
+                                    currItem = currItem.getNextItem()) {
+      if (currItem instanceof Data) {
+        assembler.generateData((Data) currItem);
+      }
+      else {
+        assembler.generateFunction(tasks.get(next++).assembly);
+      }
+    }
+  }
+
+  /**
+   * The back end for one function, which leaves its assembly behind.
+   */
+  private class FunctionTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private Function function;
+    private String assembly;
+
+    public FunctionTask(Function function) {
+      this.function = function;
+    }
+
+    protected void compute() {
+      backEnd.compile(function);
+      assembly = X86AssemblyGenerator.assembleFunction(function);
+    }
+  }
+
+  /**
+   * Runs a list of tasks from inside the shared pool.
+   */
+  private static class AllTasks extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private List<? extends ForkJoinTask<?>> tasks;
+
+    public AllTasks(List<? extends ForkJoinTask<?>> tasks) {
+      this.tasks = tasks;
+    }
+
+    protected void compute() {
+      ForkJoinTask.invokeAll(tasks);
+    }
+  }
+}
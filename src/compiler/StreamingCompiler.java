@@ -0,0 +1,139 @@
+package compiler;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+
+import lowlevel.Data;
+import lowlevel.Function;
+import parser.CMinusParser;
+import parser.Declaration;
+import parser.ParallelParser;
+import parser.ParseErrorException;
+import parser.SymbolTable;
+import scanner.ParallelLexer;
+import scanner.TokenStream;
+import scanner.TokenType;
+import x86codegen.X86AssemblyGenerator;
+
+/**
+ * Compiles a program one top-level declaration at a time.  The source is
+ * scanned and cut into declarations as ParallelParser does, and each one is
+ * parsed, lowered, taken through the back end and written to the .s file
+ * before the next is parsed, so only one function's tree and low-level code
+ * are ever held at once.  Peak memory then grows with the largest function
+ * rather than the whole program; only the compact token arrays of the file
+ * are kept throughout.
+ *
+ * Every pass after lowering works on one function at a time, and lowering
+ * only needs the globals declared before a function, so the .s file is the
+ * same as a full compile writes.  No other output files are written.
+ */
+public class StreamingCompiler {
+  protected CompilationContext context;
+    // set up by each compile, so its budget starts with it
+  private FunctionBackEnd backEnd;
+
+  public StreamingCompiler(CompilationContext context) {
+    this.context = context;
+  }
+
+  /**
+   * Compile <code>source</code> to the .s file the context names.
+   * @return false if the source did not parse, in which case no .s file is
+   * left behind
+   */
+  public boolean compile(ByteBuffer source) throws IOException {
+    backEnd = new FunctionBackEnd(context, CompileBudget.start(context));
+    TokenStream tokens = ParallelLexer.scan(source);
+    int[] bounds = ParallelParser.findDeclarations(tokens);
+
+    SymbolTable symbols = new SymbolTable(tokens.getIdentifiers());
+    symbols.setReuseValues(true);
+
+    File output = new File(context.getOutputFile(".s"));
+    PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(output)));
+    X86AssemblyGenerator assembler = new X86AssemblyGenerator(null, out);
+
+    boolean parsed = true;
+    try {
+      for (int i = 0; parsed && i + 1 < bounds.length; i++) {
+        TokenStream declaration = tokens.slice(bounds[i], bounds[i + 1]);
+
+        if (declaration.peek(2) == TokenType.LEFT_PAREN) {
+          parsed = compileFunction(declaration, symbols, assembler);
+        }
+        else {
+          Declaration global = parse(declaration);
+          if (global == null) {
+            parsed = false;
+          }
+          else {
+            assembler.generateData((Data) global.genLLCode(symbols));
+            declaredGlobal(global.getID());
+          }
+        }
+      }
+    }
+    finally {
+      out.close();
+    }
+
+    if (!parsed) {
+      output.delete();
+    }
+    return parsed;
+  }
+
+  /**
+   * Compile the function made of <code>declaration</code> and emit its
+   * assembly.
+   * @return false if it did not parse
+   */
+  protected boolean compileFunction(TokenStream declaration, SymbolTable symbols,
+                                    X86AssemblyGenerator assembler) throws IOException {
+    Function function = lowerFunction(declaration, symbols);
+    if (function == null) {
+      return false;
+    }
+
+    assembler.generateFunction(function);
+    return true;
+  }
+
+  /**
+   * Note that a global called <code>name</code> has been declared.
+   */
+  protected void declaredGlobal(String name) {
+  }
+
+  /**
+   * Parse and lower the function made of <code>declaration</code>, then take
+   * it through the FunctionBackEnd.
+   * @return the function, ready to assemble, or null if it did not parse
+   */
+  protected Function lowerFunction(TokenStream declaration, SymbolTable symbols) {
+    Declaration parsed = parse(declaration);
+    if (parsed == null) {
+      return null;
+    }
+
+    parsed.simplify();
+    Function function = (Function) parsed.genLLCode(symbols);
+    backEnd.compile(function);
+    return function;
+  }
+
+  private static Declaration parse(TokenStream declaration) {
+    try {
+      return new CMinusParser(declaration).parseSingleDeclaration();
+    }
+    catch (ParseErrorException e) {
+      System.out.println(e);
+      return null;
+    }
+  }
+}
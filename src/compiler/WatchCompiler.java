@@ -0,0 +1,197 @@
+package compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches directories of C- sources and recompiles each file as it changes,
+ * keeping the compiler and its caches warm in between.
+ *
+ * Every .c file under the directories is compiled once at startup.  After
+ * that, a change to a file is compiled once the events for it stop arriving
+ * for a short while, so a save which writes a file several times is compiled
+ * once.  Compiles are incremental: only the functions of a file which changed
+ * are parsed and lowered again, and the assembly of the others comes from
+ * memory.  After each compile the time since the file was last written is
+ * reported, which is the wait between saving a file and having its assembly.
+ *
+ * usage: WatchCompiler [options] [directory...]
+ */
+public class WatchCompiler {
+    // how long events must stop arriving before the files are compiled
+  private static final long QUIET_MILLIS = 15;
+    // how many function fragments are kept in memory
+  private static final int FRAGMENTS_IN_MEMORY = 65536;
+
+  private CompilationContext options;
+  private OutputCache outputCache;
+  private PrintStream report;
+
+  private WatchService watcher;
+  private HashMap<WatchKey, Path> directories = new HashMap<WatchKey, Path>();
+
+  public WatchCompiler(CompilationContext options, PrintStream report) throws IOException {
+    this.options = options;
+    this.report = report;
+    this.watcher = FileSystems.getDefault().newWatchService();
+
+    outputCache = options.getOutputCache();
+    if (outputCache != null) {
+      outputCache.keepFragmentsInMemory(FRAGMENTS_IN_MEMORY);
+    }
+  }
+
+  /**
+   * Compile every source under <code>roots</code>, then recompile sources as
+   * they change, until interrupted.
+   */
+  public void watch(Path[] roots) throws IOException, InterruptedException {
+    final ArrayList<Path> sources = new ArrayList<Path>();
+    for (Path root : roots) {
+      register(root, sources);
+    }
+    for (Path source : sources) {
+      compile(source);
+    }
+    report.println("watching " + directories.size() + " directories");
+
+    while (true) {
+      LinkedHashSet<Path> changed = new LinkedHashSet<Path>();
+      WatchKey key = watcher.take();
+      do {
+        collect(key, changed);
+        key = watcher.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS);
+      } while (key != null);
+
+      for (Path source : changed) {
+        if (Files.isRegularFile(source)) {
+          compile(source);
+        }
+      }
+    }
+  }
+
+  /**
+   * Add the sources named by the events of <code>key</code> to
+   * <code>changed</code>, and start watching any new directories.
+   */
+  private void collect(WatchKey key, LinkedHashSet<Path> changed) throws IOException {
+    Path directory = directories.get(key);
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+        continue;
+      }
+
+      Path path = directory.resolve((Path) event.context());
+      if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE &&
+          Files.isDirectory(path)) {
+        ArrayList<Path> sources = new ArrayList<Path>();
+        register(path, sources);
+        changed.addAll(sources);
+      }
+      else if (isSource(path)) {
+        changed.add(path);
+      }
+    }
+
+    if (!key.reset()) {
+      directories.remove(key);
+    }
+  }
+
+  /**
+   * Watch <code>root</code> and every directory below it, adding the sources
+   * in them to <code>sources</code>.
+   */
+  private void register(Path root, final ArrayList<Path> sources) throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+          throws IOException {
+        WatchKey key = dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+        directories.put(key, dir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (isSource(file)) {
+          sources.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private void compile(Path source) {
+    CompilationContext context = options.forSource(source.toString());
+    int hits = (outputCache == null) ? 0 : outputCache.getFragmentHits();
+    int misses = (outputCache == null) ? 0 : outputCache.getFragmentMisses();
+
+    long start = System.nanoTime();
+    String result;
+    try {
+      result = new CMinusCompiler(context).compile() ? null : "did not parse";
+    }
+    catch (Exception e) {
+      result = e.toString();
+    }
+    long end = System.nanoTime();
+    long sinceEdit = System.currentTimeMillis() - new File(context.getSourceFile()).lastModified();
+
+    if (result != null) {
+      report.println(source + ": " + result);
+    }
+    else if (outputCache != null) {
+      report.printf("%s: %.1f ms, %d ms since edit, %d functions reused, %d compiled%n",
+          source, (end - start) / 1e6, sinceEdit,
+          outputCache.getFragmentHits() - hits, outputCache.getFragmentMisses() - misses);
+    }
+    else {
+      report.printf("%s: %.1f ms, %d ms since edit%n", source, (end - start) / 1e6, sinceEdit);
+    }
+  }
+
+  private static boolean isSource(Path path) {
+    return path.toString().endsWith(".c");
+  }
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    CompilationContext options = new CompilationContext("");
+    options.setKeepIntermediates(false);
+    options.setPrintDebug(false);
+    options.applyOption("-incremental");
+
+    ArrayList<Path> roots = new ArrayList<Path>();
+    for (String arg : args) {
+      if (!options.applyOption(arg)) {
+        roots.add(Paths.get(arg));
+      }
+    }
+    if (roots.isEmpty()) {
+      roots.add(Paths.get("."));
+    }
+
+      // the report goes to standard output, anything else the compiler
+      // prints to standard error
+    PrintStream report = System.out;
+    System.setOut(System.err);
+
+    new WatchCompiler(options, report).watch(roots.toArray(new Path[roots.size()]));
+  }
+}
@@ -0,0 +1,289 @@
+package compiler;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.concurrent.RecursiveAction;
+
+import lowlevel.CodeItem;
+import lowlevel.Data;
+import lowlevel.Function;
+import lowlevel.LowLevelException;
+import optimizer.CodeOptimizationException;
+import optimizer.InterproceduralOptimizer;
+import parser.Program;
+import parser.SymbolTable;
+import scanner.MappedCMinusScanner;
+import scanner.ParallelLexer;
+import x86codegen.AllocationAbandonedException;
+import x86codegen.X86AssemblyGenerator;
+
+/**
+ * Compiles several source files as one program.  Each file is parsed and
+ * lowered on its own, with the globals of every file in scope, and the
+ * results are linked into a single CodeItem chain.  The
+ * InterproceduralOptimizer then sees every call in the program before each
+ * function goes through the FunctionBackEnd.  A function the register
+ * allocator gives up on, or the back end fails on, once others are inlined
+ * into it is compiled as it was before inlining instead.
+ *
+ * usage: WholeProgramCompiler [options] [-o=FILE.s] file...
+ *
+ * With <code>-o</code> the program is written to one .s file.  Otherwise
+ * each source gets its own .s, holding its globals and those of its
+ * functions which are still called.  A global declared in several files is
+ * one variable, as it is when the files are compiled apart, but a function
+ * may only be defined once.  Only .s files are written.
+ */
+public class WholeProgramCompiler {
+  private CompilationContext options;
+    // the one .s file, or null to write one per source
+  private String outputFile;
+
+  public WholeProgramCompiler(CompilationContext options, String outputFile) {
+    this.options = options;
+    this.outputFile = outputFile;
+  }
+
+  /**
+   * Compile <code>sources</code> as one program.
+   * @return false if a source did not parse or the sources do not link
+   */
+  public boolean compile(String[] sources) throws IOException {
+    Program[] programs = new Program[sources.length];
+    LinkedHashSet<String> globals = new LinkedHashSet<String>();
+    for (int i = 0; i < sources.length; i++) {
+      programs[i] = options.getParserType().create(
+          ParallelLexer.scan(MappedCMinusScanner.mapFile(sources[i]))).parse();
+      if (programs[i] == null) {
+        System.err.println(sources[i] + ": did not parse");
+        return false;
+      }
+      globals.addAll(programs[i].getGlobalNames());
+    }
+
+      // each source's items, in order, and the chain of the whole program,
+      // which has each global only once
+    ArrayList<ArrayList<CodeItem>> items = new ArrayList<ArrayList<CodeItem>>();
+    HashSet<String> dataNames = new HashSet<String>();
+    HashMap<String, String> definedIn = new HashMap<String, String>();
+    CodeItem first = null;
+    CodeItem last = null;
+    for (int i = 0; i < sources.length; i++) {
+      programs[i].simplify();
+      SymbolTable symbols = new SymbolTable(programs[i].getIdentifiers());
+      symbols.setReuseValues(true);
+      for (String name : globals) {
+        symbols.declareGlobal(symbols.symbolFor(name));
+      }
+
+      ArrayList<CodeItem> sourceItems = new ArrayList<CodeItem>();
+      for (CodeItem currItem = programs[i].genLLCode(symbols); currItem != null;
+                                                currItem = currItem.getNextItem()) {
+        sourceItems.add(currItem);
+      }
+      items.add(sourceItems);
+      programs[i] = null;
+
+      for (CodeItem currItem : sourceItems) {
+        String error = null;
+        if (currItem instanceof Data) {
+          String name = ((Data) currItem).getName();
+          if (definedIn.containsKey(name)) {
+            error = name + " is already a function in " + definedIn.get(name);
+          }
+          else if (!dataNames.add(name)) {
+            continue;
+          }
+        }
+        else {
+          String name = ((Function) currItem).getName();
+          if (definedIn.containsKey(name)) {
+            error = name + " is already defined in " + definedIn.get(name);
+          }
+          else if (dataNames.contains(name)) {
+            error = name + " is already a global";
+          }
+          definedIn.put(name, sources[i]);
+        }
+        if (error != null) {
+          System.err.println(sources[i] + ": " + error);
+          return false;
+        }
+
+        if (first == null) {
+          first = currItem;
+        }
+        else {
+          last.setNextItem(currItem);
+        }
+        last = currItem;
+      }
+    }
+    if (last != null) {
+      last.setNextItem(null);
+    }
+
+    InterproceduralOptimizer ipo =
+        new InterproceduralOptimizer(first, options.getOptiLevel());
+    first = ipo.optimize();
+
+    CompileBudget budget = null;
+    if (options.isBudgeted()) {
+      budget = new CompileBudget((outputFile != null) ? outputFile : "program",
+          options.getFunctionBudget(), options.getFileBudget());
+    }
+    FunctionBackEnd backEnd = new FunctionBackEnd(options, budget);
+
+    ArrayList<FunctionTask> tasks = new ArrayList<FunctionTask>();
+    for (CodeItem currItem = first; currItem != null; currItem = currItem.getNextItem()) {
+      if (currItem instanceof Function) {
+        tasks.add(new FunctionTask((Function) currItem, ipo, backEnd));
+      }
+    }
+    if (options.isParallel()) {
+      ParallelBackEnd.invokeAll(tasks);
+    }
+    else {
+      for (FunctionTask task : tasks) {
+        task.invoke();
+      }
+    }
+    for (FunctionTask task : tasks) {
+      if (task.abandoned != null) {
+        System.err.println(task.function.getName() + ": " + task.abandoned
+            + ", compiled without inlining");
+        ipo.revertInlining(task.function);
+      }
+    }
+    first = ipo.dropUninlined();
+
+    if (outputFile != null) {
+      write(first, outputFile);
+      return true;
+    }
+
+      // each source gets back its own globals and whatever of its functions
+      // are left, which may be copies from before inlining
+    HashMap<String, Function> kept = new HashMap<String, Function>();
+    for (CodeItem currItem = first; currItem != null; currItem = currItem.getNextItem()) {
+      if (currItem instanceof Function) {
+        kept.put(((Function) currItem).getName(), (Function) currItem);
+      }
+    }
+    for (int i = 0; i < sources.length; i++) {
+      CodeItem sourceFirst = null;
+      CodeItem sourceLast = null;
+      for (CodeItem currItem : items.get(i)) {
+        if (currItem instanceof Function) {
+          currItem = kept.get(((Function) currItem).getName());
+          if (currItem == null) {
+            continue;
+          }
+        }
+        if (sourceFirst == null) {
+          sourceFirst = currItem;
+        }
+        else {
+          sourceLast.setNextItem(currItem);
+        }
+        sourceLast = currItem;
+      }
+      if (sourceLast != null) {
+        sourceLast.setNextItem(null);
+      }
+      write(sourceFirst, options.forSource(sources[i]).getOutputFile(".s"));
+    }
+    return true;
+  }
+
+  private void write(CodeItem first, String fileName) throws IOException {
+    PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(fileName)));
+    try {
+      new X86AssemblyGenerator(first, out).generateAssembly();
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  /**
+   * The back end for one function.  If the register allocator gives up on a
+   * function something was inlined into, or the back end fails on it, the
+   * copy from before inlining is compiled instead, and the reason is left behind so the copy can be put
+   * in the chain once every task is done.
+   */
+  private static class FunctionTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private Function function;
+    private InterproceduralOptimizer ipo;
+    private FunctionBackEnd backEnd;
+    private String abandoned;
+
+    public FunctionTask(Function function, InterproceduralOptimizer ipo,
+                        FunctionBackEnd backEnd) {
+      this.function = function;
+      this.ipo = ipo;
+      this.backEnd = backEnd;
+    }
+
+    protected void compute() {
+      try {
+        backEnd.compile(function);
+      }
+      catch (AllocationAbandonedException e) {
+        compileUninlined(e);
+      }
+      catch (LowLevelException e) {
+        compileUninlined(e);
+      }
+      catch (CodeOptimizationException e) {
+        compileUninlined(e);
+      }
+    }
+
+      // the back end failed on function, so compile the copy from before
+      // inlining instead, or fail too if nothing was inlined into it
+    private void compileUninlined(RuntimeException e) {
+      Function uninlined = ipo.getUninlined(function);
+      if (uninlined == null) {
+        throw e;
+      }
+      backEnd.compile(uninlined);
+      abandoned = e.getMessage();
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    CompilationContext options = new CompilationContext("");
+    options.setKeepIntermediates(false);
+    options.setPrintDebug(false);
+    String outputFile = null;
+
+    ArrayList<String> sources = new ArrayList<String>();
+    for (String arg : args) {
+      if (arg.startsWith("-o=")) {
+        outputFile = arg.substring(3);
+      }
+      else if (!options.applyOption(arg)) {
+        sources.add(arg);
+      }
+    }
+
+    if (sources.isEmpty()) {
+      System.err.println("usage: WholeProgramCompiler [options] [-o=FILE.s] file...");
+      return;
+    }
+
+    if (!new WholeProgramCompiler(options, outputFile)
+        .compile(sources.toArray(new String[sources.size()]))) {
+      System.exit(1);
+    }
+  }
+}
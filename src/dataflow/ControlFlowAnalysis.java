@@ -21,40 +21,44 @@ public class ControlFlowAnalysis {
       if (currItem instanceof Data) {
         continue;
       }
-      Function func = (Function) currItem;
-      for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
-           currBlock = currBlock.getNextBlock()) {
-          // for each block, we first find where it goes, and add its tgts to
-          // its outEdges.  For each tgt, we add this block to its inEdges
+      performAnalysis((Function) currItem);
+    }
+  }
 
-          // we look for branches and jmps; if last oper is not jmp, we also
-          // grab the following BB as tgt
-        for (Operation currOper = currBlock.getFirstOper(); currOper != null;
-             currOper = currOper.getNextOper() ) {
+    // annotates the blocks of one function, touching nothing outside it
+  public void performAnalysis (Function func) {
+    for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+         currBlock = currBlock.getNextBlock()) {
+        // for each block, we first find where it goes, and add its tgts to
+        // its outEdges.  For each tgt, we add this block to its inEdges
+
+        // we look for branches and jmps; if last oper is not jmp, we also
+        // grab the following BB as tgt
+      for (Operation currOper = currBlock.getFirstOper(); currOper != null;
+           currOper = currOper.getNextOper() ) {
+        if ( (currOper.getType() == Operation.OPER_JMP) ||
+             (currOper.isBranchOper()) ) {
+          int tgtNum;
+          BasicBlock tgt;
           if ( (currOper.getType() == Operation.OPER_JMP) ||
-               (currOper.isBranchOper()) ) {
-            int tgtNum;
-            BasicBlock tgt;
-            if ( (currOper.getType() == Operation.OPER_JMP) ||
-                 (currOper.isX86BranchOper()) ) {
-              tgtNum = ( (Integer) currOper.getSrcOperand(0).getValue()).intValue();
-              tgt = BasicBlock.getBlockFromNum(func,tgtNum);
-            }
-            else {
-              tgtNum = ( (Integer) currOper.getSrcOperand(2).getValue()).intValue();
-              tgt = BasicBlock.getBlockFromNum(func,tgtNum);
-            }
-          currBlock.addOutEdge(tgt);
-          tgt.addInEdge(currBlock);
+               (currOper.isX86BranchOper()) ) {
+            tgtNum = ( (Integer) currOper.getSrcOperand(0).getValue()).intValue();
+            tgt = BasicBlock.getBlockFromNum(func,tgtNum);
           }
-          if (currOper == currBlock.getLastOper()) {
-            if ( (currOper.getType() != Operation.OPER_JMP) &&
-                 (currOper.getType() != Operation.OPER_RETURN) ) {
-              BasicBlock next = currBlock.getNextBlock();
-              if (next != null) {
-                currBlock.addOutEdge(next);
-                next.addInEdge(currBlock);
-              }
+          else {
+            tgtNum = ( (Integer) currOper.getSrcOperand(2).getValue()).intValue();
+            tgt = BasicBlock.getBlockFromNum(func,tgtNum);
+          }
+        currBlock.addOutEdge(tgt);
+        tgt.addInEdge(currBlock);
+        }
+        if (currOper == currBlock.getLastOper()) {
+          if ( (currOper.getType() != Operation.OPER_JMP) &&
+               (currOper.getType() != Operation.OPER_RETURN) ) {
+            BasicBlock next = currBlock.getNextBlock();
+            if (next != null) {
+              currBlock.addOutEdge(next);
+              next.addInEdge(currBlock);
             }
           }
         }
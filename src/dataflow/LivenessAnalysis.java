@@ -6,11 +6,25 @@ import java.util.LinkedList;
 public class LivenessAnalysis {
 
   CodeItem firstItem;
+    // whether the in and out sets of each block are printed
+  private boolean printDebug = true;
+    // System.nanoTime() past which iteration stops, or 0 for none
+  private long deadline = 0;
 
   public LivenessAnalysis(CodeItem first) {
     firstItem = first;
   }
 
+  public void setPrintDebug(boolean print) {
+    printDebug = print;
+  }
+
+    // bounds the time performAnalysis(Function) spends iterating to a fixed
+    // point.  Stopping early only leaves the liveness of the opers unset
+  public void setDeadline(long nanoTime) {
+    deadline = nanoTime;
+  }
+
   public void performAnalysis() {
 
     for (CodeItem currItem = firstItem; currItem != null;
@@ -18,44 +32,49 @@ public class LivenessAnalysis {
       if (currItem instanceof Data) {
         continue;
       }
-      Function func = (Function) currItem;
-
-        // First, we need to set up necessary data structures
-
-        // We need to make an array which can be used to convert oper nums to
-        // oper pointers
-      func.makeOperConversionArray();
-        // sets up BitArraySets in function and in opers (the same BitArraySet
-        // is referenced in both the function and the oper)
-        // also sets up BitArraySets in each BasicBlock
-      func.setUpLiveness();
-
-        // Next, we need to set up and perform the BasicBlock level analysis
-
-        // We first determine the gen/kill set for each basic block, then we
-        // iterate until in/out sets are stable
-//      setUpGenKillSets(func);
+      performAnalysis((Function) currItem);
+    }
+  }
 
-        // We first determine the def and use sets for each basic block, then we
-        // iterate until in/out sets are stable
-      setUpDefAndUseSets(func);
+    // analyzes one function, touching nothing outside it.  Returns false if
+    // the deadline stopped it before the opers were annotated
+  public boolean performAnalysis(Function func) {
 
-      performIterationOnInOutSets (func);
+      // First, we need to set up necessary data structures
 
-        // to check liveness analysis, we look for things like defs which aren't
-        // live out (unused vars), and uses which are live into function
-        // (i.e. BB0; undefined vars)
-      checkLivenessAnalysis (func);
+      // We need to make an array which can be used to convert oper nums to
+      // oper pointers
+    func.makeOperConversionArray();
+      // sets up BitArraySets in function and in opers (the same BitArraySet
+      // is referenced in both the function and the oper)
+      // also sets up BitArraySets in each BasicBlock
+    func.setUpLiveness();
 
-        // we now have BB granularity
-        // to get Oper granularity, we need to do 2 things:
-        //    1. use IN/OUT sets to update opers
-        //    2. compute local register use (regs that aren't live out)
-      updateLivenessForOpers (func);
+      // Next, we need to set up and perform the BasicBlock level analysis
 
+      // We first determine the gen/kill set for each basic block, then we
+      // iterate until in/out sets are stable
+//      setUpGenKillSets(func);
 
+      // We first determine the def and use sets for each basic block, then we
+      // iterate until in/out sets are stable
+    setUpDefAndUseSets(func);
 
+    if (! performIterationOnInOutSets (func)) {
+      return false;
     }
+
+      // to check liveness analysis, we look for things like defs which aren't
+      // live out (unused vars), and uses which are live into function
+      // (i.e. BB0; undefined vars)
+    checkLivenessAnalysis (func);
+
+      // we now have BB granularity
+      // to get Oper granularity, we need to do 2 things:
+      //    1. use IN/OUT sets to update opers
+      //    2. compute local register use (regs that aren't live out)
+    updateLivenessForOpers (func);
+    return true;
   }
 
   private void setUpDefAndUseSets (Function func) {
@@ -128,11 +147,15 @@ public class LivenessAnalysis {
     }
   }
 
-  private void performIterationOnInOutSets (Function func) {
+    // returns false if the deadline passed before the sets were stable
+  private boolean performIterationOnInOutSets (Function func) {
 
     boolean somethingChanged = true;
 
     while (somethingChanged) {
+      if ( (deadline != 0) && (System.nanoTime() - deadline > 0) ) {
+        return false;
+      }
       somethingChanged = false;
 
         // iterate through all blocks, computing a new out set
@@ -168,6 +191,9 @@ public class LivenessAnalysis {
         }
       }
     }
+    if (!printDebug) {
+      return true;
+    }
     for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
                     currBlock = currBlock.getNextBlock()) {
       System.out.println("In For BB#"+currBlock.getBlockNum());
@@ -190,6 +216,7 @@ public class LivenessAnalysis {
       System.out.println();
       System.out.println();
     }
+    return true;
   }
 
     // things to check for:
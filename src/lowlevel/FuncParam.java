@@ -30,6 +30,8 @@ public class FuncParam {
   int dataType;
   String name;
   boolean isArray;
+    // the virtual register the parameter is moved into on entry
+  int regNum = -1;
     // FuncParams are maintained in a linked list.  This reference supports
     // the link structure.
   FuncParam nextParam;
@@ -83,6 +85,12 @@ public class FuncParam {
   public boolean getIsArray() {
     return isArray;
   }
+  public int getRegNum() {
+    return regNum;
+  }
+  public void setRegNum(int newRegNum) {
+    regNum = newRegNum;
+  }
 /***************************************************************************/
   // support methods
     // this method is used during printing of FuncParams.  It assumes there are
@@ -59,9 +59,7 @@ public class Function extends CodeItem {
   private BasicBlock firstUnconnectedBlock;
   private BasicBlock lastUnconnectedBlock;
     // controls whether any optimization should be done during code generation
-  private static boolean optimize;
-
-  private HashMap symbolTable;
+  private boolean optimize;
 
     // op nums of variables for which we have a live range (def-use).  Live
     // range is a set of op nums this live range spans
@@ -95,7 +93,6 @@ public class Function extends CodeItem {
     maxBlockNum = -1;
     maxOperNum = 0;
     currBlock = null;
-    symbolTable = new HashMap();
     maxRegNum = 0;
     returnBlock = null;
     firstUnconnectedBlock = null;
@@ -150,10 +147,6 @@ public class Function extends CodeItem {
     firstParam = param;
   }
 
-  public HashMap getTable () {
-    return symbolTable;
-  }
-
   public boolean getOptimize() {
     return optimize;
   }
@@ -0,0 +1,684 @@
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import lowlevel.*;
+
+  // Optimizations across function boundaries, for a whole program lowered
+  // into one CodeItem chain.  Calls are by name, and a function's address
+  // can't be taken, so every call of a function in the chain is visible here.
+  // That lets us
+  //   1. fold a param into its function when every call passes it the same
+  //      constant,
+  //   2. inline small functions which call nothing else in the program,
+  //   3. remove the functions main no longer reaches.
+  // It works on low-level code, before the JumpOptimizer.  Inlining makes
+  // callers bigger, which can leave the register allocator unable to
+  // allocate one, so a copy of each caller is kept from before anything was
+  // inlined into it, for revertInlining.
+public class InterproceduralOptimizer {
+
+    // the most opers a function may have and still be inlined
+  public static final int INLINE_LIMIT = 40;
+
+  CodeItem firstItem;
+  int optimizationLevel;
+    // the functions defined in the chain, by name
+  HashMap<String, Function> functions;
+    // each function something was inlined into -> a copy of it from before
+  HashMap<Function, Function> uninlined = new HashMap<Function, Function>();
+
+  public InterproceduralOptimizer(CodeItem first) {
+    this(first, 0);
+  }
+
+  public InterproceduralOptimizer(CodeItem first, int level) {
+    firstItem = first;
+    optimizationLevel = level;
+  }
+
+    // returns the first item of the chain, which is different if the first
+    // function was removed
+  public CodeItem optimize () {
+    if (optimizationLevel > 0) {
+      findFunctions();
+      propagateConstantParams();
+      inlineLeafCalls();
+      removeDeadFunctions();
+    }
+    return firstItem;
+  }
+
+  private void findFunctions () {
+    functions = new HashMap<String, Function>();
+    for (CodeItem currItem = firstItem; currItem != null;
+                                        currItem = currItem.getNextItem()) {
+      if (currItem instanceof Function) {
+        functions.put(((Function) currItem).getName(), (Function) currItem);
+      }
+    }
+  }
+
+/*************************************************************************/
+    // For each function, we find the params every call passes the same int
+    // constant to.  Uses of such a param are then replaced by the constant,
+    // if the function never writes the param.  The calls still pass it, so
+    // a use we can't replace (see isFoldable) still reads the right value.
+  public void propagateConstantParams () {
+      // the constant each call has passed so far, null once they differ;
+      // functions called with the wrong number of args are left out
+    HashMap<String, Operand[]> constantArgs = new HashMap<String, Operand[]>();
+    HashSet<String> badCalls = new HashSet<String>();
+
+    for (Function func : functions.values()) {
+      for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+                      currBlock = currBlock.getNextBlock()) {
+        for (Operation currOper = currBlock.getFirstOper(); currOper != null;
+                      currOper = currOper.getNextOper()) {
+          Function callee = getCallee(currOper);
+          if (callee == null) {
+            continue;
+          }
+          Operation []passes = findPasses(currOper);
+          if ( (passes == null) || (passes.length != countParams(callee)) ) {
+            badCalls.add(callee.getName());
+            continue;
+          }
+          Operand []constants = constantArgs.get(callee.getName());
+          if (constants == null) {
+            constants = new Operand[passes.length];
+            for (int i=0; i < passes.length; i++) {
+              if (passes[i].getSrcOperand(0).getType() == Operand.OPERAND_INT) {
+                constants[i] = passes[i].getSrcOperand(0);
+              }
+            }
+            constantArgs.put(callee.getName(), constants);
+            continue;
+          }
+          for (int i=0; i < passes.length; i++) {
+            Operand arg = passes[i].getSrcOperand(0);
+            if ( (constants[i] != null) &&
+                 ( (arg.getType() != Operand.OPERAND_INT) ||
+                   !arg.getValue().equals(constants[i].getValue()) ) ) {
+              constants[i] = null;
+            }
+          }
+        }
+      }
+    }
+
+    for (String name : constantArgs.keySet()) {
+      if (badCalls.contains(name) || name.equals("main")) {
+        continue;
+      }
+      Function func = functions.get(name);
+      Operand []constants = constantArgs.get(name);
+      FuncParam param = func.getfirstParam();
+      for (int i=0; i < constants.length; i++, param = param.getNextParam()) {
+        if ( (constants[i] != null) && !isWritten(func, param.getRegNum()) ) {
+          foldConstant(func, param.getRegNum(), constants[i]);
+        }
+      }
+    }
+  }
+
+  private void foldConstant (Function func, int regNum, Operand constant) {
+    for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      for (Operation currOper = currBlock.getFirstOper(); currOper != null;
+                    currOper = currOper.getNextOper()) {
+        for (int i=0; i < Operation.MAX_SRC_OPERANDS; i++) {
+          if (isReg(currOper.getSrcOperand(i), regNum) &&
+              isFoldable(currOper, i)) {
+            currOper.setSrcOperand(i, new Operand(constant));
+          }
+        }
+      }
+    }
+  }
+
+    // whether src operand i of oper may be an int.  These are the places the
+    // lowering itself puts constants: what a mov or pass moves, and the 2nd
+    // operand of an arithmetic op or compare whose 1st is a reg.  The x86
+    // code generator doesn't handle a compare of a constant with a reg.
+  private boolean isFoldable (Operation oper, int index) {
+    switch (oper.getType()) {
+      case Operation.OPER_ASSIGN:
+      case Operation.OPER_PASS:
+        return index == 0;
+      case Operation.OPER_ADD_I:
+      case Operation.OPER_SUB_I:
+      case Operation.OPER_MUL_I:
+      case Operation.OPER_DIV_I:
+      case Operation.OPER_LT:
+      case Operation.OPER_LTE:
+      case Operation.OPER_GT:
+      case Operation.OPER_GTE:
+      case Operation.OPER_EQUAL:
+      case Operation.OPER_NOTEQ:
+        return (index == 1) &&
+               (oper.getSrcOperand(0).getType() == Operand.OPERAND_REG);
+      default:
+        return false;
+    }
+  }
+
+  private boolean isWritten (Function func, int regNum) {
+    for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      for (Operation currOper = currBlock.getFirstOper(); currOper != null;
+                    currOper = currOper.getNextOper()) {
+        for (int i=0; i < Operation.MAX_DEST_OPERANDS; i++) {
+          if (isReg(currOper.getDestOperand(i), regNum)) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+/*************************************************************************/
+    // A call of a small function which calls nothing else in the program is
+    // replaced by a copy of its body.  Since such a function is never a
+    // caller itself, no function is inlined into a function being inlined.
+  public void inlineLeafCalls () {
+    HashSet<Function> inlinable = new HashSet<Function>();
+    for (Function func : functions.values()) {
+      if (isInlinable(func)) {
+        inlinable.add(func);
+      }
+    }
+
+    for (Function caller : functions.values()) {
+      if (inlinable.contains(caller)) {
+        continue;
+      }
+      for (BasicBlock currBlock = caller.getFirstBlock(); currBlock != null;
+                      currBlock = currBlock.getNextBlock()) {
+        Operation currOper = currBlock.getFirstOper();
+        while (currOper != null) {
+          Function callee = getCallee(currOper);
+          Operation []passes = null;
+          if ( (callee != null) && inlinable.contains(callee) ) {
+            passes = findPasses(currOper);
+          }
+          if ( (passes == null) || (passes.length != countParams(callee)) ) {
+            currOper = currOper.getNextOper();
+            continue;
+          }
+          if (!uninlined.containsKey(caller)) {
+            uninlined.put(caller, copyFunction(caller));
+          }
+            // the copy has no calls to inline, so carry on after it
+          currBlock = inlineCall(caller, currBlock, currOper, passes, callee);
+          currOper = currBlock.getFirstOper();
+        }
+      }
+    }
+  }
+
+  private boolean isInlinable (Function func) {
+    if (func.getName().equals("main")) {
+      return false;
+    }
+    for (FuncParam param = func.getfirstParam(); param != null;
+                   param = param.getNextParam()) {
+      if (param.getIsArray()) {
+        return false;
+      }
+    }
+
+    int numOpers = 0;
+    for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      for (Operation currOper = currBlock.getFirstOper(); currOper != null;
+                    currOper = currOper.getNextOper()) {
+        if ( (++numOpers > INLINE_LIMIT) || (getCallee(currOper) != null) ) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+    // replaces the call by the body of callee, and returns the block holding
+    // what followed the call
+  private BasicBlock inlineCall (Function caller, BasicBlock callBlock,
+                   Operation call, Operation []passes, Function callee) {
+      // callee's regs are renumbered past the caller's, and its return value
+      // goes in a reg of its own
+    int regOffset = caller.getMaxRegNum();
+    for (int i=0; i < callee.getMaxRegNum(); i++) {
+      caller.getNewRegNum();
+    }
+    int retReg = caller.getNewRegNum();
+
+      // the args are moved straight into the params
+    FuncParam param = callee.getfirstParam();
+    for (int i=0; i < passes.length; i++, param = param.getNextParam()) {
+      Operation mov = new Operation(Operation.OPER_ASSIGN, callBlock);
+      mov.setDestOperand(0, new Operand(Operand.OPERAND_REG,
+                                        new Integer(param.getRegNum() + regOffset)));
+      mov.setSrcOperand(0, passes[i].getSrcOperand(0));
+      callBlock.insertOperBefore(passes[i], mov);
+      callBlock.removeOper(passes[i]);
+    }
+
+      // nothing may be left in the call block, and a callee block may hold
+      // nothing but its entry, exit and return.  Such blocks would end up
+      // empty, and a run of empty blocks is more than the jump optimizer
+      // can remove, so none are made: what comes first goes in the call
+      // block, and callee blocks are only copied if something is left
+    boolean reuseCallBlock = (call.getPrevOper() == null);
+    boolean []isCopied = new boolean[callee.getMaxBlockNum()+1];
+    int numCopied = 0;
+    for (BasicBlock currBlock = callee.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      if (copyHoldsOpers(currBlock)) {
+        isCopied[currBlock.getBlockNum()] = true;
+        numCopied++;
+      }
+    }
+
+      // everything after the call moves to a block of its own
+    BasicBlock contBlock;
+    if (reuseCallBlock && (numCopied == 0)) {
+      contBlock = callBlock;
+    }
+    else {
+      contBlock = new BasicBlock(caller);
+    }
+    Operation nextOper = call.getNextOper();
+    callBlock.removeOper(call);
+    while ( (contBlock != callBlock) && (nextOper != null) ) {
+      Operation oper = nextOper;
+      nextOper = oper.getNextOper();
+      callBlock.removeOper(oper);
+      oper.setPrevOper(null);
+      oper.setNextOper(null);
+      contBlock.appendOper(oper);
+    }
+    Operation retMov = contBlock.getFirstOper();
+    if ( (retMov != null) && (retMov.getType() == Operation.OPER_ASSIGN) &&
+         isMacro(retMov.getSrcOperand(0), "RetReg") ) {
+      if (writesRetReg(callee)) {
+        retMov.setSrcOperand(0, new Operand(Operand.OPERAND_REG, new Integer(retReg)));
+      }
+      else {
+        retMov.setSrcOperand(0, new Operand(Operand.OPERAND_INT, new Integer(0)));
+      }
+    }
+
+      // a block of the caller for each copied block of callee
+    BasicBlock []copyOf = new BasicBlock[callee.getMaxBlockNum()+1];
+    ArrayList<BasicBlock> copies = new ArrayList<BasicBlock>();
+    for (BasicBlock currBlock = callee.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      if (!isCopied[currBlock.getBlockNum()]) {
+        continue;
+      }
+      BasicBlock copy;
+      if (reuseCallBlock && copies.isEmpty()) {
+        copy = callBlock;
+      }
+      else {
+        copy = new BasicBlock(caller);
+      }
+      copyOf[currBlock.getBlockNum()] = copy;
+      copies.add(copy);
+    }
+      // a block that isn't copied would fall through, so its jmps and
+      // branches go to the next copy, or to what followed the call
+    int []blockMap = new int[callee.getMaxBlockNum()+1];
+    int nextBlockNum = contBlock.getBlockNum();
+    for (BasicBlock currBlock = callee.getLastBlock(); currBlock != null;
+                    currBlock = currBlock.getPrevBlock()) {
+      if (isCopied[currBlock.getBlockNum()]) {
+        nextBlockNum = copyOf[currBlock.getBlockNum()].getBlockNum();
+      }
+      blockMap[currBlock.getBlockNum()] = nextBlockNum;
+    }
+
+    for (BasicBlock currBlock = callee.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      BasicBlock copy = copyOf[currBlock.getBlockNum()];
+      if (copy == null) {
+        continue;
+      }
+      boolean isExit = false;
+      for (Operation currOper = currBlock.getFirstOper(); currOper != null;
+                    currOper = currOper.getNextOper()) {
+        int type = currOper.getType();
+        if ( (type == Operation.OPER_FUNC_ENTRY) ||
+             (type == Operation.OPER_FUNC_EXIT) ) {
+          continue;
+        }
+        if (type == Operation.OPER_RETURN) {
+          isExit = true;
+          continue;
+        }
+        copy.appendOper(copyOper(currOper, copy, regOffset, retReg, blockMap));
+      }
+        // the else blocks follow the return block, so it can't always fall
+        // through to what followed the call
+      if (isExit && (currBlock.getNextBlock() != null)) {
+        Operation jmp = new Operation(Operation.OPER_JMP, copy);
+        jmp.setSrcOperand(0, new Operand(Operand.OPERAND_BLOCK,
+                                         new Integer(contBlock.getBlockNum())));
+        copy.appendOper(jmp);
+      }
+    }
+
+      // link callBlock -> copies -> contBlock -> what followed callBlock
+    if (contBlock == callBlock) {
+      return contBlock;
+    }
+    BasicBlock oldNext = callBlock.getNextBlock();
+    BasicBlock prevBlock = callBlock;
+    copies.add(contBlock);
+    for (BasicBlock copy : copies) {
+      if (copy == callBlock) {
+        continue;
+      }
+      prevBlock.setNextBlock(copy);
+      copy.setPrevBlock(prevBlock);
+      prevBlock = copy;
+    }
+    contBlock.setNextBlock(oldNext);
+    if (oldNext != null) {
+      oldNext.setPrevBlock(contBlock);
+    }
+    else {
+      caller.setLastBlock(contBlock);
+    }
+
+    return contBlock;
+  }
+
+    // whether the copy of block made by inlineCall holds any opers: entry,
+    // exit and return are not copied, but a return block that isn't last
+    // gets a jmp
+  private boolean copyHoldsOpers (BasicBlock block) {
+    for (Operation currOper = block.getFirstOper(); currOper != null;
+                  currOper = currOper.getNextOper()) {
+      int type = currOper.getType();
+      if (type == Operation.OPER_RETURN) {
+        if (block.getNextBlock() != null) {
+          return true;
+        }
+      }
+      else if ( (type != Operation.OPER_FUNC_ENTRY) &&
+                (type != Operation.OPER_FUNC_EXIT) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+    // a copy of oper for block, with regs moved up by regOffset and blocks
+    // renumbered by blockMap.  Writes of the return value go to retReg,
+    // unless it is negative
+  private Operation copyOper (Operation oper, BasicBlock block, int regOffset,
+                              int retReg, int []blockMap) {
+    Operation copy = new Operation(oper.getType(), block);
+    for (int i=0; i < Operation.MAX_SRC_OPERANDS; i++) {
+      if (oper.getSrcOperand(i) != null) {
+        copy.setSrcOperand(i, copyOperand(oper.getSrcOperand(i), regOffset, blockMap));
+      }
+    }
+    for (int i=0; i < Operation.MAX_DEST_OPERANDS; i++) {
+      Operand dest = oper.getDestOperand(i);
+      if (dest == null) {
+        continue;
+      }
+      if ( (retReg >= 0) && isMacro(dest, "RetReg") ) {
+        copy.setDestOperand(i, new Operand(Operand.OPERAND_REG, new Integer(retReg)));
+      }
+      else {
+        copy.setDestOperand(i, copyOperand(dest, regOffset, blockMap));
+      }
+    }
+    for (Attribute currAttr = oper.getAttribute(); currAttr != null;
+                   currAttr = currAttr.getNext()) {
+      copy.addAttribute(new Attribute(currAttr.getName(), currAttr.getValue()));
+    }
+    return copy;
+  }
+
+  private Operand copyOperand (Operand operand, int regOffset, int []blockMap) {
+    if (operand.getType() == Operand.OPERAND_REG) {
+      int regNum = ((Integer) operand.getValue()).intValue();
+      return new Operand(Operand.OPERAND_REG, new Integer(regNum + regOffset));
+    }
+    if (operand.getType() == Operand.OPERAND_BLOCK) {
+      int blockNum = ((Integer) operand.getValue()).intValue();
+      return new Operand(Operand.OPERAND_BLOCK, new Integer(blockMap[blockNum]));
+    }
+    return new Operand(operand);
+  }
+
+  private boolean writesRetReg (Function func) {
+    for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      for (Operation currOper = currBlock.getFirstOper(); currOper != null;
+                    currOper = currOper.getNextOper()) {
+        for (int i=0; i < Operation.MAX_DEST_OPERANDS; i++) {
+          if (isMacro(currOper.getDestOperand(i), "RetReg")) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+    // a copy of func, with the same regs.  Its blocks are renumbered in
+    // order, which changes nothing but their labels
+  private Function copyFunction (Function func) {
+    FuncParam firstParam = null;
+    FuncParam lastParam = null;
+    for (FuncParam param = func.getfirstParam(); param != null;
+                   param = param.getNextParam()) {
+      FuncParam copy = new FuncParam(param.getType(), param.getName(),
+                                     param.getIsArray());
+      copy.setRegNum(param.getRegNum());
+      if (lastParam == null) {
+        firstParam = copy;
+      }
+      else {
+        lastParam.setNextParam(copy);
+      }
+      lastParam = copy;
+    }
+
+    Function copy = new Function(func.getType(), func.getName(), firstParam);
+    for (int i=0; i < func.getMaxRegNum(); i++) {
+      copy.getNewRegNum();
+    }
+
+      // block0 comes with its FUNC_ENTRY
+    copy.createBlock0();
+    int []blockMap = new int[func.getMaxBlockNum()+1];
+    ArrayList<BasicBlock> copies = new ArrayList<BasicBlock>();
+    copies.add(copy.getFirstBlock());
+    blockMap[func.getFirstBlock().getBlockNum()] = copy.getFirstBlock().getBlockNum();
+    for (BasicBlock currBlock = func.getFirstBlock().getNextBlock();
+                    currBlock != null; currBlock = currBlock.getNextBlock()) {
+      BasicBlock blockCopy = new BasicBlock(copy);
+      copy.appendBlock(blockCopy);
+      blockMap[currBlock.getBlockNum()] = blockCopy.getBlockNum();
+      copies.add(blockCopy);
+    }
+
+    int copyIndex = 0;
+    for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      BasicBlock blockCopy = copies.get(copyIndex++);
+      for (Operation currOper = currBlock.getFirstOper(); currOper != null;
+                    currOper = currOper.getNextOper()) {
+        if (currOper.getType() != Operation.OPER_FUNC_ENTRY) {
+          blockCopy.appendOper(copyOper(currOper, blockCopy, 0, -1, blockMap));
+        }
+      }
+    }
+    return copy;
+  }
+
+    // the copy of func from before anything was inlined into it, or null
+  public Function getUninlined (Function func) {
+    return uninlined.get(func);
+  }
+
+    // puts the copy of func from before inlining in its place in the chain
+  public void revertInlining (Function func) {
+    Function copy = uninlined.remove(func);
+    if (copy == null) {
+      return;
+    }
+    copy.setNextItem(func.getNextItem());
+    if (firstItem == func) {
+      firstItem = copy;
+    }
+    else {
+      for (CodeItem currItem = firstItem; currItem != null;
+                                          currItem = currItem.getNextItem()) {
+        if (currItem.getNextItem() == func) {
+          currItem.setNextItem(copy);
+          break;
+        }
+      }
+    }
+    functions.put(copy.getName(), copy);
+  }
+
+    // lets the copies kept for revertInlining go, and removes the functions
+    // only they called.  Returns the first item of the chain
+  public CodeItem dropUninlined () {
+    uninlined.clear();
+    if (optimizationLevel > 0) {
+      removeDeadFunctions();
+    }
+    return firstItem;
+  }
+
+/*************************************************************************/
+    // Functions main can't reach, directly or through other functions, are
+    // unlinked from the chain.  Without a main we can't tell, so nothing is
+    // removed.  The calls of the copies kept for revertInlining count too.
+    // Returns the first item of the chain
+  public CodeItem removeDeadFunctions () {
+    Function main = functions.get("main");
+    if (main == null) {
+      return firstItem;
+    }
+
+    HashSet<Function> reached = new HashSet<Function>();
+    ArrayList<Function> toVisit = new ArrayList<Function>();
+    reached.add(main);
+    toVisit.add(main);
+    while (!toVisit.isEmpty()) {
+      Function func = toVisit.remove(toVisit.size()-1);
+      if (uninlined.containsKey(func)) {
+        toVisit.add(uninlined.get(func));
+      }
+      for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+                      currBlock = currBlock.getNextBlock()) {
+        for (Operation currOper = currBlock.getFirstOper(); currOper != null;
+                      currOper = currOper.getNextOper()) {
+          Function callee = getCallee(currOper);
+          if ( (callee != null) && reached.add(callee) ) {
+            toVisit.add(callee);
+          }
+        }
+      }
+    }
+
+    CodeItem prevItem = null;
+    for (CodeItem currItem = firstItem; currItem != null;
+                                        currItem = currItem.getNextItem()) {
+      if ( (currItem instanceof Function) && !reached.contains(currItem) ) {
+        functions.remove(((Function) currItem).getName());
+        if (prevItem == null) {
+          firstItem = currItem.getNextItem();
+        }
+        else {
+          prevItem.setNextItem(currItem.getNextItem());
+        }
+        continue;
+      }
+      prevItem = currItem;
+    }
+    return firstItem;
+  }
+
+/*************************************************************************/
+  // support methods
+
+    // the function in the chain oper calls, or null if it isn't such a call
+  private Function getCallee (Operation oper) {
+    if (oper.getType() != Operation.OPER_CALL) {
+      return null;
+    }
+    Operand target = oper.getSrcOperand(0);
+    if ( (target == null) || (target.getType() != Operand.OPERAND_STRING) ) {
+      return null;
+    }
+    return functions.get(target.getValue());
+  }
+
+    // the pass opers of a call, in the order of the params, or null if they
+    // aren't all in the call's block.  Args are passed last first, and a
+    // call in an arg passes its own args in between, so we walk back from
+    // the call skipping those
+  private Operation[] findPasses (Operation call) {
+    String numParams = call.findAttribute("numParams");
+    if (numParams == null) {
+      return null;
+    }
+    Operation []passes = new Operation[Integer.parseInt(numParams)];
+    int found = 0;
+    int toSkip = 0;
+    for (Operation currOper = call.getPrevOper();
+         (currOper != null) && (found < passes.length);
+         currOper = currOper.getPrevOper()) {
+      if (currOper.getType() == Operation.OPER_CALL) {
+        String innerParams = currOper.findAttribute("numParams");
+        if (innerParams == null) {
+          return null;
+        }
+        toSkip += Integer.parseInt(innerParams);
+      }
+      else if (currOper.getType() == Operation.OPER_PASS) {
+        if (toSkip > 0) {
+          toSkip--;
+        }
+        else {
+          passes[found++] = currOper;
+        }
+      }
+    }
+    return (found == passes.length) ? passes : null;
+  }
+
+  private int countParams (Function func) {
+    int numParams = 0;
+    for (FuncParam param = func.getfirstParam(); param != null;
+                   param = param.getNextParam()) {
+      numParams++;
+    }
+    return numParams;
+  }
+
+  private boolean isReg (Operand operand, int regNum) {
+    return (operand != null) && (operand.getType() == Operand.OPERAND_REG) &&
+           (((Integer) operand.getValue()).intValue() == regNum);
+  }
+
+  private boolean isMacro (Operand operand, String macro) {
+    return (operand != null) && (operand.getType() == Operand.OPERAND_MACRO) &&
+           macro.equals(operand.getValue());
+  }
+}
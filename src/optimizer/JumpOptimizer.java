@@ -6,6 +6,8 @@ public class JumpOptimizer {
 
   CodeItem firstItem;
   int optimizationLevel;
+    // System.nanoTime() past which no more rounds are run, or 0 for none
+  long deadline = 0;
 
   public JumpOptimizer(CodeItem first) {
     this(first, 0);
@@ -17,20 +19,38 @@ public class JumpOptimizer {
   }
 
   public void optimize () {
+    for (CodeItem currItem = firstItem; currItem != null;
+                                        currItem = currItem.getNextItem()) {
+      if (currItem instanceof Data) {
+        continue;
+      }
+      optimize((Function) currItem);
+    }
+  }
+
+    // bounds the time optimize(Function) spends.  Every change is complete
+    // in itself, so stopping after any of them leaves correct code
+  public void setDeadline (long nanoTime) {
+    deadline = nanoTime;
+  }
+
+    // repeats the optimizations on one function until none of them change it.
+    // returns false if the deadline stopped it first
+  public boolean optimize (Function func) {
     boolean changesMade = true;
     while (changesMade) {
-      for (CodeItem currItem = firstItem; currItem != null;
-                                          currItem = currItem.getNextItem()) {
-        if (currItem instanceof Data) {
-          continue;
-        }
-        Function func = (Function) currItem;
-
-        changesMade = doEmptyBlockOptimization(func);
-        changesMade |= doJmpOptimization(func);
-        changesMade |= doUnreachableBlockOptimization(func);
+      if (pastDeadline()) {
+        return false;
       }
+      changesMade = doEmptyBlockOptimization(func);
+      changesMade |= doJmpOptimization(func);
+      changesMade |= doUnreachableBlockOptimization(func);
     }
+    return true;
+  }
+
+  private boolean pastDeadline () {
+    return (deadline != 0) && (System.nanoTime() - deadline > 0);
   }
 
     // looks for a jmp or branch, whose tgt is also a jmp
@@ -40,7 +60,7 @@ public class JumpOptimizer {
     boolean changesMade = false;
     boolean somethingChanged = true;
 
-    while (somethingChanged) {
+    while (somethingChanged && !pastDeadline()) {
       somethingChanged = false;
       for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
                       currBlock = currBlock.getNextBlock()) {
@@ -187,7 +207,7 @@ public class JumpOptimizer {
 
     boolean somethingChanged = true;
 
-    while (somethingChanged) {
+    while (somethingChanged && !pastDeadline()) {
       somethingChanged = false;
         // this array will contain 1 if the previous block ends in jmp; the
         // second pass will reset to 0 if tgt of jmp
@@ -25,6 +25,18 @@ public class LowLevelCodeOptimizer {
     }
   }
 
+    // returns false if the deadline stopped the jump optimizer short
+  public boolean optimize (Function func) {
+    if (optimizationLevel > 0) {
+      return jumpOpti.optimize(func);
+    }
+    return true;
+  }
+
+  public void setDeadline (long nanoTime) {
+    jumpOpti.setDeadline(nanoTime);
+  }
+
   public void doIterativeOptimization () {
 
   }
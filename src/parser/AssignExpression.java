@@ -3,8 +3,6 @@ package parser;
 import java.io.BufferedWriter;
 import java.io.IOException;
 
-import compiler.CMinusCompiler;
-
 import lowlevel.Function;
 import lowlevel.Operand;
 import lowlevel.Operation;
@@ -18,14 +16,17 @@ public class AssignExpression extends Expression {
 		rhs = r;
 	}
 	
-	public void genLLCode(Function f) {
-		lhs.genLLCode(f);
-		rhs.genLLCode(f);
+	public void genLLCode(Function f, SymbolTable symbols) {
+		// the lhs may be shared with part of the rhs, which would give it
+		// another register when the rhs is lowered
+		lhs.genLLCode(f, symbols);
+		int lhsReg = lhs.regNum;
+		rhs.genLLCode(f, symbols);
 		
 		Operation oper = new Operation(Operation.OPER_ASSIGN, f.getCurrBlock());
 		f.getCurrBlock().appendOper(oper);
 		
-		Operand op = new Operand(Operand.OPERAND_REG, lhs.regNum);
+		Operand op = new Operand(Operand.OPERAND_REG, lhsReg);
 		oper.setDestOperand(0, op);
 		
 		if(rhs instanceof LiteralExpression) {
@@ -36,13 +37,33 @@ public class AssignExpression extends Expression {
 		oper.setSrcOperand(0, op);
 		
 		// if its a global then we have to store it
-		if(CMinusCompiler.globalHash.containsKey(lhs.getID())) {
+		int symbol = ((VariableExpression) lhs).getSymbol(symbols);
+		if(symbols.isGlobal(symbol)) {
 			Operation store = new Operation(Operation.OPER_STORE_I, f.getCurrBlock());
 			f.getCurrBlock().appendOper(store);
 			
-			store.setSrcOperand(0, new Operand(Operand.OPERAND_REG, lhs.regNum));
+			store.setSrcOperand(0, new Operand(Operand.OPERAND_REG, lhsReg));
 			store.setSrcOperand(1, new Operand(Operand.OPERAND_STRING, lhs.getID()));
 		}
+		
+		// anything computed from the old value is out of date
+		symbols.forgetValues(symbol);
+	}
+	
+	public Expression simplify() {
+		lhs = lhs.simplify();
+		rhs = rhs.simplify();
+		return this;
+	}
+	
+	public boolean hasSideEffects() {
+		return true;
+	}
+	
+	public void write(AstOutput out) throws IOException {
+		out.writeByte(AstOutput.ASSIGN_EXPRESSION);
+		out.writeNode(lhs);
+		out.writeNode(rhs);
 	}
 	
 	public void print(String tab, BufferedWriter out) throws IOException {
@@ -0,0 +1,254 @@
+package parser;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import compiler.CMinusCompiler;
+
+import scanner.MappedCMinusScanner;
+import scanner.ParallelLexer;
+
+/**
+ * An on-disk cache of parsed programs.  Each entry is the AstOutput form of a
+ * Program in a file named by the SHA-1 of the compiler version and the source
+ * bytes, so a hit skips scanning and parsing entirely and any change to the
+ * source, or a new compiler, simply misses.  CMinusCompiler only uses one
+ * when given <code>-astcache</code> (in .astcache) or
+ * <code>-astcache=DIR</code>.
+ *
+ * The directory is capped at a total size.  A hit touches its entry, and once
+ * a store takes the directory over the cap the least recently used entries
+ * are deleted.  An entry that cannot be read back is deleted and treated as a
+ * miss.
+ */
+public class AstCache {
+	private static final int MAGIC = 0x434d4153;
+	private static final int FORMAT_VERSION = 1;
+	private static final String SUFFIX = ".ast";
+
+	private File directory;
+	private long maxBytes;
+	private ParserType parserType;
+	private int hits = 0;
+	private int misses = 0;
+
+	public AstCache(File directory, long maxBytes) {
+		this(directory, maxBytes, ParserType.PARALLEL);
+	}
+
+	/**
+	 * A cache which parses misses with <code>parserType</code>.  Every parser
+	 * builds the same tree, so entries are shared between them.
+	 */
+	public AstCache(File directory, long maxBytes, ParserType parserType) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.parserType = parserType;
+		directory.mkdirs();
+	}
+
+	/**
+	 * Get the program for <code>source</code> from the cache, parsing it and
+	 * storing the result on a miss.
+	 * @return the program, or null if it did not parse
+	 */
+	public Program parse(ByteBuffer source) throws IOException {
+		String key = key(source);
+
+		Program program = load(key);
+		if(program != null) {
+			hits++;
+			return program;
+		}
+
+		misses++;
+		program = parserType.create(ParallelLexer.scan(source.duplicate())).parse();
+		if(program != null) {
+			store(key, program);
+		}
+
+		return program;
+	}
+
+	/**
+	 * The cache key for <code>source</code>: a hex SHA-1 of the compiler
+	 * version and the source bytes.
+	 */
+	public static String key(ByteBuffer source) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+
+		digest.update(CMinusCompiler.VERSION.getBytes());
+		digest.update((byte) 0);
+		digest.update(source.duplicate());
+
+		StringBuilder key = new StringBuilder();
+		for(byte b : digest.digest()) {
+			key.append(Character.forDigit((b >> 4) & 0xF, 16));
+			key.append(Character.forDigit(b & 0xF, 16));
+		}
+
+		return key.toString();
+	}
+
+	/**
+	 * Read the entry for <code>key</code>.
+	 * @return the program, or null if there is no usable entry
+	 */
+	public Program load(String key) {
+		File file = new File(directory, key + SUFFIX);
+		if(!file.isFile()) {
+			return null;
+		}
+
+		try {
+			byte[] bytes = readFile(file);
+			AstInput in = new AstInput(new ByteArrayInputStream(bytes));
+			if(in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+				throw new IOException("Not an AST cache entry");
+			}
+
+			Program program = in.readProgram();
+			file.setLastModified(System.currentTimeMillis());
+			return program;
+		} catch(IOException e) {
+			file.delete();
+		} catch(RuntimeException e) {
+			// a corrupt entry can also surface as a bad cast or index
+			file.delete();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Write <code>program</code> as the entry for <code>key</code>, then
+	 * evict entries until the cache is back under its size cap.
+	 */
+	public void store(String key, Program program) throws IOException {
+		// write to a temporary file first so a reader never sees half an entry
+		File temp = File.createTempFile(key, ".tmp", directory);
+		try {
+			AstOutput out = new AstOutput(new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				out.writeProgram(program);
+			} finally {
+				out.close();
+			}
+
+			File file = new File(directory, key + SUFFIX);
+			if(!temp.renameTo(file)) {
+				file.delete();
+				if(!temp.renameTo(file)) {
+					throw new IOException("Could not create " + file);
+				}
+			}
+		} finally {
+			temp.delete();
+		}
+
+		evict();
+	}
+
+	/**
+	 * Delete the least recently used entries until the cache fits its cap.
+	 */
+	private void evict() {
+		File[] entries = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(SUFFIX);
+			}
+		});
+		if(entries == null) {
+			return;
+		}
+
+		long total = 0;
+		for(File entry : entries) {
+			total += entry.length();
+		}
+		if(total <= maxBytes) {
+			return;
+		}
+
+		Arrays.sort(entries, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long diff = a.lastModified() - b.lastModified();
+				return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+			}
+		});
+
+		for(int i = 0; i < entries.length && total > maxBytes; i++) {
+			long length = entries[i].length();
+			if(entries[i].delete()) {
+				total -= length;
+			}
+		}
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] bytes = new byte[(int) in.length()];
+			in.readFully(bytes);
+			return bytes;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Time parsing <code>filename</code> against loading it from a cache in
+	 * <code>directory</code>.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length < 2) {
+			System.err.println("usage: AstCache <file> <cache directory> [runs]");
+			return;
+		}
+
+		ByteBuffer source = MappedCMinusScanner.mapFile(args[0]);
+		AstCache cache = new AstCache(new File(args[1]), 256L * 1024 * 1024);
+		int runs = (args.length > 2) ? Integer.parseInt(args[2]) : 10;
+
+		String key = key(source);
+		if(cache.parse(source) == null) {
+			return;
+		}
+
+		for(int run = 0; run < runs; run++) {
+			long start = System.nanoTime();
+			cache.parserType.create(ParallelLexer.scan(source.duplicate())).parse();
+			long parsed = System.nanoTime();
+			cache.load(key);
+			long loaded = System.nanoTime();
+
+			System.out.printf("run %d: scan and parse %.1f ms, load from cache %.1f ms%n",
+				run, (parsed - start) / 1e6, (loaded - parsed) / 1e6);
+		}
+	}
+}
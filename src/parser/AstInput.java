@@ -0,0 +1,173 @@
+package parser;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import scanner.IdentifierTable;
+
+/**
+ * Reads back a Program written by AstOutput.  Names are interned as they are
+ * read, so the nodes carry symbol ids just as freshly parsed ones do.
+ */
+public class AstInput extends DataInputStream {
+	private static final Operator[] OPERATORS = Operator.values();
+	private static final VariableType[] TYPES = VariableType.values();
+
+	private ArrayList<String> names = new ArrayList<String>();
+	private IdentifierTable identifiers = new IdentifierTable();
+	// the symbol id of the name readName last returned
+	private int symbol = -1;
+	// shares identical subexpressions, as the parser that wrote them did
+	private ExpressionTable expressions = new ExpressionTable();
+
+	public AstInput(InputStream in) {
+		super(in);
+	}
+
+	public Program readProgram() throws IOException {
+		Program program = new Program(identifiers);
+
+		int numDeclarations = readVarInt();
+		for(int i = 0; i < numDeclarations; i++) {
+			program.addDeclaration((Declaration) readNode());
+		}
+
+		return program;
+	}
+
+	/**
+	 * Read one node and everything below it.
+	 * @return the node, or null if a missing node was written
+	 */
+	public ParseNode readNode() throws IOException {
+		byte tag = readByte();
+
+		switch(tag) {
+			case AstOutput.NULL:
+				return null;
+			case AstOutput.VARIABLE_DECLARATION: {
+				String id = readName();
+				VariableDeclaration declaration = new VariableDeclaration(id, symbol, readType());
+				declaration.arraySize = readVarInt();
+				return declaration;
+			}
+			case AstOutput.FUNCTION_DECLARATION: {
+				FunctionDeclaration declaration = new FunctionDeclaration(readName(), readType());
+
+				int numParameters = readVarInt();
+				ArrayList<Variable> parameters = new ArrayList<Variable>(numParameters);
+				for(int i = 0; i < numParameters; i++) {
+					Variable parameter = new Variable(readName(), symbol);
+					parameter.isArray = readBoolean();
+					parameters.add(parameter);
+				}
+				declaration.setParameters(parameters);
+				declaration.setStatement((CompoundStatement) readNode());
+				return declaration;
+			}
+			case AstOutput.COMPOUND_STATEMENT: {
+				CompoundStatement statement = new CompoundStatement();
+
+				int numDeclarations = readVarInt();
+				for(int i = 0; i < numDeclarations; i++) {
+					statement.addVariableDeclaration((VariableDeclaration) readNode());
+				}
+				int numStatements = readVarInt();
+				for(int i = 0; i < numStatements; i++) {
+					statement.addStatement((Statement) readNode());
+				}
+				return statement;
+			}
+			case AstOutput.EXPRESSION_STMT:
+				return new ExpressionStmt((Expression) readNode());
+			case AstOutput.SELECTION_STMT: {
+				SelectionStmt statement = new SelectionStmt();
+				statement.expression = (Expression) readNode();
+				statement.ifStmt = (Statement) readNode();
+				statement.elseStmt = (Statement) readNode();
+				return statement;
+			}
+			case AstOutput.ITERATION_STMT: {
+				Expression expression = (Expression) readNode();
+				return new IterationStmt(expression, (Statement) readNode());
+			}
+			case AstOutput.RETURN_STMT:
+				return new ReturnStmt((Expression) readNode());
+			case AstOutput.ASSIGN_EXPRESSION: {
+				Expression lhs = (Expression) readNode();
+				return new AssignExpression(lhs, (Expression) readNode());
+			}
+			case AstOutput.BINARY_EXPRESSION: {
+				Operator op = OPERATORS[readByte()];
+				Expression lhs = (Expression) readNode();
+				return expressions.intern(new BinaryExpression(op, lhs, (Expression) readNode()));
+			}
+			case AstOutput.CALL_EXPRESSION: {
+				String id = readName();
+
+				int numArgs = readVarInt();
+				ArrayList<Expression> args = new ArrayList<Expression>(numArgs);
+				for(int i = 0; i < numArgs; i++) {
+					args.add((Expression) readNode());
+				}
+				return new CallExpression(id, args);
+			}
+			case AstOutput.VARIABLE_EXPRESSION: {
+				String id = readName();
+				int symbol = this.symbol;
+				return expressions.intern(new VariableExpression(id, symbol, (Expression) readNode()));
+			}
+			case AstOutput.LITERAL_EXPRESSION:
+				return expressions.intern(new LiteralExpression(readVarInt()));
+			default:
+				throw new IOException("Unknown AST node tag " + tag);
+		}
+	}
+
+	public int readVarInt() throws IOException {
+		int bits = 0;
+		for(int shift = 0; ; shift += 7) {
+			int b = readUnsignedByte();
+			if(shift > 28) {
+				throw new IOException("Variable length int is too long");
+			}
+
+			bits |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				break;
+			}
+		}
+
+		return (bits >>> 1) ^ -(bits & 1);
+	}
+
+	public String readName() throws IOException {
+		int index = readVarInt();
+
+		if(index == AstOutput.NULL_NAME) {
+			symbol = -1;
+			return null;
+		} else if(index == AstOutput.NEW_NAME) {
+			String name = readUTF();
+			// each name is written out once, so it gets the next symbol id
+			symbol = identifiers.intern(name);
+			if(symbol != names.size()) {
+				throw new IOException("Name " + name + " written twice");
+			}
+			names.add(name);
+			return name;
+		} else if(index < 0 || index >= names.size()) {
+			throw new IOException("Bad name index " + index);
+		}
+
+		symbol = index;
+		return names.get(index);
+	}
+
+	public VariableType readType() throws IOException {
+		byte type = readByte();
+		return (type < 0) ? null : TYPES[type];
+	}
+}
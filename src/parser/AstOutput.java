@@ -0,0 +1,90 @@
+package parser;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+
+/**
+ * Writes a Program in the compact binary form read back by AstInput.  Every
+ * node starts with one of the tags below and writes its own fields through
+ * <code>ParseNode.write</code>.  Each name is written out in full the first
+ * time it appears and as an index into the names seen so far after that, and
+ * counts, indexes and values are written as variable length ints so small
+ * ones take a single byte.
+ */
+public class AstOutput extends DataOutputStream {
+	public static final byte NULL = 0;
+	public static final byte VARIABLE_DECLARATION = 1;
+	public static final byte FUNCTION_DECLARATION = 2;
+	public static final byte COMPOUND_STATEMENT = 3;
+	public static final byte EXPRESSION_STMT = 4;
+	public static final byte SELECTION_STMT = 5;
+	public static final byte ITERATION_STMT = 6;
+	public static final byte RETURN_STMT = 7;
+	public static final byte ASSIGN_EXPRESSION = 8;
+	public static final byte BINARY_EXPRESSION = 9;
+	public static final byte CALL_EXPRESSION = 10;
+	public static final byte VARIABLE_EXPRESSION = 11;
+	public static final byte LITERAL_EXPRESSION = 12;
+
+	// name index written for a null name
+	static final int NULL_NAME = -2;
+	// name index written before a name seen for the first time
+	static final int NEW_NAME = -1;
+
+	private HashMap<String, Integer> names = new HashMap<String, Integer>();
+
+	public AstOutput(OutputStream out) {
+		super(out);
+	}
+
+	public void writeProgram(Program program) throws IOException {
+		program.write(this);
+	}
+
+	/**
+	 * Write a node, or just the NULL tag if there is none.
+	 */
+	public void writeNode(ParseNode node) throws IOException {
+		if(node == null) {
+			writeByte(NULL);
+		} else {
+			node.write(this);
+		}
+	}
+
+	public void writeName(String name) throws IOException {
+		if(name == null) {
+			writeVarInt(NULL_NAME);
+			return;
+		}
+
+		Integer index = names.get(name);
+		if(index != null) {
+			writeVarInt(index);
+		} else {
+			names.put(name, names.size());
+			writeVarInt(NEW_NAME);
+			writeUTF(name);
+		}
+	}
+
+	/**
+	 * Write <code>value</code> zigzag encoded, seven bits to a byte, so that
+	 * small positive and negative values are short.
+	 */
+	public void writeVarInt(int value) throws IOException {
+		int bits = (value << 1) ^ (value >> 31);
+
+		while((bits & ~0x7F) != 0) {
+			writeByte((bits & 0x7F) | 0x80);
+			bits >>>= 7;
+		}
+		writeByte(bits);
+	}
+
+	public void writeType(VariableType type) throws IOException {
+		writeByte((type == null) ? -1 : type.ordinal());
+	}
+}
@@ -0,0 +1,76 @@
+package parser;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+import lowlevel.BasicBlock;
+
+/**
+ * The registers already holding the values of expressions lowered in the
+ * current basic block.  Identical expressions are hash-consed into a single
+ * node by ExpressionTable, so finding an earlier computation of the same
+ * value is an identity lookup of the node.
+ *
+ * Only straight-line code is covered.  Moving on to another block forgets
+ * everything, and so does a call, which may change any global, or a block
+ * declaring names which could shadow the ones the values were computed from.
+ * An assignment only forgets the values computed from the variable assigned.
+ */
+public class AvailableValues {
+	// past this many values a new map is cheaper than clearing the old one
+	private static final int MAX_CLEARED = 64;
+	// an assignment looks at every value, so keep no more than this many
+	private static final int MAX_VALUES = 256;
+
+	private BasicBlock block = null;
+	private IdentityHashMap<Expression, Integer> registers = new IdentityHashMap<Expression, Integer>();
+
+	/**
+	 * @return the register holding the value of <code>e</code> in
+	 * <code>block</code>, or -1 if it has not been computed there
+	 */
+	public int lookup(Expression e, BasicBlock block) {
+		if(block != this.block) {
+			return -1;
+		}
+
+		Integer regNum = registers.get(e);
+		return (regNum == null) ? -1 : regNum;
+	}
+
+	/**
+	 * Note that <code>regNum</code> holds the value of <code>e</code> from
+	 * here to the end of <code>block</code>, unless it is forgotten first.
+	 */
+	public void record(Expression e, BasicBlock block, int regNum) {
+		if(block != this.block) {
+			forget();
+			this.block = block;
+		}
+
+		if(registers.size() < MAX_VALUES) {
+			registers.put(e, regNum);
+		}
+	}
+
+	/**
+	 * Forget the values which depend on the variable <code>symbol</code>.
+	 */
+	public void forget(int symbol, SymbolTable symbols) {
+		Iterator<Expression> it = registers.keySet().iterator();
+		while(it.hasNext()) {
+			if(it.next().reads(symbol, symbols)) {
+				it.remove();
+			}
+		}
+	}
+
+	public void forget() {
+		block = null;
+		if(registers.size() > MAX_CLEARED) {
+			registers = new IdentityHashMap<Expression, Integer>();
+		} else {
+			registers.clear();
+		}
+	}
+}
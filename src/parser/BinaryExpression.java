@@ -11,16 +11,34 @@ public class BinaryExpression extends Expression {
 	private Operator operator;
 	private Expression lhs;
 	private Expression rhs;
+	// worked out once, so asking is cheap however deep the tree is
+	private boolean sideEffects;
+	private boolean trap;
 	
 	public BinaryExpression(Operator op, Expression l, Expression r) {
 		operator = op;
 		lhs = l;
 		rhs = r;
+		hash = 31 * (31 * (31 * 3 + op.ordinal()) + l.structuralHash()) + r.structuralHash();
+		sideEffects = l.hasSideEffects() || r.hasSideEffects();
+		trap = mayTrap(op, l, r);
 	}
 	
-	public void genLLCode(Function f) {
-		lhs.genLLCode(f);
-		rhs.genLLCode(f);
+	public void genLLCode(Function f, SymbolTable symbols) {
+		AvailableValues values = symbols.getAvailableValues();
+		if(values != null) {
+			int known = values.lookup(this, f.getCurrBlock());
+			if(known >= 0) {
+				regNum = known;
+				return;
+			}
+		}
+		
+		// the lhs may be shared with part of the rhs, which would give it
+		// another register when the rhs is lowered
+		lhs.genLLCode(f, symbols);
+		int lhsReg = lhs.regNum;
+		rhs.genLLCode(f, symbols);
 		
 		Operation oper = new Operation(convertOp(), f.getCurrBlock());
 		f.getCurrBlock().appendOper(oper);
@@ -32,7 +50,7 @@ public class BinaryExpression extends Expression {
 		if(lhs instanceof LiteralExpression) {
 			op = new Operand(Operand.OPERAND_INT, ((LiteralExpression) lhs).getValue());
 		} else {
-			op = new Operand(Operand.OPERAND_REG, lhs.regNum);
+			op = new Operand(Operand.OPERAND_REG, lhsReg);
 		}
 		oper.setSrcOperand(0, op);
 		
@@ -42,6 +60,10 @@ public class BinaryExpression extends Expression {
 			op = new Operand(Operand.OPERAND_REG, rhs.regNum);
 		}
 		oper.setSrcOperand(1, op);
+		
+		if(values != null) {
+			values.record(this, f.getCurrBlock(), regNum);
+		}
 	}
 	
 	private int convertOp() {
@@ -69,6 +91,144 @@ public class BinaryExpression extends Expression {
 			throw new ParseErrorException("Error: convertOp failed");
 	}
 
+	public Expression simplify() {
+		lhs = lhs.simplify();
+		rhs = rhs.simplify();
+		sideEffects = lhs.hasSideEffects() || rhs.hasSideEffects();
+		trap = mayTrap(operator, lhs, rhs);
+		
+		if(lhs instanceof LiteralExpression && rhs instanceof LiteralExpression) {
+			Integer value = fold(((LiteralExpression) lhs).intValue(), ((LiteralExpression) rhs).intValue());
+			return (value == null) ? this : new LiteralExpression(value);
+		}
+		
+		switch(operator) {
+			case ADD:
+				if(isLiteral(rhs, 0)) {
+					return lhs;
+				} else if(isLiteral(lhs, 0)) {
+					return rhs;
+				}
+				break;
+			case SUBTRACT:
+				if(isLiteral(rhs, 0)) {
+					return lhs;
+				} else if(isSameScalar(lhs, rhs)) {
+					return new LiteralExpression(0);
+				}
+				break;
+			case MULTIPLY:
+				if(isLiteral(rhs, 1)) {
+					return lhs;
+				} else if(isLiteral(lhs, 1)) {
+					return rhs;
+				} else if((isLiteral(rhs, 0) && !lhs.hasSideEffects() && !lhs.mayTrap()) ||
+						  (isLiteral(lhs, 0) && !rhs.hasSideEffects() && !rhs.mayTrap())) {
+					return new LiteralExpression(0);
+				}
+				break;
+			case DIVIDE:
+				if(isLiteral(rhs, 1)) {
+					return lhs;
+				}
+				break;
+			default:
+				break;
+		}
+		
+		return this;
+	}
+	
+	/**
+	 * Apply the operator to two constants.
+	 * @return the result, or null if it should be left to happen at run time
+	 */
+	private Integer fold(int l, int r) {
+		switch(operator) {
+			case ADD:
+				return l + r;
+			case SUBTRACT:
+				return l - r;
+			case MULTIPLY:
+				return l * r;
+			case DIVIDE:
+				// a division which traps has to trap when the program runs
+				if(r == 0 || (l == Integer.MIN_VALUE && r == -1)) {
+					return null;
+				}
+				return l / r;
+			case EQUAL:
+				return (l == r) ? 1 : 0;
+			case NOT_EQUAL:
+				return (l != r) ? 1 : 0;
+			case LESS_THAN:
+				return (l < r) ? 1 : 0;
+			case LT_EQUAL:
+				return (l <= r) ? 1 : 0;
+			case GREATER_THAN:
+				return (l > r) ? 1 : 0;
+			case GT_EQUAL:
+				return (l >= r) ? 1 : 0;
+			default:
+				return null;
+		}
+	}
+	
+	public boolean sameStructure(Expression other) {
+		if(!(other instanceof BinaryExpression)) {
+			return false;
+		}
+		
+		BinaryExpression b = (BinaryExpression) other;
+		return b.operator == operator && b.lhs == lhs && b.rhs == rhs;
+	}
+	
+	private static boolean isLiteral(Expression e, int value) {
+		return e instanceof LiteralExpression && ((LiteralExpression) e).intValue() == value;
+	}
+	
+	/**
+	 * Whether both expressions are the same plain variable, which must hold
+	 * the same value.
+	 */
+	private static boolean isSameScalar(Expression a, Expression b) {
+		return a instanceof VariableExpression && b instanceof VariableExpression &&
+			   !((VariableExpression) a).isArrayElement() && !((VariableExpression) b).isArrayElement() &&
+			   a.getID().equals(b.getID());
+	}
+	
+	public boolean reads(int symbol, SymbolTable symbols) {
+		return lhs.reads(symbol, symbols) || rhs.reads(symbol, symbols);
+	}
+	
+	public boolean hasSideEffects() {
+		return sideEffects;
+	}
+	
+	public boolean mayTrap() {
+		return trap;
+	}
+	
+	/**
+	 * Whether <code>l op r</code> can trap: a division can unless it is by a
+	 * constant other than 0 and -1.
+	 */
+	private static boolean mayTrap(Operator op, Expression l, Expression r) {
+		if(l.mayTrap() || r.mayTrap()) {
+			return true;
+		}
+		
+		return op == Operator.DIVIDE && !(r instanceof LiteralExpression &&
+			   ((LiteralExpression) r).intValue() != 0 && ((LiteralExpression) r).intValue() != -1);
+	}
+	
+	public void write(AstOutput out) throws IOException {
+		out.writeByte(AstOutput.BINARY_EXPRESSION);
+		out.writeByte(operator.ordinal());
+		out.writeNode(lhs);
+		out.writeNode(rhs);
+	}
+	
 	public void print(String tab, BufferedWriter out) throws IOException {
 		out.write(tab + "BinaryExpression: \n");
 		lhs.print(tab + "\t", out);
@@ -3,11 +3,14 @@ package parser;
 import java.io.BufferedWriter;
 import java.io.FileNotFoundException;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import scanner.CMinusScanner;
+import scanner.MappedCMinusScanner;
 import scanner.Scanner;
-import scanner.Token;
+import scanner.TokenStream;
 import scanner.TokenType;
 
 /**
@@ -16,19 +19,22 @@ import scanner.TokenType;
  *
  */
 public class CMinusParser implements Parser {
-	private Scanner scanner;
-	private Token currentToken;
+	private TokenStream tokens;
+	private ExpressionParser expressions;
 	
 	public CMinusParser(Scanner scanner) {
-		this.scanner = scanner;
+		this(new TokenStream(scanner));
+	}
+	
+	public CMinusParser(TokenStream tokens) {
+		this.tokens = tokens;
+		this.expressions = new ExpressionParser(tokens);
 	}
 
 	@Override
 	public Program parse() {
 		Program program = null;
 		
-		currentToken = scanner.getNextToken();
-		
 		try {
 			program = parseProgram();
 		} catch (ParseErrorException e) {
@@ -38,8 +44,27 @@ public class CMinusParser implements Parser {
 		return program;
 	}
 
+	/**
+	 * Parse exactly one top-level declaration, which must make up the whole
+	 * of the token stream.
+	 * @throws ParseErrorException if the tokens are not a single declaration
+	 */
+	public Declaration parseSingleDeclaration() throws ParseErrorException {
+		if(!doesMatch(TokenType.INT) && !doesMatch(TokenType.VOID)) {
+			throw new ParseErrorException("Expected a declaration, found " + tokens.peek());
+		}
+		
+		Declaration declaration = parseDeclaration();
+		if(declaration == null) {
+			throw new ParseErrorException("Malformed declaration, found " + tokens.peek());
+		}
+		
+		match(TokenType.EOF);
+		return declaration;
+	}
+
 	private Program parseProgram() throws ParseErrorException {
-		Program program = new Program();
+		Program program = new Program(tokens.getIdentifiers());
 		
 		program.addDeclaration(parseDeclaration());
 		
@@ -54,6 +79,7 @@ public class CMinusParser implements Parser {
 	private Declaration parseDeclaration() throws ParseErrorException {
 		VariableType varType = null;
 		String id;
+		int symbol;
 		
 		if(doesMatch(TokenType.INT)) {
 			varType = VariableType.INT;
@@ -62,8 +88,9 @@ public class CMinusParser implements Parser {
 		}
 		
 		// grab the ID off the front
-		currentToken = scanner.getNextToken();
-		id = currentToken.getTokenData().toString();
+		tokens.advance();
+		id = tokens.symbolName();
+		symbol = tokens.symbol();
 		match(TokenType.ID);
 		
 		if(doesMatch(TokenType.LEFT_PAREN)) {
@@ -71,7 +98,7 @@ public class CMinusParser implements Parser {
 			parseFunctionDeclaration(declaration);
 			return declaration;
 		} else if(doesMatch(TokenType.LEFT_SQUARE) || doesMatch(TokenType.SEMICOLON)) {
-			VariableDeclaration declaration = new VariableDeclaration(id, varType);
+			VariableDeclaration declaration = new VariableDeclaration(id, symbol, varType);
 			parsePartialArray(declaration);
 			return declaration;
 		}
@@ -138,13 +165,14 @@ public class CMinusParser implements Parser {
 	
 	private ExpressionStmt parseExpressionStatement() throws ParseErrorException {
 		// we could just have an empty expression
+		ExpressionStmt stmt = new ExpressionStmt();
 		if(!doesMatch(TokenType.SEMICOLON)) {
-			return new ExpressionStmt(parseExpression());
+			stmt = new ExpressionStmt(parseExpression());
 		}
 		
 		match(TokenType.SEMICOLON);
 		
-		return new ExpressionStmt();
+		return stmt;
 	}
 
 	private Statement parseStatement() throws ParseErrorException {
@@ -192,8 +220,8 @@ public class CMinusParser implements Parser {
 		if(doesMatch(TokenType.LEFT_SQUARE)) {
 			match(TokenType.LEFT_SQUARE);
 			
-			int offset = new Integer(currentToken.getTokenData().toString());
-			currentToken = scanner.getNextToken();
+			int offset = tokens.intValue();
+			tokens.advance();
 			
 			match(TokenType.RIGHT_SQUARE);
 			match(TokenType.SEMICOLON);
@@ -206,175 +234,18 @@ public class CMinusParser implements Parser {
 
 	private VariableDeclaration parseVariableDeclaration() throws ParseErrorException {		
 		match(TokenType.INT);
-		String id = currentToken.getTokenData().toString();
+		String id = tokens.symbolName();
+		int symbol = tokens.symbol();
 		match(TokenType.ID);
 		
-		VariableDeclaration declaration = new VariableDeclaration(id, VariableType.INT);
+		VariableDeclaration declaration = new VariableDeclaration(id, symbol, VariableType.INT);
 		parsePartialArray(declaration);
 		
 		return declaration;
 	}
 	
 	private Expression parseExpression() throws ParseErrorException {
-		if(doesMatch(TokenType.ID)) {
-			String id = currentToken.getTokenData().toString();
-			match(TokenType.ID);
-			return parseExpression2(id);
-		} else if(doesMatch(TokenType.LEFT_PAREN) || doesMatch(TokenType.NUM)) {
-			return parseSimpleExpression(null);
-		}
-		
-		return null;
-	}
-	
-	private Expression parseExpression2(String id) throws ParseErrorException {
-		if(doesMatch(TokenType.ASSIGN)) {
-			match(TokenType.ASSIGN);
-			return new AssignExpression(new VariableExpression(id), parseExpression());
-		} else if(doesMatch(TokenType.LEFT_SQUARE)) {
-			return parseExpression3(parseVariableExpression(id));
-		} else if(doesMatch(TokenType.LEFT_PAREN)) {
-			Expression lhs = parseCall(id);
-			return parseSimpleExpression(lhs);
-		} else if(doesMatch(TokenType.PLUS) || doesMatch(TokenType.MINUS) ||
-				  doesMatch(TokenType.MULTIPLY) || doesMatch(TokenType.DIVIDE) ||
-				  isRelationalOp()) {
-			return parseSimpleExpression(new VariableExpression(id));
-		} else if(doesMatch(TokenType.SEMICOLON) || doesMatch(TokenType.RIGHT_PAREN) || 
-				  doesMatch(TokenType.COMMA) || doesMatch(TokenType.RIGHT_SQUARE)) {
-			return new VariableExpression(id);
-		}
-		
-		return null;
-	}
-	
-	private Expression parseVariableExpression(String id) throws ParseErrorException {
-		match(TokenType.LEFT_SQUARE);
-		Expression inner = parseExpression();
-		match(TokenType.RIGHT_SQUARE);
-		
-		return new VariableExpression(id, inner);
-	}
-	
-	private Expression parseExpression3(Expression lhs) throws ParseErrorException {
-		if(doesMatch(TokenType.ASSIGN)) {
-			match(TokenType.ASSIGN);
-			return new AssignExpression(lhs, parseExpression());
-		} else if(doesMatch(TokenType.PLUS) || doesMatch(TokenType.MINUS) ||
-				  doesMatch(TokenType.MULTIPLY) || doesMatch(TokenType.DIVIDE) ||
-				  isRelationalOp()) {
-			Expression newLhs = parseAdditiveExpression(lhs);
-			
-			if(isRelationalOp()) {
-				Operator op = getOperator(currentToken);
-				currentToken = scanner.getNextToken();
-				return new BinaryExpression(op, newLhs, parseAdditiveExpression(null));
-			}
-			
-			return newLhs;
-		} else if(doesMatch(TokenType.SEMICOLON) || doesMatch(TokenType.RIGHT_PAREN)) {
-			return lhs;
-		}
-		
-		return null;
-	}
-
-	private Expression parseSimpleExpression(Expression lhs) throws ParseErrorException {
-		Expression newLhs = parseAdditiveExpression(lhs);
-		
-		if(isRelationalOp()) {
-			Operator op = getOperator(currentToken);
-			currentToken = scanner.getNextToken();
-			Expression rhs = parseAdditiveExpression(null);
-			return new BinaryExpression(op, newLhs, rhs);
-		}
-		
-		return newLhs;
-	}
-
-	private Expression parseAdditiveExpression(Expression lhs) throws ParseErrorException {
-		Expression term = parseTerm(lhs);
-		
-		while(doesMatch(TokenType.PLUS) || doesMatch(TokenType.MINUS)) {
-			Operator op = getOperator(currentToken);
-			currentToken = scanner.getNextToken();
-			term = new BinaryExpression(op, term, parseTerm(null));
-		}
-		
-		return term;
-	}
-	
-	private Expression parseTerm(Expression lhs) throws ParseErrorException {
-		Expression exp = (lhs == null) ? parseFactor() : lhs;
-		
-		while(doesMatch(TokenType.MULTIPLY) || doesMatch(TokenType.DIVIDE)) {
-			Operator op = getOperator(currentToken);
-			currentToken = scanner.getNextToken();
-			exp = new BinaryExpression(op, exp, parseFactor());
-		}
-		
-		return exp;
-	}
-
-	private Expression parseFactor() throws ParseErrorException {
-		if(doesMatch(TokenType.LEFT_PAREN)) {
-			match(TokenType.LEFT_PAREN);
-			Expression e = parseExpression();
-			match(TokenType.RIGHT_PAREN);
-			return e;
-		} else if(doesMatch(TokenType.NUM)) {
-			Expression e = new LiteralExpression(currentToken.getTokenData().toString());
-			match(TokenType.NUM);
-			return e;
-		} else if(doesMatch(TokenType.ID)) {
-			String id = currentToken.getTokenData().toString();
-			match(TokenType.ID);
-			return parseFactor2(id);
-		}
-		
-		return null;
-	}
-
-	private Expression parseFactor2(String id) throws ParseErrorException {
-		if(doesMatch(TokenType.LEFT_PAREN)) {
-			return parseCall(id);
-		} else if(doesMatch(TokenType.LEFT_SQUARE)) {
-			return parseVariableExpression(id);
-		}
-		
-		return new VariableExpression(id);
-	}
-
-	private CallExpression parseCall(String id) throws ParseErrorException {
-		match(TokenType.LEFT_PAREN);
-		
-		ArrayList<Expression> args = parseArgs();
-		
-		match(TokenType.RIGHT_PAREN);
-		
-		return new CallExpression(id, args);
-	}
-	
-	private ArrayList<Expression> parseArgs() throws ParseErrorException {
-		ArrayList<Expression> args = new ArrayList<Expression>();
-		boolean readMore = true;
-		
-		while(readMore) {
-			if(doesMatch(TokenType.ID) || doesMatch(TokenType.LEFT_PAREN) ||
-			   doesMatch(TokenType.NUM)) {
-				args.add(parseExpression());
-				
-				if(!doesMatch(TokenType.COMMA)) {
-					readMore = false;
-				} else {
-					match(TokenType.COMMA);
-				}
-			} else {
-				readMore = false;
-			}
-		}
-		
-		return args;
+		return expressions.parse();
 	}
 	
 	private ArrayList<Variable> parseParameters() throws ParseErrorException {
@@ -397,8 +268,8 @@ public class CMinusParser implements Parser {
 	}
 	
 	private Variable parseParameter() throws ParseErrorException {
-		Variable var = new Variable(currentToken.getTokenData().toString());
-		currentToken = scanner.getNextToken();
+		Variable var = new Variable(tokens.symbolName(), tokens.symbol());
+		tokens.advance();
 		
 		if(doesMatch(TokenType.LEFT_SQUARE)) {
 			match(TokenType.LEFT_SQUARE);
@@ -410,50 +281,48 @@ public class CMinusParser implements Parser {
 	}
 	
 	private void match(TokenType type) throws ParseErrorException {
-		if(currentToken.getTokenType() != type) {
-			throw new ParseErrorException("Match failed. " + currentToken.getTokenType() + " != " + type);
+		if(tokens.peek() != type) {
+			throw new ParseErrorException("Match failed. " + tokens.peek() + " != " + type);
 		}
 		
-		currentToken = scanner.getNextToken();
+		tokens.advance();
 	}
 	
-	private boolean isRelationalOp() {
-		return doesMatch(TokenType.LESS_THAN) || doesMatch(TokenType.LT_EQUAL) || 
-			   doesMatch(TokenType.EQUAL) || doesMatch(TokenType.GT_EQUAL) ||
-			   doesMatch(TokenType.GREATER_THAN);
+	private boolean doesMatch(TokenType type) {
+		return tokens.peek() == type;
 	}
 	
-	private Operator getOperator(Token token) {
-		Operator op = null;
-		
-		if(doesMatch(TokenType.PLUS)) {
-			op = Operator.ADD;
-		} else if(doesMatch(TokenType.MINUS)) {
-			op = Operator.SUBTRACT;
-		} else if(doesMatch(TokenType.MULTIPLY)) {
-			op = Operator.MULTIPLY;
-		} else if(doesMatch(TokenType.DIVIDE)) {
-			op = Operator.DIVIDE;
-		} else if(doesMatch(TokenType.GREATER_THAN)) {
-			op = Operator.GREATER_THAN;
-		} else if(doesMatch(TokenType.GT_EQUAL)) {
-			op = Operator.GT_EQUAL;
-		} else if(doesMatch(TokenType.EQUAL)) {
-			op = Operator.EQUAL;
-		} else if(doesMatch(TokenType.LESS_THAN)) {
-			op = Operator.LESS_THAN;
-		} else if(doesMatch(TokenType.LT_EQUAL)) {
-			op = Operator.LT_EQUAL;
+	/**
+	 * Scan and then parse <code>filename</code> repeatedly, timing the two
+	 * separately since the parser only ever sees a prebuilt TokenStream.
+	 */
+	private static void benchmark(String filename, int runs) throws IOException {
+		ByteBuffer source = MappedCMinusScanner.mapFile(filename);
+		double mb = source.limit() / (1024.0 * 1024.0);
+		
+		for(int run = 0; run < runs; run++) {
+			long start = System.nanoTime();
+			TokenStream tokens = TokenStream.scan(source.duplicate());
+			long scanned = System.nanoTime();
+			Program program = new CMinusParser(tokens).parse();
+			long parsed = System.nanoTime();
+			
+			if(program == null) {
+				return;
+			}
+			
+			System.out.printf("run %d: %d tokens, scan %.1f MB/s (%.1f ms), parse %.1f MB/s (%.1f ms)%n",
+				run, tokens.size(), mb / ((scanned - start) / 1e9), (scanned - start) / 1e6,
+				mb / ((parsed - scanned) / 1e9), (parsed - scanned) / 1e6);
 		}
-		
-		return op;
 	}
 	
-	private boolean doesMatch(TokenType type) {
-		return currentToken.getTokenType() == type;
-	}
-	
-	public static void main(String[] args) {
+	public static void main(String[] args) throws IOException {
+		if(args.length > 0) {
+			benchmark(args[0], (args.length > 1) ? Integer.parseInt(args[1]) : 10);
+			return;
+		}
+		
 		String testFile = "test4";
     	CMinusScanner scanner = null;
     	try {
@@ -0,0 +1,770 @@
+package parser;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import lowlevel.Attribute;
+import lowlevel.BasicBlock;
+import lowlevel.CodeItem;
+import lowlevel.Data;
+import lowlevel.FuncParam;
+import lowlevel.Function;
+import lowlevel.Operand;
+import lowlevel.Operation;
+import scanner.MappedCMinusScanner;
+import scanner.TokenStream;
+import scanner.TokenType;
+
+/**
+ * Translates a TokenStream straight into low-level code in one pass, with no
+ * Program in between.  Each construct is lowered into the current Function
+ * and BasicBlock as soon as it is recognized, following the same grammar as
+ * FlatParser, and the result is exactly what <code>Program.genLLCode</code>
+ * gives for the tree CMinusParser builds: the same blocks, operations,
+ * registers and numbering.  There is no tree to simplify, so nothing is.
+ *
+ * Two things the tree walk does out of source order are reproduced here.
+ * Call arguments are passed last to first, so each argument is lowered into
+ * a run of operations which is cut off the block, and once the call is
+ * complete the runs are renumbered and put back in reverse.  Array indexes
+ * are not lowered at all, so nothing is emitted while one is being parsed.
+ */
+public class CMinusTranslator {
+	private TokenStream tokens;
+	private SymbolTable symbols;
+
+	// the function being translated
+	private Function f;
+
+	// greater than 0 inside an array index, which is parsed but not lowered
+	private int skipping = 0;
+
+	public CMinusTranslator(TokenStream tokens) {
+		this.tokens = tokens;
+		symbols = new SymbolTable(tokens.getIdentifiers());
+	}
+
+	/**
+	 * Translate the whole stream.
+	 * @return the first item of the program, or null if there was a parse
+	 * error
+	 */
+	public CodeItem translate() {
+		try {
+			CodeItem first = translateDeclaration();
+			CodeItem last = first;
+
+			// translate declarations until we run out
+			while(doesMatch(TokenType.INT) || doesMatch(TokenType.VOID)) {
+				CodeItem item = translateDeclaration();
+				last.setNextItem(item);
+				last = item;
+			}
+
+			return first;
+		} catch (ParseErrorException e) {
+			System.out.println(e);
+		}
+
+		return null;
+	}
+
+	private CodeItem translateDeclaration() throws ParseErrorException {
+		int type = doesMatch(TokenType.VOID) ? Data.TYPE_VOID : Data.TYPE_INT;
+		if(!doesMatch(TokenType.INT) && !doesMatch(TokenType.VOID)) {
+			throw new ParseErrorException("Expected a declaration, found " + tokens.peek());
+		}
+		tokens.advance();
+
+		String name = tokens.symbolName();
+		int symbol = tokens.symbol();
+		match(TokenType.ID);
+
+		if(doesMatch(TokenType.LEFT_PAREN)) {
+			return translateFunction(type, name);
+		}
+
+		int arraySize = parseArraySize();
+		symbols.declareGlobal(symbol);
+		return new Data(type, name, arraySize != -1, arraySize);
+	}
+
+	/**
+	 * Parse the rest of a variable declaration.
+	 * @return the size if it is an array, otherwise -1
+	 */
+	private int parseArraySize() throws ParseErrorException {
+		int arraySize = -1;
+		if(doesMatch(TokenType.LEFT_SQUARE)) {
+			match(TokenType.LEFT_SQUARE);
+			arraySize = tokens.intValue();
+			match(TokenType.NUM);
+			match(TokenType.RIGHT_SQUARE);
+		}
+
+		match(TokenType.SEMICOLON);
+		return arraySize;
+	}
+
+	private Function translateFunction(int type, String name) throws ParseErrorException {
+		f = new Function(type, name);
+		f.createBlock0();
+
+		// the parameters are in scope for the whole body
+		symbols.pushScope();
+		match(TokenType.LEFT_PAREN);
+		translateParameters();
+		match(TokenType.RIGHT_PAREN);
+
+		BasicBlock bb = new BasicBlock(f);
+		BasicBlock retBlock = f.genReturnBlock();
+		f.setCurrBlock(bb);
+		translateCompoundStatement();
+		symbols.popScope();
+
+		f.appendBlock(bb);
+		f.appendBlock(retBlock);
+		if(f.getFirstUnconnectedBlock() != null) {
+			f.appendBlock(f.getFirstUnconnectedBlock());
+		}
+
+		return f;
+	}
+
+	private void translateParameters() throws ParseErrorException {
+		if(doesMatch(TokenType.INT)) {
+			match(TokenType.INT);
+			FuncParam param = translateParameter();
+			f.setFirstParam(param);
+
+			while(doesMatch(TokenType.COMMA)) {
+				match(TokenType.COMMA);
+				match(TokenType.INT);
+				FuncParam next = translateParameter();
+				param.setNextParam(next);
+				param = next;
+			}
+		} else if(doesMatch(TokenType.VOID)) {
+			match(TokenType.VOID);
+		}
+	}
+
+	private FuncParam translateParameter() throws ParseErrorException {
+		String name = tokens.symbolName();
+		int symbol = tokens.symbol();
+		match(TokenType.ID);
+
+		boolean isArray = false;
+		if(doesMatch(TokenType.LEFT_SQUARE)) {
+			match(TokenType.LEFT_SQUARE);
+			match(TokenType.RIGHT_SQUARE);
+			isArray = true;
+		}
+
+		FuncParam param = new FuncParam(Data.TYPE_INT, name, isArray);
+		param.setRegNum(f.getNewRegNum());
+		symbols.declare(symbol, param.getRegNum());
+		return param;
+	}
+
+	private void translateCompoundStatement() throws ParseErrorException {
+		match(TokenType.LEFT_CURLY);
+		symbols.pushScope();
+
+		while(doesMatch(TokenType.INT)) {
+			match(TokenType.INT);
+			int symbol = tokens.symbol();
+			match(TokenType.ID);
+			parseArraySize();
+			symbols.declare(symbol, f.getNewRegNum());
+		}
+
+		while(isStatementStart()) {
+			translateStatement();
+		}
+
+		match(TokenType.RIGHT_CURLY);
+		symbols.popScope();
+	}
+
+	private boolean isStatementStart() {
+		return doesMatch(TokenType.ID) || doesMatch(TokenType.LEFT_PAREN) ||
+			   doesMatch(TokenType.NUM) || doesMatch(TokenType.LEFT_CURLY) ||
+			   doesMatch(TokenType.IF) || doesMatch(TokenType.WHILE) ||
+			   doesMatch(TokenType.RETURN) || doesMatch(TokenType.SEMICOLON);
+	}
+
+	private void translateStatement() throws ParseErrorException {
+		if(doesMatch(TokenType.LEFT_CURLY)) {
+			translateCompoundStatement();
+		} else if(doesMatch(TokenType.IF)) {
+			translateIf();
+		} else if(doesMatch(TokenType.WHILE)) {
+			translateWhile();
+		} else if(doesMatch(TokenType.RETURN)) {
+			translateReturn();
+		} else {
+			// we could just have an empty expression
+			if(!doesMatch(TokenType.SEMICOLON)) {
+				translateExpression();
+			}
+			match(TokenType.SEMICOLON);
+		}
+	}
+
+	private void translateIf() throws ParseErrorException {
+		match(TokenType.IF);
+		match(TokenType.LEFT_PAREN);
+
+		BasicBlock ifBlock = new BasicBlock(f);
+		BasicBlock elseBlock = new BasicBlock(f);
+		BasicBlock post = new BasicBlock(f);
+
+		BasicBlock eval = new BasicBlock(f);
+		f.appendToCurrentBlock(eval);
+		f.setCurrBlock(eval);
+		int condition = conditionRegister(translateExpression());
+		match(TokenType.RIGHT_PAREN);
+
+		// where it branches to is only known once we see if there is an else
+		Operation branch = new Operation(Operation.OPER_BNE, f.getCurrBlock());
+		branch.setSrcOperand(0, new Operand(Operand.OPERAND_REG, condition));
+		branch.setSrcOperand(1, new Operand(Operand.OPERAND_INT, 0));
+		eval.appendOper(branch);
+
+		f.appendToCurrentBlock(ifBlock);
+		f.setCurrBlock(ifBlock);
+		translateStatement();
+
+		if(doesMatch(TokenType.ELSE)) {
+			match(TokenType.ELSE);
+			branch.setSrcOperand(2, new Operand(Operand.OPERAND_BLOCK, elseBlock.getBlockNum()));
+
+			BasicBlock current = f.getCurrBlock();
+			f.appendUnconnectedBlock(elseBlock);
+			f.setCurrBlock(elseBlock);
+			translateStatement();
+
+			Operation jump = new Operation(Operation.OPER_JMP, f.getCurrBlock());
+			jump.setSrcOperand(0, new Operand(Operand.OPERAND_BLOCK, post.getBlockNum()));
+			elseBlock.appendOper(jump);
+			f.setCurrBlock(current);
+		} else {
+			branch.setSrcOperand(2, new Operand(Operand.OPERAND_BLOCK, post.getBlockNum()));
+		}
+
+		f.appendToCurrentBlock(post);
+		f.setCurrBlock(post);
+	}
+
+	private void translateWhile() throws ParseErrorException {
+		match(TokenType.WHILE);
+		match(TokenType.LEFT_PAREN);
+
+		BasicBlock whileLoop = new BasicBlock(f);
+		BasicBlock post = new BasicBlock(f);
+
+		BasicBlock eval = new BasicBlock(f);
+		f.appendToCurrentBlock(eval);
+		f.setCurrBlock(eval);
+		int condition = conditionRegister(translateExpression());
+		match(TokenType.RIGHT_PAREN);
+
+		Operation branch = new Operation(Operation.OPER_BNE, f.getCurrBlock());
+		branch.setSrcOperand(0, new Operand(Operand.OPERAND_REG, condition));
+		branch.setSrcOperand(1, new Operand(Operand.OPERAND_INT, 0));
+		branch.setSrcOperand(2, new Operand(Operand.OPERAND_BLOCK, post.getBlockNum()));
+		eval.appendOper(branch);
+
+		f.appendToCurrentBlock(whileLoop);
+		f.setCurrBlock(whileLoop);
+		translateStatement();
+
+		Operation jump = new Operation(Operation.OPER_JMP, f.getCurrBlock());
+		jump.setSrcOperand(0, new Operand(Operand.OPERAND_BLOCK, eval.getBlockNum()));
+		whileLoop.appendOper(jump);
+
+		f.appendToCurrentBlock(post);
+		f.setCurrBlock(post);
+	}
+
+	private void translateReturn() throws ParseErrorException {
+		match(TokenType.RETURN);
+
+		if(!doesMatch(TokenType.SEMICOLON)) {
+			Operand value = translateExpression();
+
+			Operation assign = new Operation(Operation.OPER_ASSIGN, f.getCurrBlock());
+			assign.setSrcOperand(0, value);
+			assign.setDestOperand(0, new Operand(Operand.OPERAND_MACRO, "RetReg"));
+			f.getCurrBlock().appendOper(assign);
+		}
+
+		match(TokenType.SEMICOLON);
+	}
+
+	/**
+	 * Translate an expression.
+	 * @return a new operand for its value: an immediate for a literal,
+	 * otherwise the register holding it, which is register 0 for an
+	 * assignment just as with the node objects.  Null while skipping.
+	 */
+	private Operand translateExpression() throws ParseErrorException {
+		if(!doesMatch(TokenType.ID)) {
+			return translateSimpleExpression(translateFactor());
+		}
+
+		String name = tokens.symbolName();
+		int symbol = tokens.symbol();
+		match(TokenType.ID);
+
+		if(doesMatch(TokenType.LEFT_PAREN)) {
+			return translateSimpleExpression(translateCall(name));
+		}
+
+		Operand variable = translateVariable(name, symbol);
+		if(doesMatch(TokenType.ASSIGN)) {
+			match(TokenType.ASSIGN);
+			Operand value = translateExpression();
+			return assign(name, symbol, variable, value);
+		}
+
+		return translateSimpleExpression(variable);
+	}
+
+	/**
+	 * Translate the rest of a simple expression whose first factor has
+	 * already been translated.
+	 */
+	private Operand translateSimpleExpression(Operand factor) throws ParseErrorException {
+		Operand lhs = translateAdditiveExpression(translateTerm(factor));
+
+		if(isRelationalOp()) {
+			Operator op = getOperator();
+			tokens.advance();
+			Operand rhs = translateAdditiveExpression(translateTerm(translateFactor()));
+			return binary(op, lhs, rhs);
+		}
+
+		return lhs;
+	}
+
+	private Operand translateAdditiveExpression(Operand term) throws ParseErrorException {
+		while(doesMatch(TokenType.PLUS) || doesMatch(TokenType.MINUS)) {
+			Operator op = getOperator();
+			tokens.advance();
+			Operand rhs = translateTerm(translateFactor());
+			term = binary(op, term, rhs);
+		}
+
+		return term;
+	}
+
+	private Operand translateTerm(Operand factor) throws ParseErrorException {
+		while(doesMatch(TokenType.MULTIPLY) || doesMatch(TokenType.DIVIDE)) {
+			Operator op = getOperator();
+			tokens.advance();
+			Operand rhs = translateFactor();
+			factor = binary(op, factor, rhs);
+		}
+
+		return factor;
+	}
+
+	private Operand translateFactor() throws ParseErrorException {
+		if(doesMatch(TokenType.LEFT_PAREN)) {
+			match(TokenType.LEFT_PAREN);
+			Operand e = translateExpression();
+			match(TokenType.RIGHT_PAREN);
+			return e;
+		} else if(doesMatch(TokenType.NUM)) {
+			Operand e = new Operand(Operand.OPERAND_INT, tokens.intValue());
+			match(TokenType.NUM);
+			return e;
+		} else if(doesMatch(TokenType.ID)) {
+			String name = tokens.symbolName();
+			int symbol = tokens.symbol();
+			match(TokenType.ID);
+
+			if(doesMatch(TokenType.LEFT_PAREN)) {
+				return translateCall(name);
+			}
+			return translateVariable(name, symbol);
+		}
+
+		throw new ParseErrorException("Expected an expression, found " + tokens.peek());
+	}
+
+	private Operand translateVariable(String name, int symbol) throws ParseErrorException {
+		if(doesMatch(TokenType.LEFT_SQUARE)) {
+			match(TokenType.LEFT_SQUARE);
+			skipping++;
+			translateExpression();
+			skipping--;
+			match(TokenType.RIGHT_SQUARE);
+		}
+
+		if(skipping > 0) {
+			return null;
+		}
+
+		int binding = symbols.lookup(symbol);
+		if(binding >= 0) {
+			return new Operand(Operand.OPERAND_REG, binding);
+		} else if(binding == SymbolTable.GLOBAL) {
+			int regNum = f.getNewRegNum();
+
+			Operation oper = new Operation(Operation.OPER_LOAD_I, f.getCurrBlock());
+			f.getCurrBlock().appendOper(oper);
+			oper.setDestOperand(0, new Operand(Operand.OPERAND_REG, regNum));
+			oper.setSrcOperand(0, new Operand(Operand.OPERAND_STRING, name));
+			return new Operand(Operand.OPERAND_REG, regNum);
+		}
+
+		throw new ParseErrorException("No variable named " + name);
+	}
+
+	private Operand assign(String name, int symbol, Operand variable, Operand value) {
+		if(skipping > 0) {
+			return null;
+		}
+
+		int regNum = (Integer) variable.getValue();
+		Operation oper = new Operation(Operation.OPER_ASSIGN, f.getCurrBlock());
+		f.getCurrBlock().appendOper(oper);
+		oper.setDestOperand(0, new Operand(Operand.OPERAND_REG, regNum));
+		oper.setSrcOperand(0, value);
+
+		// if its a global then we have to store it
+		if(symbols.isGlobal(symbol)) {
+			Operation store = new Operation(Operation.OPER_STORE_I, f.getCurrBlock());
+			f.getCurrBlock().appendOper(store);
+			store.setSrcOperand(0, new Operand(Operand.OPERAND_REG, regNum));
+			store.setSrcOperand(1, new Operand(Operand.OPERAND_STRING, name));
+		}
+
+		return new Operand(Operand.OPERAND_REG, 0);
+	}
+
+	private Operand binary(Operator op, Operand lhs, Operand rhs) {
+		if(skipping > 0) {
+			return null;
+		}
+
+		Operation oper = new Operation(convertOp(op), f.getCurrBlock());
+		f.getCurrBlock().appendOper(oper);
+		int regNum = f.getNewRegNum();
+		oper.setDestOperand(0, new Operand(Operand.OPERAND_REG, regNum));
+		oper.setSrcOperand(0, lhs);
+		oper.setSrcOperand(1, rhs);
+		return new Operand(Operand.OPERAND_REG, regNum);
+	}
+
+	private Operand translateCall(String name) throws ParseErrorException {
+		match(TokenType.LEFT_PAREN);
+
+		BasicBlock block = (skipping > 0) ? null : f.getCurrBlock();
+		int operNum = (skipping > 0) ? 0 : f.getMaxOperNum();
+		int regNum = (skipping > 0) ? 0 : f.getMaxRegNum();
+
+		ArrayList<Argument> args = new ArrayList<Argument>();
+		if(doesMatch(TokenType.ID) || doesMatch(TokenType.LEFT_PAREN) || doesMatch(TokenType.NUM)) {
+			args.add(translateArgument(block));
+
+			while(doesMatch(TokenType.COMMA)) {
+				match(TokenType.COMMA);
+				args.add(translateArgument(block));
+			}
+		}
+
+		match(TokenType.RIGHT_PAREN);
+
+		if(skipping > 0) {
+			return null;
+		}
+
+		// arguments are passed last to first, so put them back in that order
+		// and number them as if they had been lowered that way
+		for(int i = args.size() - 1; i >= 0; i--) {
+			Argument arg = args.get(i);
+			Operation pass = new Operation(Operation.OPER_PASS, block);
+			pass.setNum(++operNum);
+
+			arg.moveTo(block, operNum, regNum);
+			operNum += arg.numOpers;
+			regNum += arg.numRegs;
+
+			pass.setSrcOperand(0, arg.value);
+			block.appendOper(pass);
+		}
+
+		Operation oper = new Operation(Operation.OPER_CALL, block);
+		oper.addAttribute(new Attribute("numParams", String.valueOf(args.size())));
+		oper.setSrcOperand(0, new Operand(Operand.OPERAND_STRING, name));
+		block.appendOper(oper);
+
+		oper = new Operation(Operation.OPER_ASSIGN, block);
+		oper.setSrcOperand(0, new Operand(Operand.OPERAND_MACRO, "RetReg"));
+		int result = f.getNewRegNum();
+		oper.setDestOperand(0, new Operand(Operand.OPERAND_REG, result));
+		block.appendOper(oper);
+
+		return new Operand(Operand.OPERAND_REG, result);
+	}
+
+	/**
+	 * Translate one call argument and cut the operations it added off the
+	 * end of <code>block</code>.
+	 */
+	private Argument translateArgument(BasicBlock block) throws ParseErrorException {
+		Argument arg = new Argument();
+		if(skipping > 0) {
+			translateExpression();
+			return arg;
+		}
+
+		Operation mark = block.getLastOper();
+		arg.firstOper = f.getMaxOperNum();
+		arg.firstReg = f.getMaxRegNum();
+
+		arg.value = translateExpression();
+
+		arg.numOpers = f.getMaxOperNum() - arg.firstOper;
+		arg.numRegs = f.getMaxRegNum() - arg.firstReg;
+		if(block.getLastOper() != mark) {
+			arg.first = (mark == null) ? block.getFirstOper() : mark.getNextOper();
+			arg.last = block.getLastOper();
+
+			if(mark == null) {
+				block.setFirstOper(null);
+			} else {
+				mark.setNextOper(null);
+			}
+			block.setLastOper(mark);
+			arg.first.setPrevOper(null);
+		}
+
+		return arg;
+	}
+
+	/**
+	 * The operations lowered for one call argument, which were numbered
+	 * from just after <code>firstOper</code> and <code>firstReg</code>.
+	 */
+	private static class Argument {
+		Operand value;
+		Operation first;
+		Operation last;
+		int firstOper;
+		int numOpers;
+		int firstReg;
+		int numRegs;
+
+		/**
+		 * Renumber the operations to follow <code>operNum</code> and the
+		 * registers they define to follow <code>regNum</code>, then append
+		 * them to <code>block</code>.
+		 */
+		void moveTo(BasicBlock block, int operNum, int regNum) {
+			int operShift = operNum - firstOper;
+			int regShift = regNum - firstReg;
+
+			for(Operation oper = first; oper != null; oper = oper.getNextOper()) {
+				oper.setNum(oper.getNum() + operShift);
+				for(int i = 0; i < Operation.MAX_SRC_OPERANDS; i++) {
+					renumber(oper.getSrcOperand(i), regShift);
+				}
+				for(int i = 0; i < Operation.MAX_DEST_OPERANDS; i++) {
+					renumber(oper.getDestOperand(i), regShift);
+				}
+			}
+			renumber(value, regShift);
+
+			if(first != null) {
+				if(block.getLastOper() == null) {
+					block.setFirstOper(first);
+				} else {
+					block.getLastOper().setNextOper(first);
+					first.setPrevOper(block.getLastOper());
+				}
+				block.setLastOper(last);
+			}
+		}
+
+		private void renumber(Operand operand, int regShift) {
+			if(operand != null && operand.getType() == Operand.OPERAND_REG) {
+				int reg = (Integer) operand.getValue();
+				if(reg > firstReg && reg <= firstReg + numRegs) {
+					operand.setValue(reg + regShift);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The register holding <code>value</code>, loading it first if it is a
+	 * literal, for a branch which can only test a register.
+	 */
+	private int conditionRegister(Operand value) {
+		if(value.getType() != Operand.OPERAND_INT) {
+			return (Integer) value.getValue();
+		}
+
+		int regNum = f.getNewRegNum();
+		Operation oper = new Operation(Operation.OPER_ASSIGN, f.getCurrBlock());
+		oper.setDestOperand(0, new Operand(Operand.OPERAND_REG, regNum));
+		oper.setSrcOperand(0, value);
+		f.getCurrBlock().appendOper(oper);
+
+		return regNum;
+	}
+
+	private static int convertOp(Operator operator) {
+		switch(operator) {
+			case ADD:
+				return Operation.OPER_ADD_I;
+			case SUBTRACT:
+				return Operation.OPER_SUB_I;
+			case MULTIPLY:
+				return Operation.OPER_MUL_I;
+			case DIVIDE:
+				return Operation.OPER_DIV_I;
+			case EQUAL:
+				return Operation.OPER_EQUAL;
+			case GREATER_THAN:
+				return Operation.OPER_GT;
+			case LESS_THAN:
+				return Operation.OPER_LT;
+			case GT_EQUAL:
+				return Operation.OPER_GTE;
+			case LT_EQUAL:
+				return Operation.OPER_LTE;
+			case NOT_EQUAL:
+				return Operation.OPER_NOTEQ;
+			default:
+				throw new ParseErrorException("Error: convertOp failed");
+		}
+	}
+
+	private void match(TokenType type) throws ParseErrorException {
+		if(tokens.peek() != type) {
+			throw new ParseErrorException("Match failed. " + tokens.peek() + " != " + type);
+		}
+
+		tokens.advance();
+	}
+
+	private boolean isRelationalOp() {
+		return doesMatch(TokenType.LESS_THAN) || doesMatch(TokenType.LT_EQUAL) ||
+			   doesMatch(TokenType.EQUAL) || doesMatch(TokenType.GT_EQUAL) ||
+			   doesMatch(TokenType.GREATER_THAN) || doesMatch(TokenType.NOT_EQUAL);
+	}
+
+	private Operator getOperator() {
+		switch(tokens.peek()) {
+			case PLUS:
+				return Operator.ADD;
+			case MINUS:
+				return Operator.SUBTRACT;
+			case MULTIPLY:
+				return Operator.MULTIPLY;
+			case DIVIDE:
+				return Operator.DIVIDE;
+			case GREATER_THAN:
+				return Operator.GREATER_THAN;
+			case GT_EQUAL:
+				return Operator.GT_EQUAL;
+			case EQUAL:
+				return Operator.EQUAL;
+			case LESS_THAN:
+				return Operator.LESS_THAN;
+			case LT_EQUAL:
+				return Operator.LT_EQUAL;
+			case NOT_EQUAL:
+				return Operator.NOT_EQUAL;
+			default:
+				return null;
+		}
+	}
+
+	private boolean doesMatch(TokenType type) {
+		return tokens.peek() == type;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 4; i++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static String llCode(CodeItem code) {
+		StringWriter text = new StringWriter();
+		PrintWriter out = new PrintWriter(text);
+		code.printLLCode(out);
+		out.close();
+		return text.toString();
+	}
+
+	/**
+	 * Check that translating <code>filename</code> gives the same code as
+	 * parsing and lowering the tree, then time the two and compare the heap
+	 * each holds at its peak.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0) {
+			System.err.println("usage: CMinusTranslator <file> [runs]");
+			return;
+		}
+
+		ByteBuffer source = MappedCMinusScanner.mapFile(args[0]);
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+		Program program = new CMinusParser(TokenStream.scan(source.duplicate())).parse();
+		CodeItem translated = new CMinusTranslator(TokenStream.scan(source.duplicate())).translate();
+		if(program == null || translated == null) {
+			return;
+		}
+		System.out.println(llCode(program.genLLCode()).equals(llCode(translated)) ?
+			"translated code matches" : "TRANSLATED CODE DIFFERS");
+		program = null;
+		translated = null;
+
+		// the heap still held once lowering has finished, when the tree and
+		// the code it was lowered to are both alive
+		long before = usedHeap();
+		program = new CMinusParser(TokenStream.scan(source.duplicate())).parse();
+		CodeItem lowered = program.genLLCode();
+		long treeHeap = usedHeap() - before;
+		program = null;
+		lowered = null;
+
+		before = usedHeap();
+		translated = new CMinusTranslator(TokenStream.scan(source.duplicate())).translate();
+		long translatedHeap = usedHeap() - before;
+		translated = null;
+
+		System.out.printf("heap held: parse and lower %.1f MB, translate %.1f MB%n",
+			treeHeap / (1024.0 * 1024.0), translatedHeap / (1024.0 * 1024.0));
+
+		for(int run = 0; run < runs; run++) {
+			TokenStream tokens = TokenStream.scan(source.duplicate());
+			long start = System.nanoTime();
+			new CMinusParser(tokens).parse().genLLCode();
+			long treeTime = System.nanoTime() - start;
+
+			tokens = TokenStream.scan(source.duplicate());
+			start = System.nanoTime();
+			new CMinusTranslator(tokens).translate();
+			long translateTime = System.nanoTime() - start;
+
+			System.out.printf("run %d: parse and lower %.1f ms, translate %.1f ms%n",
+				run, treeTime / 1e6, translateTime / 1e6);
+		}
+	}
+}
@@ -18,10 +18,10 @@ public class CallExpression extends Expression {
 		this.args = args;
 	}
 	
-	public void genLLCode(Function f) {
+	public void genLLCode(Function f, SymbolTable symbols) {
 		for(int i = args.size()-1; i >=0; i--) {
 			Operation oper = new Operation(Operation.OPER_PASS, f.getCurrBlock());
-			args.get(i).genLLCode(f);
+			args.get(i).genLLCode(f, symbols);
 			
 			Operand op = null;
 			if(args.get(i) instanceof LiteralExpression) {
@@ -40,6 +40,9 @@ public class CallExpression extends Expression {
 		oper.setSrcOperand(0, op);
 		f.getCurrBlock().appendOper(oper);
 		
+		// the call may have changed any global
+		symbols.forgetValues();
+		
 		oper = new Operation(Operation.OPER_ASSIGN, f.getCurrBlock());
 		op = new Operand(Operand.OPERAND_MACRO, "RetReg");
 		oper.setSrcOperand(0, op);
@@ -50,6 +53,27 @@ public class CallExpression extends Expression {
 		f.getCurrBlock().appendOper(oper);
 	}
 
+	public Expression simplify() {
+		for(int i = 0; i < args.size(); i++) {
+			args.set(i, args.get(i).simplify());
+		}
+		
+		return this;
+	}
+	
+	public boolean hasSideEffects() {
+		return true;
+	}
+	
+	public void write(AstOutput out) throws IOException {
+		out.writeByte(AstOutput.CALL_EXPRESSION);
+		out.writeName(id);
+		out.writeVarInt(args.size());
+		for(Expression exp : args) {
+			out.writeNode(exp);
+		}
+	}
+	
 	public void print(String tab, BufferedWriter out) throws IOException {
 		out.write(tab + "CallExpression: " + id + " ( \n");
 		for(Expression exp : args) {
@@ -3,6 +3,6 @@ package parser;
 import lowlevel.CodeItem;
 
 public interface CodeGen {
-	public CodeItem genLLCode();
+	public CodeItem genLLCode(SymbolTable symbols);
 	
 }
@@ -18,12 +18,47 @@ public class CompoundStatement extends Statement {
 		statements.add(s);
 	}
 	
-	public void genLLCode(Function f) {
+	public void genLLCode(Function f, SymbolTable symbols) {
+		// names declared here can shadow ones used in values already computed,
+		// and the other way round once the block ends
+		if(!varDeclarations.isEmpty()) {
+			symbols.forgetValues();
+		}
+		symbols.pushScope();
 		for(VariableDeclaration varDecl : varDeclarations) {
-			f.getTable().put(varDecl.getID(), f.getNewRegNum());
+			symbols.declare(symbols.resolve(varDecl.getSymbol(), varDecl.getID()), f.getNewRegNum());
+		}
+		for(Statement s : statements) {
+			s.genLLCode(f, symbols);
+		}
+		symbols.popScope();
+		if(!varDeclarations.isEmpty()) {
+			symbols.forgetValues();
+		}
+	}
+	
+	public Statement simplify() {
+		ArrayList<Statement> simplified = new ArrayList<Statement>(statements.size());
+		for(Statement s : statements) {
+			s = s.simplify();
+			if(s != null) {
+				simplified.add(s);
+			}
+		}
+		
+		statements = simplified;
+		return (statements.isEmpty() && varDeclarations.isEmpty()) ? null : this;
+	}
+	
+	public void write(AstOutput out) throws IOException {
+		out.writeByte(AstOutput.COMPOUND_STATEMENT);
+		out.writeVarInt(varDeclarations.size());
+		for(VariableDeclaration vd : varDeclarations) {
+			out.writeNode(vd);
 		}
+		out.writeVarInt(statements.size());
 		for(Statement s : statements) {
-			s.genLLCode(f);
+			out.writeNode(s);
 		}
 	}
 	
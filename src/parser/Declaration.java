@@ -3,6 +3,7 @@ package parser;
 public abstract class Declaration implements ParseNode, CodeGen {
 	private VariableType type;
 	private String id;
+	private int symbol = -1;
 	
 	public Declaration() {}
 	
@@ -11,6 +12,11 @@ public abstract class Declaration implements ParseNode, CodeGen {
 		this.type = type;
 	}
 	
+	public Declaration(String id, int symbol, VariableType type) {
+		this(id, type);
+		this.symbol = symbol;
+	}
+	
 	public VariableType getType() {
 		return type;
 	}
@@ -19,4 +25,16 @@ public abstract class Declaration implements ParseNode, CodeGen {
 		return id;
 	}
 	
+	/**
+	 * The symbol id the scanner gave the name, or -1 if it was not scanned.
+	 */
+	public int getSymbol() {
+		return symbol;
+	}
+	
+	/**
+	 * Simplify the code in this declaration before it is lowered.
+	 */
+	public void simplify() {}
+	
 }
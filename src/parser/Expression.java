@@ -3,9 +3,13 @@ package parser;
 import java.io.BufferedWriter;
 import java.io.IOException;
 
+import lowlevel.Function;
+
 public abstract class Expression implements ParseNode, VoidCodeGen {
 	private String id;
 	protected int regNum;
+	// a hash of the structure of the expression, set when the node is built
+	protected int hash;
 	
 	public Expression() {}
 	public Expression(String id) {
@@ -16,5 +20,63 @@ public abstract class Expression implements ParseNode, VoidCodeGen {
 		return id;
 	}
 	
+	/**
+	 * Fold constants and apply algebraic identities within this expression.
+	 * @return the simplified expression, which may be this one
+	 */
+	public Expression simplify() {
+		return this;
+	}
+	
+	/**
+	 * Whether evaluating this expression can change anything, in which case
+	 * it may not be dropped.
+	 */
+	public boolean hasSideEffects() {
+		return false;
+	}
+	
+	/**
+	 * Whether evaluating this expression can trap, by dividing by zero or
+	 * dividing the most negative int by -1, in which case it may not be
+	 * dropped either.
+	 */
+	public boolean mayTrap() {
+		return false;
+	}
+	
+	/**
+	 * A hash of the kind, operator, name or value and children of this
+	 * expression, as it was parsed.  Simplifying may leave it stale, so it is
+	 * only good for ExpressionTable while parsing.
+	 */
+	public int structuralHash() {
+		return hash;
+	}
+	
+	/**
+	 * Whether <code>other</code> is the same expression as this one, assuming
+	 * identical children are the same node.
+	 */
+	public boolean sameStructure(Expression other) {
+		return false;
+	}
+	
+	/**
+	 * Whether the value of this expression depends on the variable
+	 * <code>symbol</code>.
+	 */
+	public boolean reads(int symbol, SymbolTable symbols) {
+		return false;
+	}
+	
+	/**
+	 * The register holding the value of this expression once genLLCode has
+	 * run on it.
+	 */
+	public int getRegister(Function f) {
+		return regNum;
+	}
+	
 	public abstract void print(String tab, BufferedWriter out) throws IOException;
 }
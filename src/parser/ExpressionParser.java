@@ -0,0 +1,311 @@
+package parser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import scanner.TokenStream;
+import scanner.TokenType;
+
+/**
+ * Parses C- expressions by precedence climbing over an explicit operand stack
+ * and operator stack, so neither long operator chains nor deep nesting of
+ * parentheses, array indexes or call arguments use any Java stack.
+ *
+ * The trees are the ones the expression grammar of grammar.txt describes:
+ * * and / bind tighter than + and -, which bind tighter than the relational
+ * operators, and all of them are left associative.  At most one relational
+ * operator may appear outside parentheses.  Assignment is right associative
+ * and only allowed when a variable starts the expression, so
+ * <code>a = b[i] = c</code> parses while <code>a + b = c</code> and
+ * <code>(a) = b</code> do not.
+ *
+ * Parsing stops at the first token which cannot continue the expression and
+ * leaves it for the caller, as the recursive parser did.
+ */
+public class ExpressionParser {
+	// operator stack entries below FIRST_MARKER are Operator ordinals; these
+	// and the tables below are shared with FlatParser
+	static final int ASSIGN = Operator.values().length;
+	static final int FIRST_MARKER = ASSIGN + 1;
+	static final int PAREN = FIRST_MARKER;
+	static final int INDEX = FIRST_MARKER + 1;
+	static final int CALL = FIRST_MARKER + 2;
+
+	// how tightly each operator on the stack binds
+	static final int[] PRECEDENCE = new int[FIRST_MARKER];
+	static final int RELATIONAL = 1;
+
+	static {
+		PRECEDENCE[Operator.MULTIPLY.ordinal()] = 3;
+		PRECEDENCE[Operator.DIVIDE.ordinal()] = 3;
+		PRECEDENCE[Operator.ADD.ordinal()] = 2;
+		PRECEDENCE[Operator.SUBTRACT.ordinal()] = 2;
+		PRECEDENCE[Operator.NOT_EQUAL.ordinal()] = RELATIONAL;
+		PRECEDENCE[Operator.GREATER_THAN.ordinal()] = RELATIONAL;
+		PRECEDENCE[Operator.LESS_THAN.ordinal()] = RELATIONAL;
+		PRECEDENCE[Operator.GT_EQUAL.ordinal()] = RELATIONAL;
+		PRECEDENCE[Operator.LT_EQUAL.ordinal()] = RELATIONAL;
+		PRECEDENCE[Operator.EQUAL.ordinal()] = RELATIONAL;
+		PRECEDENCE[ASSIGN] = 0;
+	}
+
+	private static final Operator[] OPERATORS = Operator.values();
+
+	private TokenStream tokens;
+
+	private Expression[] operands = new Expression[64];
+	private int operandTop = 0;
+
+	// operators and markers, with the name and symbol id of the array or
+	// function for an INDEX or CALL marker and, for any marker, whether the
+	// expression inside it started with a variable which could be assigned to
+	private int[] operators = new int[64];
+	private String[] names = new String[64];
+	private int[] symbols = new int[64];
+	private boolean[] assignable = new boolean[64];
+	// where each CALL marker's arguments start on the operand stack
+	private int[] argStarts = new int[64];
+	private int operatorTop = 0;
+
+	// shares identical subexpressions across every expression parsed
+	private ExpressionTable table = new ExpressionTable();
+
+	public ExpressionParser(TokenStream tokens) {
+		this.tokens = tokens;
+	}
+
+	/**
+	 * Parse one expression starting at the current token.
+	 * @throws ParseErrorException if there is no expression there or it is
+	 * malformed
+	 */
+	public Expression parse() throws ParseErrorException {
+		operatorTop = 0;
+		operandTop = 0;
+
+		// true while the next operand would start an expression, which is the
+		// only place a variable may be assigned to
+		boolean atStart = true;
+
+		while(true) {
+			// an operand, after any number of opening parentheses
+			boolean canAssign = false;
+			TokenType type = tokens.peek();
+
+			if(type == TokenType.LEFT_PAREN) {
+				tokens.advance();
+				pushOperator(PAREN, null, -1, false);
+				atStart = true;
+				continue;
+			} else if(type == TokenType.NUM) {
+				pushOperand(table.intern(new LiteralExpression(tokens.intValue())));
+				tokens.advance();
+			} else if(type == TokenType.ID) {
+				String id = tokens.symbolName();
+				int symbol = tokens.symbol();
+				tokens.advance();
+
+				if(tokens.peek() == TokenType.LEFT_PAREN) {
+					tokens.advance();
+					pushOperator(CALL, id, symbol, false);
+					argStarts[operatorTop - 1] = operandTop;
+
+					if(tokens.peek() != TokenType.RIGHT_PAREN) {
+						atStart = true;
+						continue;
+					}
+
+					tokens.advance();
+					finishCall();
+				} else if(tokens.peek() == TokenType.LEFT_SQUARE) {
+					tokens.advance();
+					pushOperator(INDEX, id, symbol, atStart);
+					atStart = true;
+					continue;
+				} else {
+					pushOperand(table.intern(new VariableExpression(id, symbol)));
+					canAssign = atStart;
+				}
+			} else {
+				throw new ParseErrorException("Expected an expression, found " + type);
+			}
+
+			// then whatever closes or continues it
+			atStart = false;
+			while(true) {
+				type = tokens.peek();
+
+				if(type == TokenType.ASSIGN && canAssign) {
+					tokens.advance();
+					pushOperator(ASSIGN, null, -1, false);
+					atStart = true;
+					break;
+				}
+
+				Operator op = getOperator(type);
+				if(op != null) {
+					reduce(PRECEDENCE[op.ordinal()], PRECEDENCE[op.ordinal()] == RELATIONAL);
+					tokens.advance();
+					pushOperator(op.ordinal(), null, -1, false);
+					break;
+				}
+
+				int marker = (type == TokenType.RIGHT_PAREN || type == TokenType.RIGHT_SQUARE ||
+							  type == TokenType.COMMA) ? findMarker() : -1;
+				if(marker < 0) {
+					// the end of the whole expression
+					reduce(0, false);
+					if(operatorTop > 0) {
+						throw new ParseErrorException("Match failed. " + type + " != " + closing(operators[operatorTop - 1]));
+					}
+					return popOperand();
+				}
+
+				reduce(0, false);
+				canAssign = false;
+
+				if(type == TokenType.COMMA) {
+					if(operators[marker] != CALL) {
+						throw new ParseErrorException("Match failed. COMMA != " + closing(operators[marker]));
+					}
+					tokens.advance();
+					atStart = true;
+					break;
+				}
+
+				if(type != closing(operators[marker])) {
+					throw new ParseErrorException("Match failed. " + type + " != " + closing(operators[marker]));
+				}
+				tokens.advance();
+
+				if(operators[marker] == PAREN) {
+					operatorTop--;
+				} else if(operators[marker] == CALL) {
+					finishCall();
+				} else {
+					Expression index = popOperand();
+					canAssign = assignable[marker];
+					operatorTop--;
+					pushOperand(table.intern(new VariableExpression(names[marker], symbols[marker], index)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Build the call on top of the operator stack from its arguments.
+	 */
+	private void finishCall() {
+		int marker = operatorTop - 1;
+		ArrayList<Expression> args = new ArrayList<Expression>(operandTop - argStarts[marker]);
+		for(int i = argStarts[marker]; i < operandTop; i++) {
+			args.add(operands[i]);
+			operands[i] = null;
+		}
+
+		operandTop = argStarts[marker];
+		operatorTop--;
+		pushOperand(new CallExpression(names[marker], args));
+	}
+
+	/**
+	 * Apply every operator above the nearest marker which binds at least as
+	 * tightly as <code>precedence</code>.
+	 * @param relational whether a relational operator is about to be pushed,
+	 * which may not follow another
+	 */
+	private void reduce(int precedence, boolean relational) throws ParseErrorException {
+		while(operatorTop > 0) {
+			int op = operators[operatorTop - 1];
+			if(op >= FIRST_MARKER || PRECEDENCE[op] < precedence) {
+				return;
+			}
+			if(relational && PRECEDENCE[op] == RELATIONAL) {
+				throw new ParseErrorException("Unexpected " + tokens.peek() + " after a comparison");
+			}
+
+			operatorTop--;
+			Expression rhs = popOperand();
+			Expression lhs = popOperand();
+			if(op == ASSIGN) {
+				pushOperand(new AssignExpression(lhs, rhs));
+			} else {
+				pushOperand(table.intern(new BinaryExpression(OPERATORS[op], lhs, rhs)));
+			}
+		}
+	}
+
+	/**
+	 * The index of the innermost open marker on the operator stack, or -1.
+	 */
+	private int findMarker() {
+		for(int i = operatorTop - 1; i >= 0; i--) {
+			if(operators[i] >= FIRST_MARKER) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	static TokenType closing(int marker) {
+		return (marker == INDEX) ? TokenType.RIGHT_SQUARE : TokenType.RIGHT_PAREN;
+	}
+
+	static Operator getOperator(TokenType type) {
+		switch(type) {
+			case PLUS:
+				return Operator.ADD;
+			case MINUS:
+				return Operator.SUBTRACT;
+			case MULTIPLY:
+				return Operator.MULTIPLY;
+			case DIVIDE:
+				return Operator.DIVIDE;
+			case GREATER_THAN:
+				return Operator.GREATER_THAN;
+			case GT_EQUAL:
+				return Operator.GT_EQUAL;
+			case EQUAL:
+				return Operator.EQUAL;
+			case LESS_THAN:
+				return Operator.LESS_THAN;
+			case LT_EQUAL:
+				return Operator.LT_EQUAL;
+			case NOT_EQUAL:
+				return Operator.NOT_EQUAL;
+			default:
+				return null;
+		}
+	}
+
+	private void pushOperator(int op, String name, int symbol, boolean canAssign) {
+		if(operatorTop == operators.length) {
+			int size = operatorTop * 2;
+			operators = Arrays.copyOf(operators, size);
+			names = Arrays.copyOf(names, size);
+			symbols = Arrays.copyOf(symbols, size);
+			assignable = Arrays.copyOf(assignable, size);
+			argStarts = Arrays.copyOf(argStarts, size);
+		}
+
+		operators[operatorTop] = op;
+		names[operatorTop] = name;
+		symbols[operatorTop] = symbol;
+		assignable[operatorTop] = canAssign;
+		operatorTop++;
+	}
+
+	private void pushOperand(Expression e) {
+		if(operandTop == operands.length) {
+			operands = Arrays.copyOf(operands, operandTop * 2);
+		}
+		operands[operandTop++] = e;
+	}
+
+	private Expression popOperand() {
+		Expression e = operands[--operandTop];
+		operands[operandTop] = null;
+		return e;
+	}
+}
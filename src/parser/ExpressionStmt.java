@@ -14,12 +14,26 @@ public class ExpressionStmt extends Statement {
 		expression = e;
 	}
 	
-	public void genLLCode(Function f) {
+	public void genLLCode(Function f, SymbolTable symbols) {
 		if(expression != null) {
-			expression.genLLCode(f);
+			expression.genLLCode(f, symbols);
 		}
 	}
 
+	public Statement simplify() {
+		if(expression == null) {
+			return null;
+		}
+		
+		expression = expression.simplify();
+		return (expression.hasSideEffects() || expression.mayTrap()) ? this : null;
+	}
+
+	public void write(AstOutput out) throws IOException {
+		out.writeByte(AstOutput.EXPRESSION_STMT);
+		out.writeNode(expression);
+	}
+
 	public void print(String tab, BufferedWriter out) throws IOException {
 		if(expression != null) {
 			out.write(tab + "ExpressionStmt: \n");
@@ -0,0 +1,79 @@
+package parser;
+
+/**
+ * Hash-conses expression nodes, so that structurally identical expressions
+ * without side effects are a single shared node.  Parsers build children
+ * before their parents and intern each node as it is built, so two nodes are
+ * identical exactly when they are the same kind with the same operator, name
+ * or value and the very same children: comparing them never descends the
+ * tree, and the structural hash each node works out when it is built only
+ * looks at its children's hashes.
+ *
+ * Calls and assignments, and anything containing one, are never shared, as
+ * each has to happen where it is written.  Sharing a node is otherwise
+ * invisible until lowering, which can then reuse the register an identical
+ * expression was computed into (see AvailableValues).
+ */
+public class ExpressionTable {
+	private static final int INITIAL_CAPACITY = 256;
+
+	// open addressing table of shared nodes
+	private Expression[] slots = new Expression[INITIAL_CAPACITY];
+	private int count = 0;
+
+	/**
+	 * @return the shared node identical to <code>e</code>, which is
+	 * <code>e</code> itself if there was none yet or it cannot be shared
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends Expression> T intern(T e) {
+		// a node with side effects is an assignment or a call or has one
+		// somewhere below it
+		if(e.hasSideEffects()) {
+			return e;
+		}
+
+		int mask = slots.length - 1;
+		for(int slot = mix(e.structuralHash()) & mask; ; slot = (slot + 1) & mask) {
+			Expression shared = slots[slot];
+			if(shared == null) {
+				slots[slot] = e;
+				if(++count * 2 > slots.length) {
+					grow();
+				}
+				return e;
+			}
+
+			if(shared.structuralHash() == e.structuralHash() && shared.sameStructure(e)) {
+				// sameStructure only matches nodes of the same class
+				return (T) shared;
+			}
+		}
+	}
+
+	public int size() {
+		return count;
+	}
+
+	private void grow() {
+		Expression[] old = slots;
+		slots = new Expression[old.length * 2];
+		int mask = slots.length - 1;
+
+		for(Expression e : old) {
+			if(e != null) {
+				int slot = mix(e.structuralHash()) & mask;
+				while(slots[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = e;
+			}
+		}
+	}
+
+	private static int mix(int hash) {
+		hash ^= hash >>> 16;
+		hash *= 0x85ebca6b;
+		return hash ^ (hash >>> 13);
+	}
+}
@@ -0,0 +1,879 @@
+package parser;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import lowlevel.Attribute;
+import lowlevel.BasicBlock;
+import lowlevel.CodeItem;
+import lowlevel.Data;
+import lowlevel.FuncParam;
+import lowlevel.Function;
+import lowlevel.Operand;
+import lowlevel.Operation;
+import scanner.IdentifierTable;
+import scanner.MappedCMinusScanner;
+import scanner.TokenStream;
+
+/**
+ * A compact AST in which a node is an int index into parallel arrays (kind,
+ * operator, first child, child count and payload) rather than an object.  The
+ * children of each node are stored contiguously in one shared array, so a
+ * whole program is a handful of arrays however big it is.  Built by
+ * FlatParser.
+ *
+ * What each kind keeps in its operator, payload and children:
+ * <pre>
+ *   PROGRAM      -            -                  declarations
+ *   VAR_DECL     VariableType symbol             [LITERAL array size]
+ *   FUNC_DECL    VariableType symbol             PARAM..., COMPOUND
+ *   PARAM        1 if array   symbol             -
+ *   COMPOUND     -            # of declarations  VAR_DECL..., statements
+ *   EXPR_STMT    -            -                  [expression]
+ *   IF           -            -                  condition, then, [else]
+ *   WHILE        -            -                  condition, body
+ *   RETURN       -            -                  [expression]
+ *   ASSIGN       -            -                  VARIABLE, expression
+ *   BINARY       Operator     -                  lhs, rhs
+ *   CALL         -            symbol             arguments
+ *   VARIABLE     -            symbol             [index]
+ *   LITERAL      -            value              -
+ * </pre>
+ *
+ * <code>genLLCode</code> and <code>printTree</code> walk the arrays directly
+ * and produce exactly what the matching node objects would.
+ */
+public class FlatAst implements CodeGen {
+	public static final byte PROGRAM = 0;
+	public static final byte VAR_DECL = 1;
+	public static final byte FUNC_DECL = 2;
+	public static final byte PARAM = 3;
+	public static final byte COMPOUND = 4;
+	public static final byte EXPR_STMT = 5;
+	public static final byte IF = 6;
+	public static final byte WHILE = 7;
+	public static final byte RETURN = 8;
+	public static final byte ASSIGN = 9;
+	public static final byte BINARY = 10;
+	public static final byte CALL = 11;
+	public static final byte VARIABLE = 12;
+	public static final byte LITERAL = 13;
+
+	private static final Operator[] OPERATORS = Operator.values();
+	private static final VariableType[] TYPES = VariableType.values();
+
+	private byte[] kinds;
+	private byte[] operators;
+	private int[] childStarts;
+	private int[] childCounts;
+	private int[] payloads;
+	private int numNodes = 0;
+
+	private int[] children;
+	private int numChildren = 0;
+
+	private int root = -1;
+	private IdentifierTable identifiers;
+
+	// the expressions genExpression is lowering, innermost last, with how
+	// many children of each have been lowered and, for a call, the pass of
+	// the argument being lowered
+	private int[] pending = new int[64];
+	private int[] lowered = new int[64];
+	private Operation[] passes = new Operation[64];
+	// the register holding the value of each expression node once lowered
+	private int[] registers;
+
+	public FlatAst(int capacity, IdentifierTable identifiers) {
+		capacity = Math.max(capacity, 16);
+		kinds = new byte[capacity];
+		operators = new byte[capacity];
+		childStarts = new int[capacity];
+		childCounts = new int[capacity];
+		payloads = new int[capacity];
+		children = new int[capacity];
+		this.identifiers = identifiers;
+	}
+
+	/**
+	 * Add a node whose children are <code>kids[from, from + count)</code>.
+	 * @return the new node
+	 */
+	int addNode(byte kind, int operator, int payload, int[] kids, int from, int count) {
+		if(numNodes == kinds.length) {
+			int capacity = Math.max(numNodes * 2, 16);
+			kinds = Arrays.copyOf(kinds, capacity);
+			operators = Arrays.copyOf(operators, capacity);
+			childStarts = Arrays.copyOf(childStarts, capacity);
+			childCounts = Arrays.copyOf(childCounts, capacity);
+			payloads = Arrays.copyOf(payloads, capacity);
+		}
+
+		if(numChildren + count > children.length) {
+			children = Arrays.copyOf(children, Math.max(children.length * 2, numChildren + count));
+		}
+
+		System.arraycopy(kids, from, children, numChildren, count);
+
+		int node = numNodes++;
+		kinds[node] = kind;
+		operators[node] = (byte) operator;
+		payloads[node] = payload;
+		childStarts[node] = numChildren;
+		childCounts[node] = count;
+		numChildren += count;
+
+		return node;
+	}
+
+	/**
+	 * Set the root and release the space the arrays grew into but did not
+	 * use.
+	 */
+	void setRoot(int node) {
+		root = node;
+
+		kinds = Arrays.copyOf(kinds, numNodes);
+		operators = Arrays.copyOf(operators, numNodes);
+		childStarts = Arrays.copyOf(childStarts, numNodes);
+		childCounts = Arrays.copyOf(childCounts, numNodes);
+		payloads = Arrays.copyOf(payloads, numNodes);
+		children = Arrays.copyOf(children, numChildren);
+	}
+
+	public int getRoot() {
+		return root;
+	}
+
+	public int getKind(int node) {
+		return kinds[node];
+	}
+
+	public int getOperator(int node) {
+		return operators[node];
+	}
+
+	public int getPayload(int node) {
+		return payloads[node];
+	}
+
+	public int getChildCount(int node) {
+		return childCounts[node];
+	}
+
+	public int getChild(int node, int i) {
+		return children[childStarts[node] + i];
+	}
+
+	/**
+	 * The name of the symbol a declaration, parameter, call or variable node
+	 * refers to.
+	 */
+	public String getName(int node) {
+		return identifiers.getName(payloads[node]);
+	}
+
+	public IdentifierTable getIdentifiers() {
+		return identifiers;
+	}
+
+	/**
+	 * Number of nodes in the tree.
+	 */
+	public int size() {
+		return numNodes;
+	}
+
+	/**
+	 * Lower the program with a fresh symbol table.
+	 */
+	public CodeItem genLLCode() {
+		return genLLCode(new SymbolTable(identifiers));
+	}
+
+	public CodeItem genLLCode(SymbolTable symbols) {
+		CodeItem first = null;
+		CodeItem last = null;
+
+		for(int i = 0; i < childCounts[root]; i++) {
+			int declaration = getChild(root, i);
+			CodeItem item = (kinds[declaration] == FUNC_DECL) ?
+				genFunction(declaration, symbols) : genData(declaration, symbols);
+
+			if(last == null) {
+				first = item;
+			} else {
+				last.setNextItem(item);
+			}
+			last = item;
+		}
+
+		return first;
+	}
+
+	private CodeItem genData(int declaration, SymbolTable symbols) {
+		String name = getName(declaration);
+		int arraySize = (childCounts[declaration] > 0) ? payloads[getChild(declaration, 0)] : -1;
+
+		symbols.declareGlobal(payloads[declaration]);
+		return new Data(typeConvert(declaration), name, arraySize != -1, arraySize);
+	}
+
+	private CodeItem genFunction(int declaration, SymbolTable symbols) {
+		Function f = new Function(typeConvert(declaration), getName(declaration));
+		f.createBlock0();
+
+		int numParams = childCounts[declaration] - 1;
+		symbols.pushScope();
+		FuncParam funcParam = null;
+		for(int i = 0; i < numParams; i++) {
+			int param = getChild(declaration, i);
+			FuncParam temp = new FuncParam(Data.TYPE_INT, getName(param), operators[param] != 0);
+			if(funcParam == null) {
+				f.setFirstParam(temp);
+			} else {
+				funcParam.setNextParam(temp);
+			}
+			funcParam = temp;
+			temp.setRegNum(f.getNewRegNum());
+			symbols.declare(payloads[param], temp.getRegNum());
+		}
+
+		BasicBlock bb = new BasicBlock(f);
+		BasicBlock retBlock = f.genReturnBlock();
+		f.setCurrBlock(bb);
+		genStatement(f, symbols, getChild(declaration, numParams));
+		symbols.popScope();
+
+		f.appendBlock(bb);
+		f.appendBlock(retBlock);
+		if(f.getFirstUnconnectedBlock() != null) {
+			f.appendBlock(f.getFirstUnconnectedBlock());
+		}
+
+		return f;
+	}
+
+	private int typeConvert(int declaration) {
+		return (TYPES[operators[declaration]] == VariableType.INT) ? Data.TYPE_INT : Data.TYPE_VOID;
+	}
+
+	private void genStatement(Function f, SymbolTable symbols, int node) {
+		switch(kinds[node]) {
+			case COMPOUND:
+				int numDeclarations = payloads[node];
+				symbols.pushScope();
+				for(int i = 0; i < numDeclarations; i++) {
+					symbols.declare(payloads[getChild(node, i)], f.getNewRegNum());
+				}
+				for(int i = numDeclarations; i < childCounts[node]; i++) {
+					genStatement(f, symbols, getChild(node, i));
+				}
+				symbols.popScope();
+				break;
+			case EXPR_STMT:
+				if(childCounts[node] > 0) {
+					genExpression(f, symbols, getChild(node, 0));
+				}
+				break;
+			case RETURN:
+				if(childCounts[node] > 0) {
+					genReturn(f, symbols, getChild(node, 0));
+				}
+				break;
+			case IF:
+				genIf(f, symbols, node);
+				break;
+			case WHILE:
+				genWhile(f, symbols, node);
+				break;
+			default:
+				throw new ParseErrorException("Not a statement: node " + node);
+		}
+	}
+
+	private void genReturn(Function f, SymbolTable symbols, int expression) {
+		int regNum = genExpression(f, symbols, expression);
+
+		Operation assign = new Operation(Operation.OPER_ASSIGN, f.getCurrBlock());
+		assign.setSrcOperand(0, valueOperand(expression, regNum));
+		assign.setDestOperand(0, new Operand(Operand.OPERAND_MACRO, "RetReg"));
+		f.getCurrBlock().appendOper(assign);
+	}
+
+	private void genIf(Function f, SymbolTable symbols, int node) {
+		boolean hasElse = childCounts[node] > 2;
+		BasicBlock ifBlock = new BasicBlock(f);
+		BasicBlock elseBlock = new BasicBlock(f);
+		BasicBlock post = new BasicBlock(f);
+		BasicBlock eval = new BasicBlock(f);
+
+		f.appendToCurrentBlock(eval);
+		f.setCurrBlock(eval);
+		int regNum = conditionRegister(f, getChild(node, 0), genExpression(f, symbols, getChild(node, 0)));
+
+		Operation oper = new Operation(Operation.OPER_BNE, f.getCurrBlock());
+		oper.setSrcOperand(0, new Operand(Operand.OPERAND_REG, regNum));
+		oper.setSrcOperand(1, new Operand(Operand.OPERAND_INT, 0));
+		oper.setSrcOperand(2, new Operand(Operand.OPERAND_BLOCK,
+			hasElse ? elseBlock.getBlockNum() : post.getBlockNum()));
+		eval.appendOper(oper);
+
+		f.appendToCurrentBlock(ifBlock);
+		f.setCurrBlock(ifBlock);
+		genStatement(f, symbols, getChild(node, 1));
+
+		if(hasElse) {
+			BasicBlock current = f.getCurrBlock();
+			f.appendUnconnectedBlock(elseBlock);
+			f.setCurrBlock(elseBlock);
+			genStatement(f, symbols, getChild(node, 2));
+
+			oper = new Operation(Operation.OPER_JMP, f.getCurrBlock());
+			oper.setSrcOperand(0, new Operand(Operand.OPERAND_BLOCK, post.getBlockNum()));
+			elseBlock.appendOper(oper);
+			f.setCurrBlock(current);
+		}
+
+		f.appendToCurrentBlock(post);
+		f.setCurrBlock(post);
+	}
+
+	private void genWhile(Function f, SymbolTable symbols, int node) {
+		BasicBlock whileLoop = new BasicBlock(f);
+		BasicBlock post = new BasicBlock(f);
+		BasicBlock eval = new BasicBlock(f);
+
+		f.appendToCurrentBlock(eval);
+		f.setCurrBlock(eval);
+		int regNum = conditionRegister(f, getChild(node, 0), genExpression(f, symbols, getChild(node, 0)));
+
+		Operation oper = new Operation(Operation.OPER_BNE, f.getCurrBlock());
+		oper.setSrcOperand(0, new Operand(Operand.OPERAND_REG, regNum));
+		oper.setSrcOperand(1, new Operand(Operand.OPERAND_INT, 0));
+		oper.setSrcOperand(2, new Operand(Operand.OPERAND_BLOCK, post.getBlockNum()));
+		eval.appendOper(oper);
+
+		f.appendToCurrentBlock(whileLoop);
+		f.setCurrBlock(whileLoop);
+		genStatement(f, symbols, getChild(node, 1));
+
+		oper = new Operation(Operation.OPER_JMP, f.getCurrBlock());
+		oper.setSrcOperand(0, new Operand(Operand.OPERAND_BLOCK, eval.getBlockNum()));
+		whileLoop.appendOper(oper);
+
+		f.appendToCurrentBlock(post);
+		f.setCurrBlock(post);
+	}
+
+	/**
+	 * Lower an expression.  Children are lowered before their parent, as
+	 * the node objects do it, but from an explicit stack so that deeply
+	 * nested expressions use no Java stack.
+	 * @return the register holding its value.  As with the node objects this
+	 * is 0 for literals, which are used in place, and for assignments.
+	 */
+	private int genExpression(Function f, SymbolTable symbols, int expression) {
+		if(registers == null || registers.length < numNodes) {
+			registers = new int[numNodes];
+		}
+
+		int depth = pushPending(0, expression);
+		while(depth > 0) {
+			int node = pending[depth - 1];
+			int done = lowered[depth - 1];
+
+			switch(kinds[node]) {
+				case LITERAL:
+					registers[node] = 0;
+					break;
+				case VARIABLE:
+					// the index of an array reference is not lowered, as in VariableExpression
+					registers[node] = genVariable(f, symbols, node);
+					break;
+				case ASSIGN:
+				case BINARY:
+					if(done < 2) {
+						lowered[depth - 1]++;
+						depth = pushPending(depth, getChild(node, done));
+						continue;
+					}
+					if(kinds[node] == ASSIGN) {
+						genAssign(f, symbols, node);
+						registers[node] = 0;
+					} else {
+						registers[node] = genBinary(f, node);
+					}
+					break;
+				case CALL:
+					// arguments are passed last to first
+					int numArgs = childCounts[node];
+					if(done > 0) {
+						int arg = getChild(node, numArgs - done);
+						passes[depth - 1].setSrcOperand(0, valueOperand(arg, registers[arg]));
+						f.getCurrBlock().appendOper(passes[depth - 1]);
+						passes[depth - 1] = null;
+					}
+					if(done < numArgs) {
+						passes[depth - 1] = new Operation(Operation.OPER_PASS, f.getCurrBlock());
+						lowered[depth - 1]++;
+						depth = pushPending(depth, getChild(node, numArgs - 1 - done));
+						continue;
+					}
+					registers[node] = genCall(f, node);
+					break;
+				default:
+					throw new ParseErrorException("Not an expression: node " + node);
+			}
+			depth--;
+		}
+
+		return registers[expression];
+	}
+
+	/**
+	 * Push <code>node</code> on the stack of expressions being lowered.
+	 * @return the new depth of the stack
+	 */
+	private int pushPending(int depth, int node) {
+		if(depth == pending.length) {
+			pending = Arrays.copyOf(pending, depth * 2);
+			lowered = Arrays.copyOf(lowered, depth * 2);
+			passes = Arrays.copyOf(passes, depth * 2);
+		}
+
+		pending[depth] = node;
+		lowered[depth] = 0;
+		return depth + 1;
+	}
+
+	private int genVariable(Function f, SymbolTable symbols, int node) {
+		String name = getName(node);
+		int binding = symbols.lookup(payloads[node]);
+
+		if(binding >= 0) {
+			return binding;
+		} else if(binding == SymbolTable.GLOBAL) {
+			int regNum = f.getNewRegNum();
+			Operation oper = new Operation(Operation.OPER_LOAD_I, f.getCurrBlock());
+			f.getCurrBlock().appendOper(oper);
+			oper.setDestOperand(0, new Operand(Operand.OPERAND_REG, regNum));
+			oper.setSrcOperand(0, new Operand(Operand.OPERAND_STRING, name));
+			return regNum;
+		}
+
+		throw new ParseErrorException("No variable named " + name);
+	}
+
+	/**
+	 * Assign the lowered right side of <code>node</code> to its lowered left
+	 * side.
+	 */
+	private void genAssign(Function f, SymbolTable symbols, int node) {
+		int lhs = getChild(node, 0);
+		int rhs = getChild(node, 1);
+		int lhsReg = registers[lhs];
+
+		Operation oper = new Operation(Operation.OPER_ASSIGN, f.getCurrBlock());
+		f.getCurrBlock().appendOper(oper);
+		oper.setDestOperand(0, new Operand(Operand.OPERAND_REG, lhsReg));
+		oper.setSrcOperand(0, valueOperand(rhs, registers[rhs]));
+
+		// if its a global then we have to store it
+		if(symbols.isGlobal(payloads[lhs])) {
+			Operation store = new Operation(Operation.OPER_STORE_I, f.getCurrBlock());
+			f.getCurrBlock().appendOper(store);
+			store.setSrcOperand(0, new Operand(Operand.OPERAND_REG, lhsReg));
+			store.setSrcOperand(1, new Operand(Operand.OPERAND_STRING, getName(lhs)));
+		}
+	}
+
+	/**
+	 * Apply the operator of <code>node</code> to its lowered operands.
+	 */
+	private int genBinary(Function f, int node) {
+		int lhs = getChild(node, 0);
+		int rhs = getChild(node, 1);
+
+		Operation oper = new Operation(convertOp(OPERATORS[operators[node]]), f.getCurrBlock());
+		f.getCurrBlock().appendOper(oper);
+		int regNum = f.getNewRegNum();
+		oper.setDestOperand(0, new Operand(Operand.OPERAND_REG, regNum));
+		oper.setSrcOperand(0, valueOperand(lhs, registers[lhs]));
+		oper.setSrcOperand(1, valueOperand(rhs, registers[rhs]));
+
+		return regNum;
+	}
+
+	/**
+	 * Call the function of <code>node</code>, once its arguments are passed.
+	 */
+	private int genCall(Function f, int node) {
+		Operation oper = new Operation(Operation.OPER_CALL, f.getCurrBlock());
+		oper.addAttribute(new Attribute("numParams", String.valueOf(childCounts[node])));
+		oper.setSrcOperand(0, new Operand(Operand.OPERAND_STRING, getName(node)));
+		f.getCurrBlock().appendOper(oper);
+
+		oper = new Operation(Operation.OPER_ASSIGN, f.getCurrBlock());
+		oper.setSrcOperand(0, new Operand(Operand.OPERAND_MACRO, "RetReg"));
+		int regNum = f.getNewRegNum();
+		oper.setDestOperand(0, new Operand(Operand.OPERAND_REG, regNum));
+		f.getCurrBlock().appendOper(oper);
+
+		return regNum;
+	}
+
+	/**
+	 * The register holding the value of <code>node</code>, loading it first
+	 * if it is a literal, for a branch which can only test a register.
+	 */
+	private int conditionRegister(Function f, int node, int regNum) {
+		if(kinds[node] != LITERAL) {
+			return regNum;
+		}
+
+		regNum = f.getNewRegNum();
+		Operation oper = new Operation(Operation.OPER_ASSIGN, f.getCurrBlock());
+		oper.setDestOperand(0, new Operand(Operand.OPERAND_REG, regNum));
+		oper.setSrcOperand(0, valueOperand(node, 0));
+		f.getCurrBlock().appendOper(oper);
+
+		return regNum;
+	}
+
+	/**
+	 * Literals are used as immediates, everything else by register.
+	 */
+	private Operand valueOperand(int node, int regNum) {
+		if(kinds[node] == LITERAL) {
+			return new Operand(Operand.OPERAND_INT, Integer.valueOf(payloads[node]));
+		}
+
+		return new Operand(Operand.OPERAND_REG, regNum);
+	}
+
+	private static int convertOp(Operator operator) {
+		switch(operator) {
+			case ADD:
+				return Operation.OPER_ADD_I;
+			case SUBTRACT:
+				return Operation.OPER_SUB_I;
+			case MULTIPLY:
+				return Operation.OPER_MUL_I;
+			case DIVIDE:
+				return Operation.OPER_DIV_I;
+			case EQUAL:
+				return Operation.OPER_EQUAL;
+			case GREATER_THAN:
+				return Operation.OPER_GT;
+			case LESS_THAN:
+				return Operation.OPER_LT;
+			case GT_EQUAL:
+				return Operation.OPER_GTE;
+			case LT_EQUAL:
+				return Operation.OPER_LTE;
+			case NOT_EQUAL:
+				return Operation.OPER_NOTEQ;
+			default:
+				throw new ParseErrorException("Error: convertOp failed");
+		}
+	}
+
+	/**
+	 * Build the node objects for the tree, for the passes which only work on
+	 * a Program.  Expressions are shared just as ExpressionParser shares
+	 * them, so the result is the tree CMinusParser builds.
+	 */
+	public Program toProgram() {
+		Program program = new Program(identifiers);
+		ExpressionTable table = new ExpressionTable();
+
+		for(int i = 0; i < childCounts[root]; i++) {
+			int declaration = getChild(root, i);
+			if(kinds[declaration] == FUNC_DECL) {
+				program.addDeclaration(toFunction(declaration, table));
+			} else {
+				program.addDeclaration(toVariable(declaration));
+			}
+		}
+
+		return program;
+	}
+
+	private VariableDeclaration toVariable(int declaration) {
+		VariableDeclaration variable =
+			new VariableDeclaration(getName(declaration), payloads[declaration], TYPES[operators[declaration]]);
+		if(childCounts[declaration] > 0) {
+			variable.arraySize = payloads[getChild(declaration, 0)];
+		}
+
+		return variable;
+	}
+
+	private FunctionDeclaration toFunction(int declaration, ExpressionTable table) {
+		FunctionDeclaration function = new FunctionDeclaration(getName(declaration), TYPES[operators[declaration]]);
+
+		int numParams = childCounts[declaration] - 1;
+		ArrayList<Variable> params = new ArrayList<Variable>(numParams);
+		for(int i = 0; i < numParams; i++) {
+			int param = getChild(declaration, i);
+			Variable variable = new Variable(getName(param), payloads[param]);
+			variable.isArray = operators[param] != 0;
+			params.add(variable);
+		}
+		function.setParameters(params);
+		function.setStatement((CompoundStatement) toStatement(getChild(declaration, numParams), table));
+
+		return function;
+	}
+
+	private Statement toStatement(int node, ExpressionTable table) {
+		switch(kinds[node]) {
+			case COMPOUND:
+				CompoundStatement compound = new CompoundStatement();
+				int numDeclarations = payloads[node];
+				for(int i = 0; i < numDeclarations; i++) {
+					compound.addVariableDeclaration(toVariable(getChild(node, i)));
+				}
+				for(int i = numDeclarations; i < childCounts[node]; i++) {
+					compound.addStatement(toStatement(getChild(node, i), table));
+				}
+				return compound;
+			case EXPR_STMT:
+				if(childCounts[node] == 0) {
+					return new ExpressionStmt();
+				}
+				return new ExpressionStmt(toExpression(getChild(node, 0), table));
+			case RETURN:
+				if(childCounts[node] == 0) {
+					return new ReturnStmt();
+				}
+				return new ReturnStmt(toExpression(getChild(node, 0), table));
+			case IF:
+				SelectionStmt selection = new SelectionStmt();
+				selection.expression = toExpression(getChild(node, 0), table);
+				selection.ifStmt = toStatement(getChild(node, 1), table);
+				if(childCounts[node] > 2) {
+					selection.elseStmt = toStatement(getChild(node, 2), table);
+				}
+				return selection;
+			case WHILE:
+				return new IterationStmt(toExpression(getChild(node, 0), table),
+					toStatement(getChild(node, 1), table));
+			default:
+				throw new ParseErrorException("Not a statement: node " + node);
+		}
+	}
+
+	private Expression toExpression(int node, ExpressionTable table) {
+		switch(kinds[node]) {
+			case LITERAL:
+				return table.intern(new LiteralExpression(payloads[node]));
+			case VARIABLE:
+				if(childCounts[node] == 0) {
+					return table.intern(new VariableExpression(getName(node), payloads[node]));
+				}
+				return table.intern(new VariableExpression(getName(node), payloads[node],
+					toExpression(getChild(node, 0), table)));
+			case ASSIGN:
+				return new AssignExpression(toExpression(getChild(node, 0), table),
+					toExpression(getChild(node, 1), table));
+			case BINARY:
+				return table.intern(new BinaryExpression(OPERATORS[operators[node]],
+					toExpression(getChild(node, 0), table), toExpression(getChild(node, 1), table)));
+			case CALL:
+				ArrayList<Expression> args = new ArrayList<Expression>(childCounts[node]);
+				for(int i = 0; i < childCounts[node]; i++) {
+					args.add(toExpression(getChild(node, i), table));
+				}
+				return new CallExpression(getName(node), args);
+			default:
+				throw new ParseErrorException("Not an expression: node " + node);
+		}
+	}
+
+	/**
+	 * Print the tree in the same format as <code>Program.printTree</code>.
+	 */
+	public void printTree(BufferedWriter out) throws IOException {
+		for(int i = 0; i < childCounts[root]; i++) {
+			print(getChild(root, i), "\t", out);
+		}
+	}
+
+	private void print(int node, String tab, BufferedWriter out) throws IOException {
+		int numChildren = childCounts[node];
+
+		switch(kinds[node]) {
+			case VAR_DECL:
+				out.write(tab + "VariableDeclaration: " + getName(node));
+				if(numChildren > 0) {
+					out.write("[ " + payloads[getChild(node, 0)] + " ]");
+				}
+				out.write("\n");
+				break;
+			case FUNC_DECL:
+				out.write("FunctionDeclaration: " + TYPES[operators[node]] + " " + getName(node) + " ( \n");
+				for(int i = 0; i < numChildren - 1; i++) {
+					out.write(tab + "Variable: " + getName(getChild(node, i)) + " \n");
+				}
+				out.write(")\n");
+				print(getChild(node, numChildren - 1), tab, out);
+				out.write("\n");
+				break;
+			case COMPOUND:
+				out.write(tab + "CompoundStatement: {\n");
+				for(int i = 0; i < numChildren; i++) {
+					print(getChild(node, i), tab + "\t", out);
+				}
+				out.write(tab + "}\n");
+				break;
+			case EXPR_STMT:
+				if(numChildren > 0) {
+					out.write(tab + "ExpressionStmt: \n");
+					print(getChild(node, 0), tab + "\t", out);
+					out.write("\n");
+				}
+				break;
+			case RETURN:
+				out.write(tab + "ReturnStmt: \n");
+				if(numChildren > 0) {
+					print(getChild(node, 0), tab + "\t", out);
+				}
+				break;
+			case IF:
+				out.write(tab + "SelectionStmt: if (\n");
+				print(getChild(node, 0), tab + "\t", out);
+				out.write(tab + " )\n");
+				print(getChild(node, 1), tab + "\t", out);
+				if(numChildren > 2) {
+					out.write("\n" + tab + "else\n");
+					print(getChild(node, 2), tab + "\t", out);
+				}
+				break;
+			case WHILE:
+				out.write(tab + "IterationStmt: \n");
+				print(getChild(node, 0), tab + "\t", out);
+				print(getChild(node, 1), tab + "\t", out);
+				out.write("\n");
+				break;
+			case ASSIGN:
+				out.write(tab + "AssignExpression: \n");
+				print(getChild(node, 0), tab + "\t", out);
+				out.write("\n" + tab + "\t=\n");
+				print(getChild(node, 1), tab + "\t", out);
+				out.write("\n");
+				break;
+			case BINARY:
+				out.write(tab + "BinaryExpression: \n");
+				print(getChild(node, 0), tab + "\t", out);
+				out.write("\n" + tab + "\t" + OPERATORS[operators[node]] + "\n");
+				print(getChild(node, 1), tab + "\t", out);
+				out.write("\n");
+				break;
+			case CALL:
+				out.write(tab + "CallExpression: " + getName(node) + " ( \n");
+				for(int i = 0; i < numChildren; i++) {
+					print(getChild(node, i), tab + "\t", out);
+					out.write("\n");
+				}
+				out.write(tab + " )\n");
+				break;
+			case VARIABLE:
+				out.write(tab + "VariableExpression: " + getName(node));
+				if(numChildren > 0) {
+					out.write("[ \n");
+					print(getChild(node, 0), tab + "\t", out);
+					out.write("\n" + tab + "]\n");
+				}
+				break;
+			case LITERAL:
+				out.write(tab + "LiteralExpression: " + payloads[node] + " \n");
+				break;
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 4; i++) {
+			System.gc();
+		}
+
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static String llCode(CodeItem code) {
+		StringWriter text = new StringWriter();
+		PrintWriter out = new PrintWriter(text);
+		code.printLLCode(out);
+		out.close();
+		return text.toString();
+	}
+
+	/**
+	 * Compare the heap held by the object tree and the flat tree for
+	 * <code>filename</code>, check both lower to the same code and time the
+	 * lowering of each.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0) {
+			System.err.println("usage: FlatAst <file> [runs]");
+			return;
+		}
+
+		ByteBuffer source = MappedCMinusScanner.mapFile(args[0]);
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+		TokenStream objectTokens = TokenStream.scan(source.duplicate());
+		TokenStream flatTokens = TokenStream.scan(source.duplicate());
+
+		long before = usedHeap();
+		Program program = new CMinusParser(objectTokens).parse();
+		long objectHeap = usedHeap() - before;
+
+		before = usedHeap();
+		FlatAst flat = new FlatParser(flatTokens).parse();
+		long flatHeap = usedHeap() - before;
+
+		if(program == null || flat == null) {
+			return;
+		}
+
+		System.out.printf("%d bytes of source, %d nodes%n", source.limit(), flat.size());
+		System.out.printf("object tree: %.1f MB, flat tree: %.1f MB%n",
+			objectHeap / (1024.0 * 1024.0), flatHeap / (1024.0 * 1024.0));
+
+		String objectCode = llCode(program.genLLCode());
+		String flatCode = llCode(flat.genLLCode());
+		System.out.println(objectCode.equals(flatCode) ?
+			"lowered code matches" : "LOWERED CODE DIFFERS");
+
+		StringWriter objectTree = new StringWriter();
+		BufferedWriter out = new BufferedWriter(objectTree);
+		program.printTree(out);
+		out.close();
+		StringWriter flatTree = new StringWriter();
+		out = new BufferedWriter(flatTree);
+		flat.printTree(out);
+		out.close();
+		System.out.println(objectTree.toString().equals(flatTree.toString()) ?
+			"printed trees match" : "PRINTED TREES DIFFER");
+
+		for(int run = 0; run < runs; run++) {
+				long start = System.nanoTime();
+			program.genLLCode();
+			long objectTime = System.nanoTime() - start;
+
+				start = System.nanoTime();
+			flat.genLLCode();
+			long flatTime = System.nanoTime() - start;
+
+			System.out.printf("run %d: lowering object tree %.1f ms, flat tree %.1f ms%n",
+				run, objectTime / 1e6, flatTime / 1e6);
+		}
+	}
+}
@@ -0,0 +1,436 @@
+package parser;
+
+import java.util.Arrays;
+
+import scanner.TokenStream;
+import scanner.TokenType;
+
+/**
+ * Parses a TokenStream straight into a FlatAst.  It accepts the same
+ * programs and builds the same tree shapes as CMinusParser, but a node is
+ * only added once all of its children are known: children are collected on
+ * a scratch stack of node indices and then copied into the tree together,
+ * which keeps every node's children contiguous.  Expressions are parsed over
+ * that stack and an operator stack the way ExpressionParser parses them, so
+ * nesting depth is not limited by the Java stack.
+ */
+public class FlatParser {
+	private TokenStream tokens;
+	private FlatAst ast;
+
+	// nodes waiting to be attached to their parent
+	private int[] stack = new int[64];
+	private int top = 0;
+
+	// the operators and markers of the expression being parsed, as in
+	// ExpressionParser, with the symbol of the array or function for an INDEX
+	// or CALL marker, whether the expression inside a marker started with a
+	// variable which could be assigned to, and where a call's arguments start
+	// on the scratch stack
+	private int[] operators = new int[64];
+	private int[] symbols = new int[64];
+	private boolean[] assignable = new boolean[64];
+	private int[] argStarts = new int[64];
+	private int operatorTop = 0;
+
+	public FlatParser(TokenStream tokens) {
+		this.tokens = tokens;
+		// roughly three nodes for every four tokens
+		ast = new FlatAst(tokens.size() / 4 * 3, tokens.getIdentifiers());
+	}
+
+	/**
+	 * Parse the whole stream.
+	 * @return the tree, or null if there was a parse error
+	 */
+	public FlatAst parse() {
+		try {
+			int mark = top;
+
+			push(parseDeclaration());
+
+			// parse declarations until we run out
+			while(doesMatch(TokenType.INT) || doesMatch(TokenType.VOID)) {
+				push(parseDeclaration());
+			}
+
+			ast.setRoot(node(FlatAst.PROGRAM, 0, 0, mark));
+			return ast;
+		} catch (ParseErrorException e) {
+			System.out.println(e);
+		}
+
+		return null;
+	}
+
+	private int parseDeclaration() throws ParseErrorException {
+		VariableType type = doesMatch(TokenType.VOID) ? VariableType.VOID : VariableType.INT;
+		if(!doesMatch(TokenType.INT) && !doesMatch(TokenType.VOID)) {
+			throw new ParseErrorException("Expected a declaration, found " + tokens.peek());
+		}
+		tokens.advance();
+
+		int symbol = tokens.symbol();
+		match(TokenType.ID);
+
+		int mark = top;
+		if(doesMatch(TokenType.LEFT_PAREN)) {
+			match(TokenType.LEFT_PAREN);
+			parseParameters();
+			match(TokenType.RIGHT_PAREN);
+			push(parseCompoundStatement());
+
+			return node(FlatAst.FUNC_DECL, type.ordinal(), symbol, mark);
+		} else if(!doesMatch(TokenType.LEFT_SQUARE) && !doesMatch(TokenType.SEMICOLON)) {
+			throw new ParseErrorException("Malformed declaration, found " + tokens.peek());
+		}
+
+		parseArraySize();
+		return node(FlatAst.VAR_DECL, type.ordinal(), symbol, mark);
+	}
+
+	/**
+	 * Parse the rest of a variable declaration, pushing a literal for the
+	 * size if it is an array.  As in CMinusParser the size is taken from
+	 * whatever token is there, and a declaration followed by anything but
+	 * <code>[</code> or <code>;</code> ends without consuming it.
+	 */
+	private void parseArraySize() throws ParseErrorException {
+		if(doesMatch(TokenType.LEFT_SQUARE)) {
+			match(TokenType.LEFT_SQUARE);
+			push(literal());
+			tokens.advance();
+			match(TokenType.RIGHT_SQUARE);
+			match(TokenType.SEMICOLON);
+		} else if(doesMatch(TokenType.SEMICOLON)) {
+			match(TokenType.SEMICOLON);
+		}
+	}
+
+	private void parseParameters() throws ParseErrorException {
+		if(doesMatch(TokenType.INT)) {
+			match(TokenType.INT);
+			push(parseParameter());
+
+			while(doesMatch(TokenType.COMMA)) {
+				match(TokenType.COMMA);
+				match(TokenType.INT);
+				push(parseParameter());
+			}
+		} else if(doesMatch(TokenType.VOID)) {
+			match(TokenType.VOID);
+		}
+	}
+
+	private int parseParameter() throws ParseErrorException {
+		int symbol = tokens.symbol();
+		match(TokenType.ID);
+
+		int isArray = 0;
+		if(doesMatch(TokenType.LEFT_SQUARE)) {
+			match(TokenType.LEFT_SQUARE);
+			match(TokenType.RIGHT_SQUARE);
+			isArray = 1;
+		}
+
+		return node(FlatAst.PARAM, isArray, symbol, top);
+	}
+
+	private int parseCompoundStatement() throws ParseErrorException {
+		int mark = top;
+		match(TokenType.LEFT_CURLY);
+
+		int numDeclarations = 0;
+		while(doesMatch(TokenType.INT)) {
+			match(TokenType.INT);
+			int symbol = tokens.symbol();
+			match(TokenType.ID);
+
+			int declMark = top;
+			parseArraySize();
+			push(node(FlatAst.VAR_DECL, VariableType.INT.ordinal(), symbol, declMark));
+			numDeclarations++;
+		}
+
+		while(isStatementStart()) {
+			push(parseStatement());
+		}
+
+		match(TokenType.RIGHT_CURLY);
+
+		return node(FlatAst.COMPOUND, 0, numDeclarations, mark);
+	}
+
+	private boolean isStatementStart() {
+		return doesMatch(TokenType.ID) || doesMatch(TokenType.LEFT_PAREN) ||
+			   doesMatch(TokenType.NUM) || doesMatch(TokenType.LEFT_CURLY) ||
+			   doesMatch(TokenType.IF) || doesMatch(TokenType.WHILE) ||
+			   doesMatch(TokenType.RETURN) || doesMatch(TokenType.SEMICOLON);
+	}
+
+	private int parseStatement() throws ParseErrorException {
+		int mark = top;
+
+		if(doesMatch(TokenType.LEFT_CURLY)) {
+			return parseCompoundStatement();
+		} else if(doesMatch(TokenType.IF)) {
+			match(TokenType.IF);
+			match(TokenType.LEFT_PAREN);
+			push(parseExpression());
+			match(TokenType.RIGHT_PAREN);
+			push(parseStatement());
+
+			// get the else part if we have one
+			if(doesMatch(TokenType.ELSE)) {
+				match(TokenType.ELSE);
+				push(parseStatement());
+			}
+
+			return node(FlatAst.IF, 0, 0, mark);
+		} else if(doesMatch(TokenType.WHILE)) {
+			match(TokenType.WHILE);
+			match(TokenType.LEFT_PAREN);
+			push(parseExpression());
+			match(TokenType.RIGHT_PAREN);
+			push(parseStatement());
+
+			return node(FlatAst.WHILE, 0, 0, mark);
+		} else if(doesMatch(TokenType.RETURN)) {
+			match(TokenType.RETURN);
+			if(!doesMatch(TokenType.SEMICOLON)) {
+				push(parseExpression());
+			}
+			match(TokenType.SEMICOLON);
+
+			return node(FlatAst.RETURN, 0, 0, mark);
+		}
+
+		// we could just have an empty expression
+		if(!doesMatch(TokenType.SEMICOLON)) {
+			push(parseExpression());
+		}
+		match(TokenType.SEMICOLON);
+
+		return node(FlatAst.EXPR_STMT, 0, 0, mark);
+	}
+
+	/**
+	 * Parse one expression by precedence climbing, as ExpressionParser does.
+	 * Its operands are kept on the scratch stack, so deep nesting uses no
+	 * Java stack.
+	 * @return the node of the expression, which has been popped
+	 */
+	private int parseExpression() throws ParseErrorException {
+		operatorTop = 0;
+
+		// true while the next operand would start an expression, which is the
+		// only place a variable may be assigned to
+		boolean atStart = true;
+
+		while(true) {
+			// an operand, after any number of opening parentheses
+			boolean canAssign = false;
+			TokenType type = tokens.peek();
+
+			if(type == TokenType.LEFT_PAREN) {
+				tokens.advance();
+				pushOperator(ExpressionParser.PAREN, -1, false);
+				atStart = true;
+				continue;
+			} else if(type == TokenType.NUM) {
+				push(literal());
+				tokens.advance();
+			} else if(type == TokenType.ID) {
+				int symbol = tokens.symbol();
+				tokens.advance();
+
+				if(doesMatch(TokenType.LEFT_PAREN)) {
+					tokens.advance();
+					pushOperator(ExpressionParser.CALL, symbol, false);
+					argStarts[operatorTop - 1] = top;
+
+					if(!doesMatch(TokenType.RIGHT_PAREN)) {
+						atStart = true;
+						continue;
+					}
+
+					tokens.advance();
+					finishCall();
+				} else if(doesMatch(TokenType.LEFT_SQUARE)) {
+					tokens.advance();
+					pushOperator(ExpressionParser.INDEX, symbol, atStart);
+					atStart = true;
+					continue;
+				} else {
+					push(node(FlatAst.VARIABLE, 0, symbol, top));
+					canAssign = atStart;
+				}
+			} else {
+				throw new ParseErrorException("Expected an expression, found " + type);
+			}
+
+			// then whatever closes or continues it
+			atStart = false;
+			while(true) {
+				type = tokens.peek();
+
+				if(type == TokenType.ASSIGN && canAssign) {
+					tokens.advance();
+					pushOperator(ExpressionParser.ASSIGN, -1, false);
+					atStart = true;
+					break;
+				}
+
+				Operator op = ExpressionParser.getOperator(type);
+				if(op != null) {
+					int precedence = ExpressionParser.PRECEDENCE[op.ordinal()];
+					reduce(precedence, precedence == ExpressionParser.RELATIONAL);
+					tokens.advance();
+					pushOperator(op.ordinal(), -1, false);
+					break;
+				}
+
+				int marker = (type == TokenType.RIGHT_PAREN || type == TokenType.RIGHT_SQUARE ||
+							  type == TokenType.COMMA) ? findMarker() : -1;
+				if(marker < 0) {
+					// the end of the whole expression
+					reduce(0, false);
+					if(operatorTop > 0) {
+						throw new ParseErrorException("Match failed. " + type + " != " +
+							ExpressionParser.closing(operators[operatorTop - 1]));
+					}
+					return stack[--top];
+				}
+
+				reduce(0, false);
+				canAssign = false;
+
+				if(type == TokenType.COMMA) {
+					if(operators[marker] != ExpressionParser.CALL) {
+						throw new ParseErrorException("Match failed. COMMA != " +
+							ExpressionParser.closing(operators[marker]));
+					}
+					tokens.advance();
+					atStart = true;
+					break;
+				}
+
+				if(type != ExpressionParser.closing(operators[marker])) {
+					throw new ParseErrorException("Match failed. " + type + " != " +
+						ExpressionParser.closing(operators[marker]));
+				}
+				tokens.advance();
+
+				if(operators[marker] == ExpressionParser.PAREN) {
+					operatorTop--;
+				} else if(operators[marker] == ExpressionParser.CALL) {
+					finishCall();
+				} else {
+					// the index is the only node pushed since the marker
+					canAssign = assignable[marker];
+					operatorTop--;
+					push(node(FlatAst.VARIABLE, 0, symbols[marker], top - 1));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Add the call on top of the operator stack, with its arguments.
+	 */
+	private void finishCall() {
+		int marker = operatorTop - 1;
+		int call = node(FlatAst.CALL, 0, symbols[marker], argStarts[marker]);
+		operatorTop--;
+		push(call);
+	}
+
+	/**
+	 * Apply every operator above the nearest marker which binds at least as
+	 * tightly as <code>precedence</code>.
+	 * @param relational whether a relational operator is about to be pushed,
+	 * which may not follow another
+	 */
+	private void reduce(int precedence, boolean relational) throws ParseErrorException {
+		while(operatorTop > 0) {
+			int op = operators[operatorTop - 1];
+			if(op >= ExpressionParser.FIRST_MARKER || ExpressionParser.PRECEDENCE[op] < precedence) {
+				return;
+			}
+			if(relational && ExpressionParser.PRECEDENCE[op] == ExpressionParser.RELATIONAL) {
+				throw new ParseErrorException("Unexpected " + tokens.peek() + " after a comparison");
+			}
+
+			operatorTop--;
+			if(op == ExpressionParser.ASSIGN) {
+				push(node(FlatAst.ASSIGN, 0, 0, top - 2));
+			} else {
+				push(node(FlatAst.BINARY, op, 0, top - 2));
+			}
+		}
+	}
+
+	/**
+	 * The index of the innermost open marker on the operator stack, or -1.
+	 */
+	private int findMarker() {
+		for(int i = operatorTop - 1; i >= 0; i--) {
+			if(operators[i] >= ExpressionParser.FIRST_MARKER) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * A literal node for the value of the current token.
+	 */
+	private int literal() {
+		return node(FlatAst.LITERAL, 0, tokens.intValue(), top);
+	}
+
+	/**
+	 * Add a node whose children are everything pushed since <code>mark</code>
+	 * and pop them.
+	 */
+	private int node(byte kind, int operator, int payload, int mark) {
+		int node = ast.addNode(kind, operator, payload, stack, mark, top - mark);
+		top = mark;
+		return node;
+	}
+
+	private void push(int node) {
+		if(top == stack.length) {
+			stack = Arrays.copyOf(stack, top * 2);
+		}
+		stack[top++] = node;
+	}
+
+	private void pushOperator(int op, int symbol, boolean canAssign) {
+		if(operatorTop == operators.length) {
+			int size = operatorTop * 2;
+			operators = Arrays.copyOf(operators, size);
+			symbols = Arrays.copyOf(symbols, size);
+			assignable = Arrays.copyOf(assignable, size);
+			argStarts = Arrays.copyOf(argStarts, size);
+		}
+
+		operators[operatorTop] = op;
+		symbols[operatorTop] = symbol;
+		assignable[operatorTop] = canAssign;
+		operatorTop++;
+	}
+
+	private void match(TokenType type) throws ParseErrorException {
+		if(tokens.peek() != type) {
+			throw new ParseErrorException("Match failed. " + tokens.peek() + " != " + type);
+		}
+
+		tokens.advance();
+	}
+
+	private boolean doesMatch(TokenType type) {
+		return tokens.peek() == type;
+	}
+}
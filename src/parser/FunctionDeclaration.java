@@ -33,10 +33,12 @@ public class FunctionDeclaration extends Declaration {
 		statement = s;
 	}
 	
-	public CodeItem genLLCode() {
+	public CodeItem genLLCode(SymbolTable symbols) {
 		Function f = new Function(typeConvert(), getID());
 		f.createBlock0();
 	
+		// the parameters are in scope for the whole body
+		symbols.pushScope();
 		FuncParam funcParam = null;
 		for(Variable v : parameters) {
 			if(funcParam == null) {
@@ -47,7 +49,8 @@ public class FunctionDeclaration extends Declaration {
 				funcParam.setNextParam(temp);
 				funcParam = temp;
 			}
-			f.getTable().put(v.id, f.getNewRegNum());
+			funcParam.setRegNum(f.getNewRegNum());
+			symbols.declare(symbols.resolve(v.symbol, v.id), funcParam.getRegNum());
 		}
 		
 		//f.setFirstUnconnectedBlock(new BasicBlock(f));
@@ -55,7 +58,10 @@ public class FunctionDeclaration extends Declaration {
 		BasicBlock bb = new BasicBlock(f);
 		BasicBlock retBlock = f.genReturnBlock();
 		f.setCurrBlock(bb);
-		statement.genLLCode(f);
+		statement.genLLCode(f, symbols);
+		symbols.popScope();
+		// nothing computed here is available in the next function
+		symbols.forgetValues();
 
 		f.appendBlock(bb);
 		f.appendBlock(retBlock);
@@ -75,6 +81,22 @@ public class FunctionDeclaration extends Declaration {
 			return Data.TYPE_VOID;
 	}
 	
+	public void simplify() {
+		statement.simplify();
+	}
+	
+	public void write(AstOutput out) throws IOException {
+		out.writeByte(AstOutput.FUNCTION_DECLARATION);
+		out.writeName(getID());
+		out.writeType(getType());
+		out.writeVarInt(parameters.size());
+		for(Variable v : parameters) {
+			out.writeName(v.id);
+			out.writeBoolean(v.isArray);
+		}
+		out.writeNode(statement);
+	}
+	
 	@Override
 	public void print(String tab, BufferedWriter out) throws IOException {
 		out.write("FunctionDeclaration: " + getType() + " " + getID() + " ( \n");
@@ -0,0 +1,339 @@
+package parser;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import scanner.IdentifierTable;
+import scanner.MappedCMinusScanner;
+import scanner.ParallelLexer;
+import scanner.TokenStream;
+import scanner.TokenType;
+
+/**
+ * An incremental front end for a source which is edited and recompiled over
+ * and over.  The source is kept as a list of segments, one per top-level
+ * declaration, split at the same top-level <code>;</code> and <code>}</code>
+ * boundaries ParallelLexer uses.  An edit re-lexes and re-parses only the
+ * segments it touches, and the Declaration nodes of every other segment are
+ * reused as they are.
+ *
+ * An edit that changes comment or brace nesting can move the boundaries after
+ * it, so the damaged region grows until it ends on an old boundary which is
+ * still a boundary in the new text.  Scanning state is clean at every
+ * boundary, so everything after that point is unchanged.
+ *
+ * Unlike <code>CMinusParser.parse</code>, tokens after the last declaration
+ * which do not start a new one are reported as an error rather than ignored.
+ */
+public class IncrementalParser {
+	private static final Charset SOURCE_CHARSET = Charset.forName("ISO-8859-1");
+
+	/**
+	 * The text of one top-level declaration, along with any whitespace and
+	 * comments before the next one, and its parse.
+	 */
+	private static class Segment {
+		int start;
+		byte[] text;
+		Declaration declaration;
+		ParseErrorException error;
+
+		int end() {
+			return start + text.length;
+		}
+	}
+
+	private ArrayList<Segment> segments = new ArrayList<Segment>();
+	private IdentifierTable identifiers = new IdentifierTable();
+	private int length;
+
+	// how many segments the last edit re-parsed
+	private int reparsed = 0;
+
+	public IncrementalParser(String source) {
+		this(source.getBytes(SOURCE_CHARSET));
+	}
+
+	public IncrementalParser(byte[] source) {
+		length = source.length;
+		segments.addAll(split(source, 0, source.length, 0));
+	}
+
+	/**
+	 * Replace <code>removeLength</code> bytes at <code>offset</code> with
+	 * <code>insert</code> and bring the parse up to date.
+	 */
+	public void edit(int offset, int removeLength, String insert) {
+		if(offset < 0 || removeLength < 0 || offset + removeLength > length) {
+			throw new IllegalArgumentException("Edit [" + offset + ", " +
+				(offset + removeLength) + ") is outside the source of length " + length);
+		}
+
+		byte[] inserted = insert.getBytes(SOURCE_CHARSET);
+		int delta = inserted.length - removeLength;
+		int first = segmentAt(offset);
+		int last = segmentAt(offset + removeLength);
+		int regionStart = segments.get(first).start;
+
+		while(true) {
+			// take in one more segment so the boundary after the damage can
+			// be checked against the new text
+			int extra = Math.min(last + 1, segments.size() - 1);
+			byte[] region = editedText(first, extra, offset, removeLength, inserted);
+			int[] splits = ParallelLexer.findSplitPoints(ByteBuffer.wrap(region), 1);
+
+			int resync = -1;
+			int regionEnd = region.length;
+			for(int j = last; j < extra && resync < 0; j++) {
+				int boundary = segments.get(j).end() + delta - regionStart;
+				if(Arrays.binarySearch(splits, boundary) >= 0) {
+					resync = j;
+					regionEnd = boundary;
+				}
+			}
+
+			if(resync < 0 && extra == segments.size() - 1) {
+				// the damage runs to the end of the source
+				resync = extra;
+			}
+
+			if(resync >= 0) {
+				replace(first, resync, split(region, 0, regionEnd, regionStart), delta);
+				return;
+			}
+
+			// no boundary survived, so widen the region (doubling it keeps a
+			// runaway comment linear in the size of the source)
+			last = Math.min(segments.size() - 1, extra + (extra - first + 1));
+		}
+	}
+
+	/**
+	 * The current program, or null if any declaration failed to parse.  Nodes
+	 * of declarations untouched by an edit are the same objects as before it.
+	 */
+	public Program getProgram() {
+		Program program = new Program(identifiers);
+
+		for(Segment segment : segments) {
+			if(segment.error != null) {
+				return null;
+			}
+
+			if(segment.declaration != null) {
+				program.addDeclaration(segment.declaration);
+			}
+		}
+
+		return program;
+	}
+
+	/**
+	 * The parse errors in the current source, one per failed declaration.
+	 */
+	public ArrayList<ParseErrorException> getErrors() {
+		ArrayList<ParseErrorException> errors = new ArrayList<ParseErrorException>();
+
+		for(Segment segment : segments) {
+			if(segment.error != null) {
+				errors.add(segment.error);
+			}
+		}
+
+		return errors;
+	}
+
+	public String getText() {
+		byte[] text = new byte[length];
+
+		for(Segment segment : segments) {
+			System.arraycopy(segment.text, 0, text, segment.start, segment.text.length);
+		}
+
+		return new String(text, SOURCE_CHARSET);
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public IdentifierTable getIdentifiers() {
+		return identifiers;
+	}
+
+	/**
+	 * The number of declarations re-parsed by the last edit.
+	 */
+	public int getReparsedCount() {
+		return reparsed;
+	}
+
+	/**
+	 * Swap segments <code>first</code> to <code>last</code> for
+	 * <code>replacement</code> and shift the segments after them.
+	 */
+	private void replace(int first, int last, ArrayList<Segment> replacement, int delta) {
+		segments.subList(first, last + 1).clear();
+		segments.addAll(first, replacement);
+
+		for(int i = first + replacement.size(); i < segments.size(); i++) {
+			segments.get(i).start += delta;
+		}
+
+		length += delta;
+		reparsed = replacement.size();
+	}
+
+	/**
+	 * The text of segments <code>first</code> to <code>last</code> with the
+	 * edit applied.
+	 */
+	private byte[] editedText(int first, int last, int offset, int removeLength, byte[] inserted) {
+		int start = segments.get(first).start;
+		int end = segments.get(last).end();
+		byte[] text = new byte[end - start + inserted.length - removeLength];
+
+		copyText(first, last, start, offset, text, 0);
+		System.arraycopy(inserted, 0, text, offset - start, inserted.length);
+		copyText(first, last, offset + removeLength, end, text, offset - start + inserted.length);
+
+		return text;
+	}
+
+	/**
+	 * Copy source bytes <code>from</code> to <code>to</code>, which lie within
+	 * segments <code>first</code> to <code>last</code>, into
+	 * <code>dest</code>.
+	 */
+	private void copyText(int first, int last, int from, int to, byte[] dest, int destPos) {
+		for(int i = first; i <= last && from < to; i++) {
+			Segment segment = segments.get(i);
+			if(segment.end() <= from) {
+				continue;
+			}
+
+			int count = Math.min(to, segment.end()) - from;
+			System.arraycopy(segment.text, from - segment.start, dest, destPos, count);
+			destPos += count;
+			from += count;
+		}
+	}
+
+	/**
+	 * Split <code>text[from, to)</code> into declaration segments and parse
+	 * each of them.  The segments start at <code>base</code> in the source.
+	 */
+	private ArrayList<Segment> split(byte[] text, int from, int to, int base) {
+		ByteBuffer buffer = ByteBuffer.wrap(text, from, to - from);
+		int[] splits = ParallelLexer.findSplitPoints(buffer, 1);
+		ArrayList<Segment> split = new ArrayList<Segment>(splits.length - 1);
+
+		for(int i = 0; i < splits.length - 1; i++) {
+			Segment segment = new Segment();
+			segment.start = base + splits[i] - from;
+			segment.text = Arrays.copyOfRange(text, splits[i], splits[i + 1]);
+			parse(segment);
+			split.add(segment);
+		}
+
+		return split;
+	}
+
+	private void parse(Segment segment) {
+		TokenStream tokens = TokenStream.scan(ByteBuffer.wrap(segment.text), identifiers);
+
+		// nothing but whitespace and comments
+		if(tokens.peek() == TokenType.EOF) {
+			return;
+		}
+
+		try {
+			segment.declaration = new CMinusParser(tokens).parseSingleDeclaration();
+		} catch(ParseErrorException e) {
+			segment.error = e;
+		}
+	}
+
+	/**
+	 * The index of the segment holding byte <code>offset</code>, or the last
+	 * segment if <code>offset</code> is the end of the source.
+	 */
+	private int segmentAt(int offset) {
+		int low = 0;
+		int high = segments.size() - 1;
+
+		while(low < high) {
+			int middle = (low + high + 1) >>> 1;
+			if(segments.get(middle).start <= offset) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		return low;
+	}
+
+	private static String printTree(Program program) throws IOException {
+		StringWriter text = new StringWriter();
+		BufferedWriter out = new BufferedWriter(text);
+		program.printTree(out);
+		out.close();
+		return text.toString();
+	}
+
+	/**
+	 * Make random one character edits to <code>filename</code>, timing the
+	 * incremental update against a full parse, then check the final tree
+	 * against a full parse of the edited text.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0) {
+			System.err.println("usage: IncrementalParser <file> [edits]");
+			return;
+		}
+
+		ByteBuffer mapped = MappedCMinusScanner.mapFile(args[0]);
+		byte[] source = new byte[mapped.remaining()];
+		mapped.get(source);
+		int edits = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+
+		long start = System.nanoTime();
+		IncrementalParser incremental = new IncrementalParser(source);
+		System.out.printf("initial parse: %d bytes, %.1f ms%n",
+			source.length, (System.nanoTime() - start) / 1e6);
+
+		start = System.nanoTime();
+		new CMinusParser(TokenStream.scan(ByteBuffer.wrap(source))).parse();
+		System.out.printf("full parse: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+		// type a space somewhere and take it out again, as an editor would
+		Random random = new Random(42);
+		long elapsed = 0;
+		long declarations = 0;
+		for(int i = 0; i < edits; i++) {
+			int offset = random.nextInt(incremental.getLength());
+
+			start = System.nanoTime();
+			incremental.edit(offset, 0, " ");
+			declarations += incremental.getReparsedCount();
+			incremental.edit(offset, 1, "");
+			declarations += incremental.getReparsedCount();
+			elapsed += System.nanoTime() - start;
+		}
+		System.out.printf("%d edits: %.3f ms per edit, %.2f declarations re-parsed per edit%n",
+			edits * 2, elapsed / 1e6 / (edits * 2), (double) declarations / (edits * 2));
+
+		Program expected = new CMinusParser(TokenStream.scan(
+			ByteBuffer.wrap(incremental.getText().getBytes(SOURCE_CHARSET)))).parse();
+		Program actual = incremental.getProgram();
+		boolean same = expected != null && actual != null && printTree(expected).equals(printTree(actual));
+		System.out.println(same ? "tree matches a full parse" : "TREE DIFFERS FROM A FULL PARSE");
+	}
+}
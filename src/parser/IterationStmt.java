@@ -17,7 +17,7 @@ public class IterationStmt extends Statement {
 		statement = s;
 	}
 	
-	public void genLLCode(Function f) {
+	public void genLLCode(Function f, SymbolTable symbols) {
 
 		BasicBlock whileLoop = new BasicBlock(f);
 		BasicBlock post = new BasicBlock(f);
@@ -25,10 +25,11 @@ public class IterationStmt extends Statement {
 		BasicBlock eval = new BasicBlock(f);
 		f.appendToCurrentBlock(eval);
 		f.setCurrBlock(eval);
-		expression.genLLCode(f);
+		expression.genLLCode(f, symbols);
+		int condition = expression.getRegister(f);
 
 		Operation oper = new Operation(Operation.OPER_BNE, f.getCurrBlock());
-		Operand op = new Operand(Operand.OPERAND_REG, expression.regNum);
+		Operand op = new Operand(Operand.OPERAND_REG, condition);
 		oper.setSrcOperand(0, op);
 		op = new Operand(Operand.OPERAND_INT, 0);
 		oper.setSrcOperand(1, op);
@@ -39,7 +40,7 @@ public class IterationStmt extends Statement {
 		
 		f.appendToCurrentBlock(whileLoop);
 		f.setCurrBlock(whileLoop);
-		statement.genLLCode(f);
+		statement.genLLCode(f, symbols);
 		oper = new Operation(Operation.OPER_JMP, f.getCurrBlock());
 		op = new Operand(Operand.OPERAND_BLOCK, eval.getBlockNum());
 		oper.setSrcOperand(0, op);
@@ -50,6 +51,23 @@ public class IterationStmt extends Statement {
 		
 	}
 	
+	public Statement simplify() {
+		expression = expression.simplify();
+		if(expression instanceof LiteralExpression && ((LiteralExpression) expression).intValue() == 0) {
+			return null;
+		}
+		
+		Statement body = statement.simplify();
+		statement = (body == null) ? new CompoundStatement() : body;
+		return this;
+	}
+	
+	public void write(AstOutput out) throws IOException {
+		out.writeByte(AstOutput.ITERATION_STMT);
+		out.writeNode(expression);
+		out.writeNode(statement);
+	}
+	
 	public void print(String tab, BufferedWriter out) throws IOException {
 		out.write(tab + "IterationStmt: \n");
 		expression.print(tab + "\t", out);
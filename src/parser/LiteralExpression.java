@@ -4,21 +4,52 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 
 import lowlevel.Function;
+import lowlevel.Operand;
+import lowlevel.Operation;
 
 public class LiteralExpression extends Expression {
-	private Object value;
+	private int value;
 	
-	public LiteralExpression(Object v) {
+	public LiteralExpression(int v) {
 		value = v;
+		hash = 31 * 1 + v;
 	}
 
-	public void genLLCode(Function f) {}
+	public void genLLCode(Function f, SymbolTable symbols) {}
 	
 	public Object getValue() {
-		return Integer.valueOf((String) value);
+		return Integer.valueOf(value);
+	}
+	
+	public int intValue() {
+		return value;
+	}
+	
+	public boolean sameStructure(Expression other) {
+		return other instanceof LiteralExpression && ((LiteralExpression) other).value == value;
+	}
+	
+	/**
+	 * A literal is normally used as an immediate operand, so it has no
+	 * register until one is asked for.
+	 */
+	public int getRegister(Function f) {
+		regNum = f.getNewRegNum();
+		
+		Operation oper = new Operation(Operation.OPER_ASSIGN, f.getCurrBlock());
+		oper.setDestOperand(0, new Operand(Operand.OPERAND_REG, regNum));
+		oper.setSrcOperand(0, new Operand(Operand.OPERAND_INT, getValue()));
+		f.getCurrBlock().appendOper(oper);
+		
+		return regNum;
+	}
+	
+	public void write(AstOutput out) throws IOException {
+		out.writeByte(AstOutput.LITERAL_EXPRESSION);
+		out.writeVarInt(value);
 	}
 	
 	public void print(String tab, BufferedWriter out) throws IOException {
-		out.write(tab + "LiteralExpression: " + value.toString() + " \n");
+		out.write(tab + "LiteralExpression: " + value + " \n");
 	}
 }
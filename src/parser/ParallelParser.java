@@ -0,0 +1,205 @@
+package parser;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import scanner.MappedCMinusScanner;
+import scanner.ParallelLexer;
+import scanner.TokenStream;
+import scanner.TokenType;
+
+/**
+ * Parses the top-level declarations of a program on a ForkJoin pool.  The
+ * token stream is first cut after every <code>;</code> or <code>}</code> at
+ * brace depth 0, which is where each declaration ends, and each declaration
+ * is then parsed from its own slice of the stream.  The Program is assembled
+ * in source order.
+ *
+ * Parsing touches no shared state other than reading the token stream, and
+ * names are only bound to variables when the Program is lowered, in source
+ * order, so the result does not depend on the order the declarations were
+ * parsed in.
+ *
+ * Unlike <code>CMinusParser.parse</code>, tokens after the last declaration
+ * which do not start a new one are reported as an error rather than ignored.
+ */
+public class ParallelParser implements Parser {
+	// declarations are parsed in batches of at least this many tokens
+	private static final int MIN_BATCH_TOKENS = 4096;
+
+	private TokenStream tokens;
+	private ForkJoinPool pool;
+
+	public ParallelParser(TokenStream tokens) {
+		this(tokens, ParallelLexer.getPool());
+	}
+
+	public ParallelParser(TokenStream tokens, ForkJoinPool pool) {
+		this.tokens = tokens;
+		this.pool = pool;
+	}
+
+	@Override
+	public Program parse() {
+		int[] bounds = findDeclarations(tokens);
+		int numDeclarations = bounds.length - 1;
+		Declaration[] declarations = new Declaration[numDeclarations];
+		ParseErrorException[] errors = new ParseErrorException[numDeclarations];
+
+		pool.invoke(new ParseTask(bounds, declarations, errors, 0, numDeclarations));
+
+		// report the first error in the source, whichever thread found it
+		Program program = new Program(tokens.getIdentifiers());
+		for(int i = 0; i < numDeclarations; i++) {
+			if(errors[i] != null) {
+				System.out.println(errors[i]);
+				return null;
+			}
+
+			program.addDeclaration(declarations[i]);
+		}
+
+		return program;
+	}
+
+	/**
+	 * Find where each top-level declaration starts.  A declaration ends with
+	 * the first <code>;</code> or <code>}</code> at brace depth 0.
+	 * @return the start of every declaration, followed by the index of the
+	 * final EOF
+	 */
+	public static int[] findDeclarations(TokenStream tokens) {
+		int[] bounds = new int[64];
+		int numBounds = 0;
+		bounds[numBounds++] = tokens.position();
+
+		int depth = 0;
+		int i = tokens.position();
+		for(TokenType type = tokens.typeAt(i); type != TokenType.EOF; type = tokens.typeAt(++i)) {
+			if(type == TokenType.LEFT_CURLY) {
+				depth++;
+			} else if(type == TokenType.RIGHT_CURLY || type == TokenType.SEMICOLON) {
+				if(type == TokenType.RIGHT_CURLY && depth > 0) {
+					depth--;
+				}
+
+				if(depth == 0) {
+					if(numBounds == bounds.length) {
+						bounds = Arrays.copyOf(bounds, numBounds * 2);
+					}
+					bounds[numBounds++] = i + 1;
+				}
+			}
+		}
+
+		// anything after the last declaration is parsed on its own so that
+		// it is reported
+		if(bounds[numBounds - 1] != i) {
+			bounds = Arrays.copyOf(bounds, numBounds + 1);
+			bounds[numBounds++] = i;
+		}
+
+		return Arrays.copyOf(bounds, numBounds);
+	}
+
+	/**
+	 * Parses declarations <code>from</code> to <code>to</code>, halving the
+	 * range until it holds a single declaration or few enough tokens.
+	 */
+	private class ParseTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private int[] bounds;
+		private Declaration[] declarations;
+		private ParseErrorException[] errors;
+		private int from;
+		private int to;
+
+		ParseTask(int[] bounds, Declaration[] declarations, ParseErrorException[] errors, int from, int to) {
+			this.bounds = bounds;
+			this.declarations = declarations;
+			this.errors = errors;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if(to - from > 1 && bounds[to] - bounds[from] > MIN_BATCH_TOKENS) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new ParseTask(bounds, declarations, errors, from, middle),
+						  new ParseTask(bounds, declarations, errors, middle, to));
+				return;
+			}
+
+			for(int i = from; i < to; i++) {
+				try {
+					CMinusParser parser = new CMinusParser(tokens.slice(bounds[i], bounds[i + 1]));
+					declarations[i] = parser.parseSingleDeclaration();
+				} catch(ParseErrorException e) {
+					errors[i] = e;
+				}
+			}
+		}
+	}
+
+	private static String printTree(Program program) throws IOException {
+		StringWriter text = new StringWriter();
+		BufferedWriter out = new BufferedWriter(text);
+		program.printTree(out);
+		out.close();
+		return text.toString();
+	}
+
+	/**
+	 * Parse <code>filename</code> with 1 to N workers, checking the tree
+	 * against CMinusParser and reporting the speedup at each size.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0) {
+			System.err.println("usage: ParallelParser <file> [runs]");
+			return;
+		}
+
+		ByteBuffer source = MappedCMinusScanner.mapFile(args[0]);
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+		TokenStream tokens = TokenStream.scan(source);
+
+		Program expected = null;
+		long sequential = Long.MAX_VALUE;
+		for(int run = 0; run < runs; run++) {
+			TokenStream stream = tokens.slice(0, tokens.size());
+			long start = System.nanoTime();
+			expected = new CMinusParser(stream).parse();
+			sequential = Math.min(sequential, System.nanoTime() - start);
+		}
+		if(expected == null) {
+			return;
+		}
+		String expectedTree = printTree(expected);
+		System.out.printf("sequential: %.1f ms%n", sequential / 1e6);
+
+		int processors = Runtime.getRuntime().availableProcessors();
+		for(int threads = 1; threads <= processors; threads++) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			long best = Long.MAX_VALUE;
+			Program program = null;
+
+			for(int run = 0; run < runs; run++) {
+				TokenStream stream = tokens.slice(0, tokens.size());
+				long start = System.nanoTime();
+				program = new ParallelParser(stream, pool).parse();
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			pool.shutdown();
+
+			boolean same = program != null && printTree(program).equals(expectedTree);
+			System.out.printf("%d threads: %.1f ms, speedup %.2fx%s%n",
+				threads, best / 1e6, (double) sequential / best, same ? "" : " (TREE DIFFERS)");
+		}
+	}
+}
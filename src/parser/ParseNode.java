@@ -5,6 +5,11 @@ import java.io.IOException;
 
 public interface ParseNode {
 	public void print(String tab, BufferedWriter out) throws IOException;
+	
+	/**
+	 * Write this node and everything below it in binary form.
+	 */
+	public void write(AstOutput out) throws IOException;
 }
 
 
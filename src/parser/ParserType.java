@@ -0,0 +1,39 @@
+package parser;
+
+import scanner.TokenStream;
+
+/**
+ * The parsers which can build a Program from a TokenStream.  They all build
+ * the same tree, so which one is used is only a matter of speed.  FLAT
+ * parses into a FlatAst, which CMinusCompiler lowers as it is; anything
+ * which needs a Program gets one built from it.
+ */
+public enum ParserType {
+	DESCENT {
+		public Parser create(TokenStream tokens) {
+			return new CMinusParser(tokens);
+		}
+	},
+	PARALLEL {
+		public Parser create(TokenStream tokens) {
+			return new ParallelParser(tokens);
+		}
+	},
+	TABLE {
+		public Parser create(TokenStream tokens) {
+			return new TableParser(tokens);
+		}
+	},
+	FLAT {
+		public Parser create(final TokenStream tokens) {
+			return new Parser() {
+				public Program parse() {
+					FlatAst ast = new FlatParser(tokens).parse();
+					return (ast == null) ? null : ast.toProgram();
+				}
+			};
+		}
+	};
+
+	public abstract Parser create(TokenStream tokens);
+}
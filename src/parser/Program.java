@@ -6,29 +6,84 @@ import java.util.ArrayList;
 
 import lowlevel.CodeItem;
 
+import scanner.IdentifierTable;
+
 public class Program implements CodeGen {
 	private ArrayList<Declaration> declarations = new ArrayList<Declaration>();
+	private IdentifierTable identifiers;
+	
+	public Program() {
+		this(new IdentifierTable());
+	}
+	
+	/**
+	 * A program whose names were interned into <code>identifiers</code>.
+	 */
+	public Program(IdentifierTable identifiers) {
+		this.identifiers = identifiers;
+	}
+	
+	public IdentifierTable getIdentifiers() {
+		return identifiers;
+	}
 	
 	public void addDeclaration(Declaration d) {
 		declarations.add(d);
 	}
 
+	/**
+	 * The names of the global variables the program declares.
+	 */
+	public ArrayList<String> getGlobalNames() {
+		ArrayList<String> names = new ArrayList<String>();
+		for(Declaration d : declarations) {
+			if(d instanceof VariableDeclaration) {
+				names.add(d.getID());
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * Fold constants, apply algebraic identities and remove dead code
+	 * throughout the program.  This only needs doing once, before genLLCode.
+	 */
+	public void simplify() {
+		for(Declaration d : declarations) {
+			d.simplify();
+		}
+	}
+
+	public void write(AstOutput out) throws IOException {
+		out.writeVarInt(declarations.size());
+		for(Declaration d : declarations) {
+			out.writeNode(d);
+		}
+	}
+
 	public void printTree(BufferedWriter out) throws IOException {
 		for(Declaration d : declarations) {
 			d.print("\t", out);
 		}
 	}
 
+	/**
+	 * Lower the program with a fresh symbol table.
+	 */
 	public CodeItem genLLCode() {
+		return genLLCode(new SymbolTable(identifiers));
+	}
+
+	public CodeItem genLLCode(SymbolTable symbols) {
 		CodeItem codeItem = null;
 		CodeItem first = null;
 		
 		for(Declaration d : declarations) {
 			if(codeItem == null) {
-				codeItem = d.genLLCode();
+				codeItem = d.genLLCode(symbols);
 				first = codeItem;
 			} else {
-				CodeItem temp = d.genLLCode();
+				CodeItem temp = d.genLLCode(symbols);
 				codeItem.setNextItem(temp);
 				codeItem = temp;
 			}
@@ -16,18 +16,42 @@ public class ReturnStmt extends Statement {
 		this.expression = exp;
 	}
 	
-	public void genLLCode(Function f) {
-		expression.genLLCode(f);
+	public void genLLCode(Function f, SymbolTable symbols) {
+		if(expression == null) {
+			return;
+		}
+		
+		expression.genLLCode(f, symbols);
 		Operation assign = new Operation(Operation.OPER_ASSIGN, f.getCurrBlock());
-		Operand op = new Operand(Operand.OPERAND_REG, expression.regNum);
+		Operand op;
+		if(expression instanceof LiteralExpression) {
+			op = new Operand(Operand.OPERAND_INT, ((LiteralExpression) expression).getValue());
+		} else {
+			op = new Operand(Operand.OPERAND_REG, expression.regNum);
+		}
 		assign.setSrcOperand(0, op);
 		op = new Operand(Operand.OPERAND_MACRO, "RetReg");
 		assign.setDestOperand(0, op);
 		f.getCurrBlock().appendOper(assign);
 	}
 	
+	public Statement simplify() {
+		if(expression != null) {
+			expression = expression.simplify();
+		}
+		
+		return this;
+	}
+	
+	public void write(AstOutput out) throws IOException {
+		out.writeByte(AstOutput.RETURN_STMT);
+		out.writeNode(expression);
+	}
+	
 	public void print(String tab, BufferedWriter out) throws IOException {
 		out.write(tab + "ReturnStmt: \n");
-		expression.print(tab + "\t", out);
+		if(expression != null) {
+			expression.print(tab + "\t", out);
+		}
 	}
 }
@@ -13,7 +13,7 @@ public class SelectionStmt extends Statement {
 	protected Statement ifStmt;
 	protected Statement elseStmt;
 	
-	public void genLLCode(Function f) {
+	public void genLLCode(Function f, SymbolTable symbols) {
 		BasicBlock ifBlock = new BasicBlock(f);
 		BasicBlock elseBlock = new BasicBlock(f);
 		BasicBlock post = new BasicBlock(f);
@@ -21,10 +21,11 @@ public class SelectionStmt extends Statement {
 		BasicBlock eval = new BasicBlock(f);
 		f.appendToCurrentBlock(eval);
 		f.setCurrBlock(eval);
-		expression.genLLCode(f);
+		expression.genLLCode(f, symbols);
+		int condition = expression.getRegister(f);
 		
 		Operation oper = new Operation(Operation.OPER_BNE, f.getCurrBlock());
-		Operand op = new Operand(Operand.OPERAND_REG, expression.regNum);
+		Operand op = new Operand(Operand.OPERAND_REG, condition);
 		oper.setSrcOperand(0, op);
 		op = new Operand(Operand.OPERAND_INT, 0);
 		oper.setSrcOperand(1, op);
@@ -35,13 +36,13 @@ public class SelectionStmt extends Statement {
 		
 		f.appendToCurrentBlock(ifBlock);
 		f.setCurrBlock(ifBlock);
-		ifStmt.genLLCode(f);
+		ifStmt.genLLCode(f, symbols);
 				
 		if(elseStmt != null) {
 			BasicBlock current = f.getCurrBlock();
 			f.appendUnconnectedBlock(elseBlock);
 			f.setCurrBlock(elseBlock);
-			elseStmt.genLLCode(f);
+			elseStmt.genLLCode(f, symbols);
 			
 			oper = new Operation(Operation.OPER_JMP, f.getCurrBlock());
 			op = new Operand(Operand.OPERAND_BLOCK, post.getBlockNum());
@@ -54,6 +55,31 @@ public class SelectionStmt extends Statement {
 		f.setCurrBlock(post);			
 	}
 
+	public Statement simplify() {
+		expression = expression.simplify();
+		Statement taken = ifStmt.simplify();
+		Statement notTaken = (elseStmt == null) ? null : elseStmt.simplify();
+		
+		// a constant condition leaves just the branch it picks
+		if(expression instanceof LiteralExpression) {
+			return (((LiteralExpression) expression).intValue() != 0) ? taken : notTaken;
+		} else if(taken == null && notTaken == null &&
+				  !expression.hasSideEffects() && !expression.mayTrap()) {
+			return null;
+		}
+		
+		ifStmt = (taken == null) ? new CompoundStatement() : taken;
+		elseStmt = notTaken;
+		return this;
+	}
+
+	public void write(AstOutput out) throws IOException {
+		out.writeByte(AstOutput.SELECTION_STMT);
+		out.writeNode(expression);
+		out.writeNode(ifStmt);
+		out.writeNode(elseStmt);
+	}
+	
 	public void print(String tab, BufferedWriter out) throws IOException {
 		out.write(tab + "SelectionStmt: if (\n");
 		expression.print(tab + "\t", out);
@@ -3,6 +3,16 @@ package parser;
 import java.io.BufferedWriter;
 import java.io.IOException;
 
-public abstract class Statement implements VoidCodeGen {
+public abstract class Statement implements ParseNode, VoidCodeGen {
+	/**
+	 * Fold constants within this statement and drop any part of it which can
+	 * never run or does nothing.
+	 * @return the simplified statement, which may be this one, or null if
+	 * nothing is left of it
+	 */
+	public Statement simplify() {
+		return this;
+	}
+	
 	public abstract void print(String tab, BufferedWriter out) throws IOException;
 }
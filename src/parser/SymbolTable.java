@@ -0,0 +1,171 @@
+package parser;
+
+import java.util.Arrays;
+
+import scanner.IdentifierTable;
+
+/**
+ * The names visible while one program is lowered.  Identifiers are the
+ * symbol ids the scanner interned them to, so the binding of a name is a
+ * single array index: a map from symbol id to the virtual register holding
+ * it, or GLOBAL for a global variable.
+ *
+ * Scopes nest as blocks do.  Declaring a name saves the binding it shadows
+ * and leaving the scope puts it back, so a block's declarations are gone
+ * once the block ends.
+ *
+ * It can also carry the values already computed in the block being lowered,
+ * so lowering can reuse them; see AvailableValues.
+ *
+ * A SymbolTable belongs to a single compile, so separate compiles can run at
+ * the same time.
+ */
+public class SymbolTable {
+	public static final int UNDEFINED = -1;
+	public static final int GLOBAL = -2;
+
+	private IdentifierTable identifiers;
+	// names which were never scanned, numbered from base upwards, so the
+	// shared table is only ever read
+	private IdentifierTable extra = null;
+	private int base;
+
+	// symbol id -> virtual register, GLOBAL or UNDEFINED
+	private int[] bindings;
+
+	// (symbol, shadowed binding) pairs for every declaration in an open scope
+	private int[] saved = new int[64];
+	private int savedTop = 0;
+
+	// where each open scope starts in saved
+	private int[] scopes = new int[16];
+	private int depth = 0;
+
+	// values computed earlier in the block, or null if they are not reused
+	private AvailableValues values = null;
+
+	public SymbolTable(IdentifierTable identifiers) {
+		this.identifiers = identifiers;
+		base = identifiers.size();
+		bindings = new int[Math.max(base, 16)];
+		Arrays.fill(bindings, UNDEFINED);
+	}
+
+	/**
+	 * The symbol id for a name which did not come with one.
+	 */
+	public int symbolFor(String name) {
+		int symbol = identifiers.find(name);
+		if(symbol >= 0 && symbol < base) {
+			return symbol;
+		}
+
+		if(extra == null) {
+			extra = new IdentifierTable();
+		}
+		return base + extra.intern(name);
+	}
+
+	/**
+	 * The symbol id of a node: <code>symbol</code> if the parser gave it one,
+	 * otherwise the id of <code>name</code>.
+	 */
+	public int resolve(int symbol, String name) {
+		return (symbol >= 0) ? symbol : symbolFor(name);
+	}
+
+	public void pushScope() {
+		if(depth == scopes.length) {
+			scopes = Arrays.copyOf(scopes, depth * 2);
+		}
+		scopes[depth++] = savedTop;
+	}
+
+	public void popScope() {
+		int start = scopes[--depth];
+		while(savedTop > start) {
+			savedTop -= 2;
+			bindings[saved[savedTop]] = saved[savedTop + 1];
+		}
+	}
+
+	/**
+	 * Bind <code>symbol</code> to <code>regNum</code> until the current scope
+	 * ends.
+	 */
+	public void declare(int symbol, int regNum) {
+		ensureCapacity(symbol);
+
+		if(depth > 0) {
+			if(savedTop + 2 > saved.length) {
+				saved = Arrays.copyOf(saved, saved.length * 2);
+			}
+			saved[savedTop++] = symbol;
+			saved[savedTop++] = bindings[symbol];
+		}
+
+		bindings[symbol] = regNum;
+	}
+
+	public void declareGlobal(int symbol) {
+		declare(symbol, GLOBAL);
+	}
+
+	/**
+	 * @return the register <code>symbol</code> is in, GLOBAL or UNDEFINED
+	 */
+	public int lookup(int symbol) {
+		return (symbol < bindings.length) ? bindings[symbol] : UNDEFINED;
+	}
+
+	public boolean isGlobal(int symbol) {
+		return lookup(symbol) == GLOBAL;
+	}
+
+	/**
+	 * Whether lowering may reuse the register of an identical expression
+	 * computed earlier in the same block instead of computing it again.  Off
+	 * unless asked for.
+	 */
+	public void setReuseValues(boolean reuse) {
+		values = reuse ? new AvailableValues() : null;
+	}
+
+	/**
+	 * @return the values available for reuse, or null if there are none
+	 */
+	public AvailableValues getAvailableValues() {
+		return values;
+	}
+
+	/**
+	 * Forget every available value, as any of them may have changed.
+	 */
+	public void forgetValues() {
+		if(values != null) {
+			values.forget();
+		}
+	}
+
+	/**
+	 * Forget the available values which were computed from
+	 * <code>symbol</code>, as it has changed.
+	 */
+	public void forgetValues(int symbol) {
+		if(values != null) {
+			values.forget(symbol, this);
+		}
+	}
+	
+	public IdentifierTable getIdentifiers() {
+		return identifiers;
+	}
+
+	private void ensureCapacity(int symbol) {
+		if(symbol >= bindings.length) {
+			int size = bindings.length;
+			bindings = Arrays.copyOf(bindings, Math.max(symbol + 1, size * 2));
+			Arrays.fill(bindings, size, bindings.length, UNDEFINED);
+		}
+	}
+}
@@ -0,0 +1,728 @@
+package parser;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import scanner.MappedCMinusScanner;
+import scanner.TokenStream;
+import scanner.TokenType;
+
+/**
+ * A table-driven LL(1) parser for the C- language.  The grammar of
+ * grammar.txt is written out below as productions, with the semantic actions
+ * which build the tree placed in them as extra symbols.  FIRST and FOLLOW
+ * sets are computed from the productions as bitmasks over TokenType ordinals
+ * and turned into a parse table indexed by nonterminal and lookahead token,
+ * so choosing a production is a single array lookup.
+ *
+ * Parsing runs off an explicit stack of grammar symbols and an explicit stack
+ * of partly built nodes, so no Java stack is used however deeply the source
+ * nests.  The tree is the same as the one CMinusParser builds.
+ *
+ * The one conflict in the grammar is the dangling else, which is resolved the
+ * usual way: a production chosen by FIRST takes precedence over an empty one
+ * chosen by FOLLOW, so an else belongs to the nearest if.  Unlike
+ * <code>CMinusParser.parse</code>, tokens after the last declaration are
+ * reported as an error rather than ignored.
+ */
+public class TableParser implements Parser {
+	private static final TokenType[] TYPES = TokenType.values();
+
+	// grammar symbols: terminals are TokenType ordinals, then come the
+	// nonterminals and then the semantic actions
+	private static final int NONTERMINAL = 64;
+	private static final int ACTION = 128;
+
+	private static final int PROGRAM = NONTERMINAL;
+	private static final int DECLARATIONS = NONTERMINAL + 1;
+	private static final int DECLARATION = NONTERMINAL + 2;
+	private static final int DECLARATION_REST = NONTERMINAL + 3;
+	private static final int VAR_SIZE = NONTERMINAL + 4;
+	private static final int PARAMS = NONTERMINAL + 5;
+	private static final int PARAM = NONTERMINAL + 6;
+	private static final int ARRAY_PARAM = NONTERMINAL + 7;
+	private static final int PARAM_LIST = NONTERMINAL + 8;
+	private static final int COMPOUND_STMT = NONTERMINAL + 9;
+	private static final int LOCAL_DECLARATIONS = NONTERMINAL + 10;
+	private static final int STATEMENTS = NONTERMINAL + 11;
+	private static final int STATEMENT = NONTERMINAL + 12;
+	private static final int ELSE_PART = NONTERMINAL + 13;
+	private static final int RETURN_VALUE = NONTERMINAL + 14;
+	private static final int EXPRESSION = NONTERMINAL + 15;
+	private static final int ID_EXPRESSION = NONTERMINAL + 16;
+	private static final int VAR_EXPRESSION = NONTERMINAL + 17;
+	private static final int SIMPLE_REST = NONTERMINAL + 18;
+	private static final int FACTOR = NONTERMINAL + 19;
+	private static final int NON_ID_FACTOR = NONTERMINAL + 20;
+	private static final int ID_FACTOR = NONTERMINAL + 21;
+	private static final int TERM = NONTERMINAL + 22;
+	private static final int TERM_REST = NONTERMINAL + 23;
+	private static final int ADDITIVE = NONTERMINAL + 24;
+	private static final int ADDITIVE_REST = NONTERMINAL + 25;
+	private static final int RELATIONAL_REST = NONTERMINAL + 26;
+	private static final int MULOP = NONTERMINAL + 27;
+	private static final int ADDOP = NONTERMINAL + 28;
+	private static final int RELOP = NONTERMINAL + 29;
+	private static final int ARGS = NONTERMINAL + 30;
+	private static final int ARG_LIST = NONTERMINAL + 31;
+
+	private static final String[] NAMES = {
+		"program", "declarations", "declaration", "declaration2", "var-size",
+		"params", "param", "array-param", "param-list", "compound-stmt",
+		"local-declarations", "statements", "statement", "else-part",
+		"return-value", "expression", "expression2", "expression3",
+		"simple-expression2", "factor", "non-id-factor", "factor2", "term",
+		"term2", "additive-expression", "additive-expression2", "relational2",
+		"mulop", "addop", "relop", "args", "arg-list"
+	};
+	private static final int NUM_NONTERMINALS = NAMES.length;
+
+	// push the type, name or value of the current token
+	private static final int A_INT = ACTION;
+	private static final int A_VOID = ACTION + 1;
+	private static final int A_NAME = ACTION + 2;
+	private static final int A_NUMBER = ACTION + 3;
+	private static final int A_OPERATOR = ACTION + 4;
+	// declarations
+	private static final int A_FUNCTION = ACTION + 5;
+	private static final int A_PARAM = ACTION + 6;
+	private static final int A_ARRAY_PARAM = ACTION + 7;
+	private static final int A_BODY = ACTION + 8;
+	private static final int A_VARIABLE = ACTION + 9;
+	private static final int A_ARRAY_SIZE = ACTION + 10;
+	private static final int A_ADD_DECLARATION = ACTION + 11;
+	// statements
+	private static final int A_COMPOUND = ACTION + 12;
+	private static final int A_LOCAL = ACTION + 13;
+	private static final int A_ADD_LOCAL = ACTION + 14;
+	private static final int A_ADD_STATEMENT = ACTION + 15;
+	private static final int A_EXPRESSION_STMT = ACTION + 16;
+	private static final int A_EMPTY_STMT = ACTION + 17;
+	private static final int A_IF = ACTION + 18;
+	private static final int A_IF_ELSE = ACTION + 19;
+	private static final int A_WHILE = ACTION + 20;
+	private static final int A_RETURN = ACTION + 21;
+	private static final int A_RETURN_VALUE = ACTION + 22;
+	// expressions
+	private static final int A_VARIABLE_EXPRESSION = ACTION + 23;
+	private static final int A_INDEX = ACTION + 24;
+	private static final int A_ASSIGN = ACTION + 25;
+	private static final int A_BINARY = ACTION + 26;
+	private static final int A_ARGS = ACTION + 27;
+	private static final int A_ARG = ACTION + 28;
+	private static final int A_CALL = ACTION + 29;
+
+	private static final int ELSE = TokenType.ELSE.ordinal();
+	private static final int IF = TokenType.IF.ordinal();
+	private static final int INT = TokenType.INT.ordinal();
+	private static final int RETURN = TokenType.RETURN.ordinal();
+	private static final int VOID = TokenType.VOID.ordinal();
+	private static final int WHILE = TokenType.WHILE.ordinal();
+	private static final int ASSIGN = TokenType.ASSIGN.ordinal();
+	private static final int LEFT_PAREN = TokenType.LEFT_PAREN.ordinal();
+	private static final int RIGHT_PAREN = TokenType.RIGHT_PAREN.ordinal();
+	private static final int LEFT_SQUARE = TokenType.LEFT_SQUARE.ordinal();
+	private static final int RIGHT_SQUARE = TokenType.RIGHT_SQUARE.ordinal();
+	private static final int LEFT_CURLY = TokenType.LEFT_CURLY.ordinal();
+	private static final int RIGHT_CURLY = TokenType.RIGHT_CURLY.ordinal();
+	private static final int ID = TokenType.ID.ordinal();
+	private static final int NUM = TokenType.NUM.ordinal();
+	private static final int SEMICOLON = TokenType.SEMICOLON.ordinal();
+	private static final int COMMA = TokenType.COMMA.ordinal();
+	private static final int EOF = TokenType.EOF.ordinal();
+
+	private static final ArrayList<int[]> rules = new ArrayList<int[]>();
+
+	// the left hand side and right hand side of every production
+	private static final int[] LHS;
+	private static final int[][] RHS;
+
+	// each right hand side reversed, ready to copy onto the parse stack so
+	// its first symbol ends up on top
+	private static final int[][] EXPANSIONS;
+
+	private static final long[] FIRST = new long[NUM_NONTERMINALS];
+	private static final long[] FOLLOW = new long[NUM_NONTERMINALS];
+	private static final boolean[] NULLABLE = new boolean[NUM_NONTERMINALS];
+
+	// the production to expand for each nonterminal and lookahead, or -1
+	private static final int[][] TABLE = new int[NUM_NONTERMINALS][TYPES.length];
+
+	static {
+		rule(PROGRAM, DECLARATION, A_ADD_DECLARATION, DECLARATIONS);
+		rule(DECLARATIONS, DECLARATION, A_ADD_DECLARATION, DECLARATIONS);
+		rule(DECLARATIONS);
+		rule(DECLARATION, A_INT, INT, A_NAME, ID, DECLARATION_REST);
+		rule(DECLARATION, A_VOID, VOID, A_NAME, ID, DECLARATION_REST);
+		rule(DECLARATION_REST, A_FUNCTION, LEFT_PAREN, PARAMS, RIGHT_PAREN, COMPOUND_STMT, A_BODY);
+		rule(DECLARATION_REST, A_VARIABLE, VAR_SIZE);
+		rule(VAR_SIZE, LEFT_SQUARE, A_ARRAY_SIZE, NUM, RIGHT_SQUARE, SEMICOLON);
+		rule(VAR_SIZE, SEMICOLON);
+
+		rule(PARAMS, INT, PARAM, PARAM_LIST);
+		rule(PARAMS, VOID);
+		rule(PARAMS);
+		rule(PARAM, A_NAME, ID, A_PARAM, ARRAY_PARAM);
+		rule(ARRAY_PARAM, LEFT_SQUARE, RIGHT_SQUARE, A_ARRAY_PARAM);
+		rule(ARRAY_PARAM);
+		rule(PARAM_LIST, COMMA, INT, PARAM, PARAM_LIST);
+		rule(PARAM_LIST);
+
+		rule(COMPOUND_STMT, LEFT_CURLY, A_COMPOUND, LOCAL_DECLARATIONS, STATEMENTS, RIGHT_CURLY);
+		rule(LOCAL_DECLARATIONS, INT, A_NAME, ID, A_LOCAL, VAR_SIZE, A_ADD_LOCAL, LOCAL_DECLARATIONS);
+		rule(LOCAL_DECLARATIONS);
+		rule(STATEMENTS, STATEMENT, A_ADD_STATEMENT, STATEMENTS);
+		rule(STATEMENTS);
+		rule(STATEMENT, EXPRESSION, SEMICOLON, A_EXPRESSION_STMT);
+		rule(STATEMENT, SEMICOLON, A_EMPTY_STMT);
+		rule(STATEMENT, COMPOUND_STMT);
+		rule(STATEMENT, IF, LEFT_PAREN, EXPRESSION, RIGHT_PAREN, STATEMENT, ELSE_PART);
+		rule(STATEMENT, WHILE, LEFT_PAREN, EXPRESSION, RIGHT_PAREN, STATEMENT, A_WHILE);
+		rule(STATEMENT, RETURN, RETURN_VALUE, SEMICOLON);
+		rule(ELSE_PART, ELSE, STATEMENT, A_IF_ELSE);
+		rule(ELSE_PART, A_IF);
+		rule(RETURN_VALUE, EXPRESSION, A_RETURN_VALUE);
+		rule(RETURN_VALUE, A_RETURN);
+
+		// an expression starting with an ID could still be an assignment,
+		// so the ID is read first and the rest decided by what follows it
+		rule(EXPRESSION, A_NAME, ID, ID_EXPRESSION);
+		rule(EXPRESSION, NON_ID_FACTOR, SIMPLE_REST);
+		rule(ID_EXPRESSION, A_VARIABLE_EXPRESSION, ASSIGN, EXPRESSION, A_ASSIGN);
+		rule(ID_EXPRESSION, LEFT_SQUARE, EXPRESSION, RIGHT_SQUARE, A_INDEX, VAR_EXPRESSION);
+		rule(ID_EXPRESSION, A_ARGS, LEFT_PAREN, ARGS, RIGHT_PAREN, A_CALL, SIMPLE_REST);
+		rule(ID_EXPRESSION, A_VARIABLE_EXPRESSION, SIMPLE_REST);
+		rule(VAR_EXPRESSION, ASSIGN, EXPRESSION, A_ASSIGN);
+		rule(VAR_EXPRESSION, SIMPLE_REST);
+		rule(SIMPLE_REST, TERM_REST, ADDITIVE_REST, RELATIONAL_REST);
+
+		rule(FACTOR, NON_ID_FACTOR);
+		rule(FACTOR, A_NAME, ID, ID_FACTOR);
+		rule(NON_ID_FACTOR, LEFT_PAREN, EXPRESSION, RIGHT_PAREN);
+		rule(NON_ID_FACTOR, A_NUMBER, NUM);
+		rule(ID_FACTOR, A_ARGS, LEFT_PAREN, ARGS, RIGHT_PAREN, A_CALL);
+		rule(ID_FACTOR, LEFT_SQUARE, EXPRESSION, RIGHT_SQUARE, A_INDEX);
+		rule(ID_FACTOR, A_VARIABLE_EXPRESSION);
+
+		// operators are pushed before they are matched and each binary node
+		// is built as soon as its right operand is done, which keeps the
+		// chains left associative
+		rule(TERM, FACTOR, TERM_REST);
+		rule(TERM_REST, A_OPERATOR, MULOP, FACTOR, A_BINARY, TERM_REST);
+		rule(TERM_REST);
+		rule(ADDITIVE, TERM, ADDITIVE_REST);
+		rule(ADDITIVE_REST, A_OPERATOR, ADDOP, TERM, A_BINARY, ADDITIVE_REST);
+		rule(ADDITIVE_REST);
+		rule(RELATIONAL_REST, A_OPERATOR, RELOP, ADDITIVE, A_BINARY);
+		rule(RELATIONAL_REST);
+
+		rule(MULOP, TokenType.MULTIPLY.ordinal());
+		rule(MULOP, TokenType.DIVIDE.ordinal());
+		rule(ADDOP, TokenType.PLUS.ordinal());
+		rule(ADDOP, TokenType.MINUS.ordinal());
+		rule(RELOP, TokenType.LT_EQUAL.ordinal());
+		rule(RELOP, TokenType.LESS_THAN.ordinal());
+		rule(RELOP, TokenType.GREATER_THAN.ordinal());
+		rule(RELOP, TokenType.GT_EQUAL.ordinal());
+		rule(RELOP, TokenType.EQUAL.ordinal());
+		rule(RELOP, TokenType.NOT_EQUAL.ordinal());
+
+		rule(ARGS, EXPRESSION, A_ARG, ARG_LIST);
+		rule(ARGS);
+		rule(ARG_LIST, COMMA, EXPRESSION, A_ARG, ARG_LIST);
+		rule(ARG_LIST);
+
+		LHS = new int[rules.size()];
+		RHS = new int[rules.size()][];
+		EXPANSIONS = new int[rules.size()][];
+		for(int i = 0; i < rules.size(); i++) {
+			int[] rule = rules.get(i);
+			LHS[i] = rule[0];
+			RHS[i] = Arrays.copyOfRange(rule, 1, rule.length);
+
+			EXPANSIONS[i] = new int[RHS[i].length];
+			for(int j = 0; j < RHS[i].length; j++) {
+				EXPANSIONS[i][RHS[i].length - 1 - j] = RHS[i][j];
+			}
+		}
+
+		computeFirst();
+		computeFollow();
+		buildTable();
+	}
+
+	private TokenStream tokens;
+
+	// grammar symbols still to be matched, expanded or run
+	private int[] symbols = new int[256];
+	private int symbolTop = 0;
+
+	// nodes, names and lists waiting to be put together by an action
+	private Object[] values = new Object[256];
+	private int valueTop = 0;
+
+	// the symbol id of each name on the value stack, in the same order
+	private int[] nameSymbols = new int[64];
+	private int nameTop = 0;
+
+	// shares identical subexpressions across the program
+	private ExpressionTable table = new ExpressionTable();
+
+	public TableParser(TokenStream tokens) {
+		this.tokens = tokens;
+	}
+
+	@Override
+	public Program parse() {
+		try {
+			return parseProgram();
+		} catch (ParseErrorException e) {
+			System.out.println(e);
+		}
+
+		return null;
+	}
+
+	private Program parseProgram() throws ParseErrorException {
+		Program program = new Program(tokens.getIdentifiers());
+		pushValue(program);
+
+		symbolTop = 0;
+		nameTop = 0;
+		pushSymbol(EOF);
+		pushSymbol(PROGRAM);
+
+		int lookahead = tokens.peek().ordinal();
+		while(symbolTop > 0) {
+			int symbol = symbols[--symbolTop];
+
+			if(symbol < NONTERMINAL) {
+				if(lookahead != symbol) {
+					throw new ParseErrorException("Match failed. " + tokens.peek() + " != " + TYPES[symbol]);
+				}
+				tokens.advance();
+				lookahead = tokens.peek().ordinal();
+			} else if(symbol < ACTION) {
+				int rule = TABLE[symbol - NONTERMINAL][lookahead];
+				if(rule < 0) {
+					throw new ParseErrorException("Expected " + NAMES[symbol - NONTERMINAL] + " (one of " +
+						describe(FIRST[symbol - NONTERMINAL]) + "), found " + tokens.peek());
+				}
+
+				int[] expansion = EXPANSIONS[rule];
+				if(symbolTop + expansion.length > symbols.length) {
+					symbols = Arrays.copyOf(symbols, (symbolTop + expansion.length) * 2);
+				}
+				System.arraycopy(expansion, 0, symbols, symbolTop, expansion.length);
+				symbolTop += expansion.length;
+			} else {
+				perform(symbol);
+			}
+		}
+
+		return program;
+	}
+
+	/**
+	 * Run a semantic action against the value stack.
+	 */
+	@SuppressWarnings("unchecked")
+	private void perform(int action) {
+		switch(action) {
+			case A_INT:
+				pushValue(VariableType.INT);
+				break;
+			case A_VOID:
+				pushValue(VariableType.VOID);
+				break;
+			case A_NAME:
+				pushValue(tokens.symbolName());
+				pushNameSymbol(tokens.symbol());
+				break;
+			case A_NUMBER:
+				pushValue(table.intern(new LiteralExpression(tokens.intValue())));
+				break;
+			case A_OPERATOR:
+				pushValue(getOperator());
+				break;
+
+			case A_FUNCTION: {
+				String id = (String) popValue();
+				nameTop--;
+				VariableType type = (VariableType) popValue();
+				pushValue(new FunctionDeclaration(id, type));
+				pushValue(new ArrayList<Variable>());
+				break;
+			}
+			case A_PARAM: {
+				String id = (String) popValue();
+				((ArrayList<Variable>) peekValue()).add(new Variable(id, nameSymbols[--nameTop]));
+				break;
+			}
+			case A_ARRAY_PARAM: {
+				ArrayList<Variable> params = (ArrayList<Variable>) peekValue();
+				params.get(params.size() - 1).isArray = true;
+				break;
+			}
+			case A_BODY: {
+				CompoundStatement body = (CompoundStatement) popValue();
+				ArrayList<Variable> params = (ArrayList<Variable>) popValue();
+				FunctionDeclaration declaration = (FunctionDeclaration) peekValue();
+				declaration.setParameters(params);
+				declaration.setStatement(body);
+				break;
+			}
+			case A_VARIABLE: {
+				String id = (String) popValue();
+				VariableType type = (VariableType) popValue();
+				pushValue(new VariableDeclaration(id, nameSymbols[--nameTop], type));
+				break;
+			}
+			case A_ARRAY_SIZE:
+				((VariableDeclaration) peekValue()).arraySize = tokens.intValue();
+				break;
+			case A_ADD_DECLARATION: {
+				Declaration declaration = (Declaration) popValue();
+				((Program) peekValue()).addDeclaration(declaration);
+				break;
+			}
+
+			case A_COMPOUND:
+				pushValue(new CompoundStatement());
+				break;
+			case A_LOCAL:
+				pushValue(new VariableDeclaration((String) popValue(), nameSymbols[--nameTop], VariableType.INT));
+				break;
+			case A_ADD_LOCAL: {
+				VariableDeclaration declaration = (VariableDeclaration) popValue();
+				((CompoundStatement) peekValue()).addVariableDeclaration(declaration);
+				break;
+			}
+			case A_ADD_STATEMENT: {
+				Statement statement = (Statement) popValue();
+				((CompoundStatement) peekValue()).addStatement(statement);
+				break;
+			}
+			case A_EXPRESSION_STMT:
+				pushValue(new ExpressionStmt((Expression) popValue()));
+				break;
+			case A_EMPTY_STMT:
+				pushValue(new ExpressionStmt());
+				break;
+			case A_IF:
+			case A_IF_ELSE: {
+				SelectionStmt stmt = new SelectionStmt();
+				if(action == A_IF_ELSE) {
+					stmt.elseStmt = (Statement) popValue();
+				}
+				stmt.ifStmt = (Statement) popValue();
+				stmt.expression = (Expression) popValue();
+				pushValue(stmt);
+				break;
+			}
+			case A_WHILE: {
+				Statement statement = (Statement) popValue();
+				pushValue(new IterationStmt((Expression) popValue(), statement));
+				break;
+			}
+			case A_RETURN:
+				pushValue(new ReturnStmt());
+				break;
+			case A_RETURN_VALUE:
+				pushValue(new ReturnStmt((Expression) popValue()));
+				break;
+
+			case A_VARIABLE_EXPRESSION:
+				pushValue(table.intern(new VariableExpression((String) popValue(), nameSymbols[--nameTop])));
+				break;
+			case A_INDEX: {
+				Expression index = (Expression) popValue();
+				pushValue(table.intern(new VariableExpression((String) popValue(), nameSymbols[--nameTop], index)));
+				break;
+			}
+			case A_ASSIGN: {
+				Expression rhs = (Expression) popValue();
+				pushValue(new AssignExpression((Expression) popValue(), rhs));
+				break;
+			}
+			case A_BINARY: {
+				Expression rhs = (Expression) popValue();
+				Operator op = (Operator) popValue();
+				pushValue(table.intern(new BinaryExpression(op, (Expression) popValue(), rhs)));
+				break;
+			}
+			case A_ARGS:
+				pushValue(new ArrayList<Expression>());
+				break;
+			case A_ARG: {
+				Expression arg = (Expression) popValue();
+				((ArrayList<Expression>) peekValue()).add(arg);
+				break;
+			}
+			case A_CALL: {
+				ArrayList<Expression> args = (ArrayList<Expression>) popValue();
+				nameTop--;
+				pushValue(new CallExpression((String) popValue(), args));
+				break;
+			}
+		}
+	}
+
+	private Operator getOperator() {
+		switch(tokens.peek()) {
+			case PLUS:
+				return Operator.ADD;
+			case MINUS:
+				return Operator.SUBTRACT;
+			case MULTIPLY:
+				return Operator.MULTIPLY;
+			case DIVIDE:
+				return Operator.DIVIDE;
+			case GREATER_THAN:
+				return Operator.GREATER_THAN;
+			case GT_EQUAL:
+				return Operator.GT_EQUAL;
+			case EQUAL:
+				return Operator.EQUAL;
+			case LESS_THAN:
+				return Operator.LESS_THAN;
+			case LT_EQUAL:
+				return Operator.LT_EQUAL;
+			case NOT_EQUAL:
+				return Operator.NOT_EQUAL;
+			default:
+				return null;
+		}
+	}
+
+	private void pushSymbol(int symbol) {
+		if(symbolTop == symbols.length) {
+			symbols = Arrays.copyOf(symbols, symbolTop * 2);
+		}
+		symbols[symbolTop++] = symbol;
+	}
+
+	private void pushValue(Object value) {
+		if(valueTop == values.length) {
+			values = Arrays.copyOf(values, valueTop * 2);
+		}
+		values[valueTop++] = value;
+	}
+
+	private Object popValue() {
+		Object value = values[--valueTop];
+		values[valueTop] = null;
+		return value;
+	}
+
+	private Object peekValue() {
+		return values[valueTop - 1];
+	}
+
+	private void pushNameSymbol(int symbol) {
+		if(nameTop == nameSymbols.length) {
+			nameSymbols = Arrays.copyOf(nameSymbols, nameTop * 2);
+		}
+		nameSymbols[nameTop++] = symbol;
+	}
+
+	private static void rule(int lhs, int... rhs) {
+		int[] rule = new int[rhs.length + 1];
+		rule[0] = lhs;
+		System.arraycopy(rhs, 0, rule, 1, rhs.length);
+		rules.add(rule);
+	}
+
+	/**
+	 * The FIRST set of <code>rhs[from...]</code>, with bit 63 set if the
+	 * whole sequence can be empty.  Actions match nothing and are skipped.
+	 */
+	private static long firstOf(int[] rhs, int from) {
+		long first = 0;
+
+		for(int i = from; i < rhs.length; i++) {
+			int symbol = rhs[i];
+			if(symbol >= ACTION) {
+				continue;
+			} else if(symbol < NONTERMINAL) {
+				return first | (1L << symbol);
+			}
+
+			first |= FIRST[symbol - NONTERMINAL];
+			if(!NULLABLE[symbol - NONTERMINAL]) {
+				return first;
+			}
+		}
+
+		return first | (1L << 63);
+	}
+
+	private static void computeFirst() {
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+
+			for(int i = 0; i < LHS.length; i++) {
+				int lhs = LHS[i] - NONTERMINAL;
+				long first = firstOf(RHS[i], 0);
+				boolean nullable = first < 0;
+				first &= Long.MAX_VALUE;
+
+				if((FIRST[lhs] | first) != FIRST[lhs] || (nullable && !NULLABLE[lhs])) {
+					FIRST[lhs] |= first;
+					NULLABLE[lhs] |= nullable;
+					changed = true;
+				}
+			}
+		}
+	}
+
+	private static void computeFollow() {
+		FOLLOW[PROGRAM - NONTERMINAL] = 1L << EOF;
+
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+
+			for(int i = 0; i < LHS.length; i++) {
+				int[] rhs = RHS[i];
+				for(int j = 0; j < rhs.length; j++) {
+					if(rhs[j] < NONTERMINAL || rhs[j] >= ACTION) {
+						continue;
+					}
+
+					// whatever can start the rest of the production, and if
+					// the rest can be empty whatever can follow the production
+					long rest = firstOf(rhs, j + 1);
+					long follow = rest & Long.MAX_VALUE;
+					if(rest < 0) {
+						follow |= FOLLOW[LHS[i] - NONTERMINAL];
+					}
+
+					int symbol = rhs[j] - NONTERMINAL;
+					if((FOLLOW[symbol] | follow) != FOLLOW[symbol]) {
+						FOLLOW[symbol] |= follow;
+						changed = true;
+					}
+				}
+			}
+		}
+	}
+
+	private static void buildTable() {
+		for(int[] row : TABLE) {
+			Arrays.fill(row, -1);
+		}
+
+		for(int i = 0; i < LHS.length; i++) {
+			int[] row = TABLE[LHS[i] - NONTERMINAL];
+			long first = firstOf(RHS[i], 0);
+
+			for(int t = 0; t < TYPES.length; t++) {
+				if((first & (1L << t)) != 0) {
+					if(row[t] >= 0) {
+						throw new IllegalStateException("Grammar is not LL(1): " +
+							NAMES[LHS[i] - NONTERMINAL] + " has two productions for " + TYPES[t]);
+					}
+					row[t] = i;
+				}
+			}
+		}
+
+		// empty productions go in wherever no FIRST entry was made, which is
+		// what hands an else to the nearest if
+		for(int i = 0; i < LHS.length; i++) {
+			if(firstOf(RHS[i], 0) >= 0) {
+				continue;
+			}
+
+			int[] row = TABLE[LHS[i] - NONTERMINAL];
+			long follow = FOLLOW[LHS[i] - NONTERMINAL];
+			for(int t = 0; t < TYPES.length; t++) {
+				if((follow & (1L << t)) != 0 && row[t] < 0) {
+					row[t] = i;
+				}
+			}
+		}
+	}
+
+	private static String describe(long set) {
+		StringBuilder text = new StringBuilder();
+
+		for(int t = 0; t < TYPES.length; t++) {
+			if((set & (1L << t)) != 0) {
+				if(text.length() > 0) {
+					text.append(", ");
+				}
+				text.append(TYPES[t]);
+			}
+		}
+
+		return text.toString();
+	}
+
+	/**
+	 * Print the FIRST and FOLLOW set of every nonterminal in the style of
+	 * first.txt.
+	 */
+	public static void printSets(PrintStream out) {
+		for(int i = 0; i < NUM_NONTERMINALS; i++) {
+			out.println("first(" + NAMES[i] + ") = { " + describe(FIRST[i]) + (NULLABLE[i] ? ", ep" : "") + " }");
+		}
+		out.println("-------");
+		for(int i = 0; i < NUM_NONTERMINALS; i++) {
+			out.println("follow(" + NAMES[i] + ") = { " + describe(FOLLOW[i]) + " }");
+		}
+	}
+
+	private static String printTree(Program program) throws IOException {
+		StringWriter text = new StringWriter();
+		BufferedWriter out = new BufferedWriter(text);
+		program.printTree(out);
+		out.close();
+		return text.toString();
+	}
+
+	/**
+	 * Parse <code>filename</code> with CMinusParser and with this parser,
+	 * checking that the trees match and timing both.  With no file, print
+	 * the FIRST and FOLLOW sets instead.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0) {
+			printSets(System.out);
+			return;
+		}
+
+		ByteBuffer source = MappedCMinusScanner.mapFile(args[0]);
+		int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+		TokenStream tokens = TokenStream.scan(source);
+		double mb = source.limit() / (1024.0 * 1024.0);
+
+		Program descent = null;
+		Program table = null;
+		for(int run = 0; run < runs; run++) {
+			long start = System.nanoTime();
+			descent = new CMinusParser(tokens.slice(0, tokens.size())).parse();
+			long middle = System.nanoTime();
+			table = new TableParser(tokens.slice(0, tokens.size())).parse();
+			long end = System.nanoTime();
+
+			System.out.printf("run %d: recursive descent %.1f MB/s (%.1f ms), table %.1f MB/s (%.1f ms)%n",
+				run, mb / ((middle - start) / 1e9), (middle - start) / 1e6,
+				mb / ((end - middle) / 1e9), (end - middle) / 1e6);
+		}
+
+		if(descent == null || table == null) {
+			System.out.println((descent == table) ? "neither parser accepted the file" : "TREES DIFFER");
+			return;
+		}
+
+		System.out.println(printTree(descent).equals(printTree(table)) ? "trees match" : "TREES DIFFER");
+	}
+}
@@ -5,12 +5,18 @@ import java.io.IOException;
 
 public class Variable {
 	protected String id;
+	protected int symbol = -1;
 	protected boolean isArray = false;
 	
 	public Variable(String i) {
 		id = i;
 	}
 	
+	public Variable(String i, int s) {
+		id = i;
+		symbol = s;
+	}
+	
 	public void print(String tab, BufferedWriter out) throws IOException {
 		out.write(tab + "Variable: " + id + " \n");
 	}
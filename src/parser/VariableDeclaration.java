@@ -3,8 +3,6 @@ package parser;
 import java.io.BufferedWriter;
 import java.io.IOException;
 
-import compiler.CMinusCompiler;
-
 import lowlevel.CodeItem;
 import lowlevel.Data;
 
@@ -15,14 +13,18 @@ public class VariableDeclaration extends Declaration {
 		super(id, type);
 	}
 	
+	public VariableDeclaration(String id, int symbol, VariableType type) {
+		super(id, symbol, type);
+	}
+	
 	public VariableDeclaration(int offset) {
 		arraySize = offset;
 	}
 	
 	public VariableDeclaration() {}
 	
-	public CodeItem genLLCode() {
-		CMinusCompiler.globalHash.put(getID(), null);
+	public CodeItem genLLCode(SymbolTable symbols) {
+		symbols.declareGlobal(symbols.resolve(getSymbol(), getID()));
 		return new Data(typeConvert(), getID(), arraySize != -1, arraySize);
 	}
 	
@@ -33,6 +35,13 @@ public class VariableDeclaration extends Declaration {
 			return Data.TYPE_VOID;
 	}
 
+	public void write(AstOutput out) throws IOException {
+		out.writeByte(AstOutput.VARIABLE_DECLARATION);
+		out.writeName(getID());
+		out.writeType(getType());
+		out.writeVarInt(arraySize);
+	}
+
 	@Override
 	public void print(String tab, BufferedWriter out) throws IOException {
 		out.write(tab + "VariableDeclaration: " + getID());
@@ -2,9 +2,6 @@ package parser;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.util.HashMap;
-
-import compiler.CMinusCompiler;
 
 import lowlevel.Function;
 import lowlevel.Operand;
@@ -12,36 +9,110 @@ import lowlevel.Operation;
 
 public class VariableExpression extends Expression {
 	private Expression arrayExpression = null;
+	private int symbol = -1;
+	// worked out once, so asking is cheap however deep the tree is
+	private boolean sideEffects;
+	private boolean trap;
 	
 	public VariableExpression(String i) {
-		super(i);
+		this(i, -1, null);
 	}
 	
 	public VariableExpression(String i, Expression inner) {
-		this(i);
+		this(i, -1, inner);
+	}
+	
+	public VariableExpression(String i, int s) {
+		this(i, s, null);
+	}
+	
+	public VariableExpression(String i, int s, Expression inner) {
+		super(i);
+		symbol = s;
 		arrayExpression = inner;
+		hash = 31 * (31 * 2 + ((s >= 0) ? s : i.hashCode())) +
+			   ((inner == null) ? 0 : inner.structuralHash());
+		sideEffects = inner != null && inner.hasSideEffects();
+		trap = inner != null && inner.mayTrap();
 	}
 	
-	public void genLLCode(Function f) {
+	public void genLLCode(Function f, SymbolTable symbols) {
 		/** TODO: what do we do with this? */
-		//arrayExpression.genLLCode(f);
+		//arrayExpression.genLLCode(f, symbols);
 		
-		HashMap local = f.getTable();
-		HashMap global = CMinusCompiler.globalHash;
-		if(local.containsKey(getID())) {
-			regNum = (Integer) local.get(getID());
-		} else if(global.containsKey(getID())) {
+		int binding = symbols.lookup(getSymbol(symbols));
+		if(binding >= 0) {
+			regNum = binding;
+		} else if(binding == SymbolTable.GLOBAL) {
+			AvailableValues values = symbols.getAvailableValues();
+			int known = (values == null) ? -1 : values.lookup(this, f.getCurrBlock());
+			if(known >= 0) {
+				regNum = known;
+				return;
+			}
+			
 			regNum = f.getNewRegNum();
 			
 			Operation oper = new Operation(Operation.OPER_LOAD_I, f.getCurrBlock());
 			f.getCurrBlock().appendOper(oper);
 			oper.setDestOperand(0, new Operand(Operand.OPERAND_REG, regNum));
 			oper.setSrcOperand(0, new Operand(Operand.OPERAND_STRING, getID()));
+			if(values != null) {
+				values.record(this, f.getCurrBlock(), regNum);
+			}
 		} else {
 			throw new ParseErrorException("No variable named " + getID());
 		}
 	}
 	
+	public Expression simplify() {
+		if(arrayExpression != null) {
+			arrayExpression = arrayExpression.simplify();
+			sideEffects = arrayExpression.hasSideEffects();
+			trap = arrayExpression.mayTrap();
+		}
+		
+		return this;
+	}
+	
+	public boolean reads(int symbol, SymbolTable symbols) {
+		return getSymbol(symbols) == symbol || (arrayExpression != null && arrayExpression.reads(symbol, symbols));
+	}
+	
+	public boolean hasSideEffects() {
+		return sideEffects;
+	}
+	
+	public boolean mayTrap() {
+		return trap;
+	}
+	
+	public boolean isArrayElement() {
+		return arrayExpression != null;
+	}
+	
+	public boolean sameStructure(Expression other) {
+		if(!(other instanceof VariableExpression)) {
+			return false;
+		}
+		
+		VariableExpression v = (VariableExpression) other;
+		return v.symbol == symbol && v.arrayExpression == arrayExpression && v.getID().equals(getID());
+	}
+	
+	/**
+	 * The symbol id of the variable in <code>symbols</code>.
+	 */
+	public int getSymbol(SymbolTable symbols) {
+		return symbols.resolve(symbol, getID());
+	}
+	
+	public void write(AstOutput out) throws IOException {
+		out.writeByte(AstOutput.VARIABLE_EXPRESSION);
+		out.writeName(getID());
+		out.writeNode(arrayExpression);
+	}
+	
 	public void print(String tab, BufferedWriter out) throws IOException {
 		out.write(tab + "VariableExpression: " + getID());
 		if(arrayExpression != null) {
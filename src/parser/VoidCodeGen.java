@@ -3,5 +3,5 @@ package parser;
 import lowlevel.Function;
 
 public interface VoidCodeGen {
-	public void genLLCode(Function f);
+	public void genLLCode(Function f, SymbolTable symbols);
 }
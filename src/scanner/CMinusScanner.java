@@ -130,6 +130,10 @@ public class CMinusScanner implements Scanner {
 		
 		token.setTokenData(word);
 		
+		if(token.getTokenType() == TokenType.NUM) {
+			token.setIntValue(Integer.parseInt(word.toString()));
+		}
+		
 		return token;
     }
     
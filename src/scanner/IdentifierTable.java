@@ -0,0 +1,163 @@
+package scanner;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Interns identifiers to small integer symbol ids.  Ids are handed out
+ * sequentially in order of first appearance, and each id owns a single shared
+ * ID token, so scanning an identifier that has been seen before allocates
+ * nothing.
+ */
+public class IdentifierTable {
+    private static final int INITIAL_CAPACITY = 256;
+
+    // symbol id -> name / shared token
+    private String[] names = new String[INITIAL_CAPACITY];
+    private Token[] tokens = new Token[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int count = 0;
+
+    // open addressing table of symbol id + 1 (0 marks an empty slot)
+    private int[] slots = new int[INITIAL_CAPACITY * 2];
+
+    /**
+     * Intern the identifier held in <code>buffer</code> between
+     * <code>start</code> (inclusive) and <code>end</code> (exclusive).  A
+     * String is only built the first time an identifier is seen.
+     * @return the symbol id
+     */
+    public int intern(ByteBuffer buffer, int start, int end) {
+        int hash = 0;
+        for(int i = start; i < end; i++) {
+            hash = 31 * hash + (buffer.get(i) & 0xFF);
+        }
+
+        int mask = slots.length - 1;
+        for(int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if(id < 0) {
+                char[] chars = new char[end - start];
+                for(int i = start; i < end; i++) {
+                    chars[i - start] = (char) (buffer.get(i) & 0xFF);
+                }
+                return add(new String(chars), hash, slot);
+            }
+
+            if(hashes[id] == hash && sameBytes(names[id], buffer, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Intern an identifier which is already a String.
+     * @return the symbol id
+     */
+    public int intern(String name) {
+        int hash = name.hashCode();
+
+        int mask = slots.length - 1;
+        for(int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if(id < 0) {
+                return add(name, hash, slot);
+            }
+
+            if(hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Look up an identifier without interning it.
+     * @return the symbol id, or -1 if the name has never been interned
+     */
+    public int find(String name) {
+        int hash = name.hashCode();
+
+        int mask = slots.length - 1;
+        for(int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if(id < 0) {
+                return -1;
+            }
+
+            if(hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    public String getName(int id) {
+        return names[id];
+    }
+
+    /**
+     * The shared ID token for a symbol.  It must not be modified.
+     */
+    public Token getToken(int id) {
+        return tokens[id];
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private int add(String name, int hash, int slot) {
+        if(count == names.length) {
+            names = Arrays.copyOf(names, count * 2);
+            tokens = Arrays.copyOf(tokens, count * 2);
+            hashes = Arrays.copyOf(hashes, count * 2);
+        }
+
+        int id = count++;
+        names[id] = name;
+        hashes[id] = hash;
+        tokens[id] = new Token(TokenType.ID, name, 0, id);
+        slots[slot] = id + 1;
+
+        // keep the table at most half full
+        if(count * 2 > slots.length) {
+            rehash();
+        }
+
+        return id;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+
+        for(int id = 0; id < count; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while(slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    private static boolean sameBytes(String name, ByteBuffer buffer, int start, int end) {
+        if(name.length() != end - start) {
+            return false;
+        }
+
+        for(int i = start; i < end; i++) {
+            if(name.charAt(i - start) != (buffer.get(i) & 0xFF)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // spread the low bits, since String style hashes cluster
+    private static int mix(int hash) {
+        hash ^= (hash >>> 16);
+        hash *= 0x85ebca6b;
+        hash ^= (hash >>> 13);
+        return hash;
+    }
+}
@@ -0,0 +1,500 @@
+package scanner;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A C- Scanner which works directly on the bytes of a memory-mapped file (or
+ * any other <code>ByteBuffer</code>).  Characters are classified through a
+ * 256-entry table instead of per-character string compares, and comments are
+ * skipped at the byte level so they never turn into tokens.
+ *
+ * Keywords and punctuation come back as shared flyweight tokens, identifiers
+ * are interned into an <code>IdentifierTable</code> (one shared token per
+ * symbol) and NUM tokens carry their value as a primitive int and are shared
+ * per value, so steady-state scanning does not allocate.
+ */
+public class MappedCMinusScanner implements Scanner {
+
+    // character classes used by the lookup table
+    private static final byte CLASS_OTHER = 0;
+    private static final byte CLASS_WHITESPACE = 1;
+    private static final byte CLASS_LETTER = 2;
+    private static final byte CLASS_DIGIT = 3;
+    private static final byte CLASS_SYMBOL = 4;
+
+    private static final byte[] CHAR_CLASS = new byte[256];
+
+    static {
+        CHAR_CLASS[' '] = CLASS_WHITESPACE;
+        CHAR_CLASS['\n'] = CLASS_WHITESPACE;
+        CHAR_CLASS['\t'] = CLASS_WHITESPACE;
+        CHAR_CLASS['\r'] = CLASS_WHITESPACE;
+
+        for(int c = 'a'; c <= 'z'; c++) {
+            CHAR_CLASS[c] = CLASS_LETTER;
+            CHAR_CLASS[c - 'a' + 'A'] = CLASS_LETTER;
+        }
+
+        for(int c = '0'; c <= '9'; c++) {
+            CHAR_CLASS[c] = CLASS_DIGIT;
+        }
+
+        String symbols = "{}[]()<>=/*+-!;,";
+        for(int i = 0; i < symbols.length(); i++) {
+            CHAR_CLASS[symbols.charAt(i)] = CLASS_SYMBOL;
+        }
+    }
+
+    private ByteBuffer buffer;
+    private int position;
+    private int limit;
+    private Token nextToken = null;
+
+    private IdentifierTable identifiers;
+
+    // the token found by the last call to scanNext
+    private int tokenStart;
+    private int tokenValue;
+    private int tokenSymbol;
+
+    // open addressing cache of NUM tokens keyed by value
+    private int[] literalValues = new int[64];
+    private Token[] literalTokens = new Token[64];
+    private int literalCount = 0;
+
+    public MappedCMinusScanner(ByteBuffer buffer) {
+        this(buffer, new IdentifierTable());
+    }
+
+    public MappedCMinusScanner(ByteBuffer buffer, IdentifierTable identifiers) {
+        this.buffer = buffer;
+        this.identifiers = identifiers;
+        position = buffer.position();
+        limit = buffer.limit();
+    }
+
+    public MappedCMinusScanner(String filename) throws IOException {
+        this(mapFile(filename));
+    }
+
+    /**
+     * The table the scanned identifiers were interned into.
+     */
+    public IdentifierTable getIdentifiers() {
+        return identifiers;
+    }
+
+    /**
+     * Map the whole of <code>filename</code> read-only into memory.
+     */
+    public static ByteBuffer mapFile(String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+
+        try {
+            FileChannel channel = file.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Get the next token from the buffer.
+     */
+    public Token getNextToken() {
+        Token returnToken = viewNextToken();
+
+        if(returnToken.getTokenType() != TokenType.EOF)
+            nextToken = null;
+
+        return returnToken;
+    }
+
+    /**
+     * View the next token but do not advance in the buffer.
+     */
+    public Token viewNextToken() {
+        if(nextToken == null) {
+            nextToken = scanToken();
+        }
+
+        return nextToken;
+    }
+
+    /**
+     * Scan the next token without building a <code>Token</code> for it.  The
+     * details of the token are then available from
+     * <code>getTokenStart</code>, <code>getTokenValue</code> and
+     * <code>getTokenSymbol</code>.  This must not be mixed with
+     * <code>getNextToken</code> on the same scanner.
+     * @return the type of the token, EOF once the input is used up
+     */
+    public TokenType scanNext() {
+        int c = skipWhitespaceAndComments();
+        tokenStart = position;
+        tokenValue = 0;
+        tokenSymbol = -1;
+
+        if(c < 0) {
+            return TokenType.EOF;
+        }
+
+        switch(CHAR_CLASS[c]) {
+            case CLASS_LETTER:
+                return scanIdentifier();
+            case CLASS_DIGIT:
+                return scanLiteral();
+            case CLASS_SYMBOL:
+                return scanSymbol(c);
+            default:
+                position++;
+                return TokenType.UNKNOWN;
+        }
+    }
+
+    /**
+     * Offset into the buffer of the last token scanned.
+     */
+    public int getTokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * Value of the last token scanned, if it was a NUM.
+     */
+    public int getTokenValue() {
+        return tokenValue;
+    }
+
+    /**
+     * Symbol id of the last token scanned, if it was an ID, otherwise -1.
+     */
+    public int getTokenSymbol() {
+        return tokenSymbol;
+    }
+
+    /**
+     * Scan the next token and wrap it up as a (usually shared) Token.
+     */
+    private Token scanToken() {
+        TokenType type = scanNext();
+
+        switch(type) {
+            case ID:
+                return identifiers.getToken(tokenSymbol);
+            case NUM:
+                return literalToken(tokenValue);
+            case UNKNOWN:
+                // bad identifiers and numbers keep their text for error messages
+                int c = byteAt(tokenStart);
+                if(CHAR_CLASS[c] == CLASS_LETTER || CHAR_CLASS[c] == CLASS_DIGIT) {
+                    return new Token(type, text(tokenStart, position));
+                }
+                return Token.shared(type);
+            default:
+                return Token.shared(type);
+        }
+    }
+
+    /**
+     * Advance past whitespace and <code>/* ... *&#47;</code> comments.
+     * @return the first byte of the next token, or -1 at the end of input
+     */
+    private int skipWhitespaceAndComments() {
+        while(position < limit) {
+            int c = byteAt(position);
+
+            if(CHAR_CLASS[c] == CLASS_WHITESPACE) {
+                position++;
+            } else if(c == '/' && position + 1 < limit && byteAt(position + 1) == '*') {
+                // an unterminated comment runs to the end of the input
+                int end = position + 2;
+                while(end < limit && !(byteAt(end) == '*' && end + 1 < limit && byteAt(end + 1) == '/')) {
+                    end++;
+                }
+                position = Math.min(end + 2, limit);
+            } else {
+                return c;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Scan an identifier or keyword starting at the current position.
+     */
+    private TokenType scanIdentifier() {
+        int start = position;
+        TokenType type = TokenType.ID;
+
+        while(position < limit && CHAR_CLASS[byteAt(position)] == CLASS_LETTER) {
+            position++;
+        }
+
+        // if we find numbers then it's no longer an ID
+        while(position < limit && CHAR_CLASS[byteAt(position)] == CLASS_DIGIT) {
+            type = TokenType.UNKNOWN;
+            position++;
+        }
+
+        if(type == TokenType.ID) {
+            TokenType keyword = matchKeyword(start, position - start);
+            if(keyword != null) {
+                return keyword;
+            }
+
+            tokenSymbol = identifiers.intern(buffer, start, position);
+        }
+
+        return type;
+    }
+
+    /**
+     * Scan a literal starting at the current position.
+     */
+    private TokenType scanLiteral() {
+        TokenType type = TokenType.NUM;
+        long value = 0;
+
+        while(position < limit && CHAR_CLASS[byteAt(position)] == CLASS_DIGIT) {
+            value = value * 10 + (byteAt(position) - '0');
+            if(value > Integer.MAX_VALUE) {
+                // too big for an int literal
+                type = TokenType.UNKNOWN;
+                value = 0;
+            }
+            position++;
+        }
+
+        // if we find letters then it's no longer a number
+        while(position < limit && CHAR_CLASS[byteAt(position)] == CLASS_LETTER) {
+            type = TokenType.UNKNOWN;
+            position++;
+        }
+
+        tokenValue = (int) value;
+        return type;
+    }
+
+    /**
+     * Get the shared NUM token for <code>value</code>, creating it the first
+     * time the value is seen.
+     */
+    private Token literalToken(int value) {
+        int mask = literalTokens.length - 1;
+        for(int slot = literalSlot(value, mask); literalTokens[slot] != null; slot = (slot + 1) & mask) {
+            if(literalValues[slot] == value) {
+                return literalTokens[slot];
+            }
+        }
+
+        Token token = new Token(TokenType.NUM, Integer.valueOf(value), value, -1);
+        insertLiteral(value, token);
+
+        // keep the cache at most half full
+        if(literalCount * 2 > literalTokens.length) {
+            int[] oldValues = literalValues;
+            Token[] oldTokens = literalTokens;
+            literalValues = new int[oldValues.length * 2];
+            literalTokens = new Token[oldTokens.length * 2];
+            literalCount = 0;
+
+            for(int i = 0; i < oldTokens.length; i++) {
+                if(oldTokens[i] != null) {
+                    insertLiteral(oldValues[i], oldTokens[i]);
+                }
+            }
+        }
+
+        return token;
+    }
+
+    private void insertLiteral(int value, Token token) {
+        int mask = literalTokens.length - 1;
+        int slot = literalSlot(value, mask);
+        while(literalTokens[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+
+        literalValues[slot] = value;
+        literalTokens[slot] = token;
+        literalCount++;
+    }
+
+    private static int literalSlot(int value, int mask) {
+        return ((value * 0x9E3779B9) >>> 16) & mask;
+    }
+
+    /**
+     * Scan the symbol starting with the byte <code>c</code> at the current
+     * position.
+     */
+    private TokenType scanSymbol(int c) {
+        position++;
+        int next = (position < limit) ? byteAt(position) : -1;
+
+        switch(c) {
+            case '{':
+                return TokenType.LEFT_CURLY;
+            case '}':
+                return TokenType.RIGHT_CURLY;
+            case '[':
+                return TokenType.LEFT_SQUARE;
+            case ']':
+                return TokenType.RIGHT_SQUARE;
+            case '(':
+                return TokenType.LEFT_PAREN;
+            case ')':
+                return TokenType.RIGHT_PAREN;
+            case '<':
+                return followedBy('=', next) ? TokenType.LT_EQUAL : TokenType.LESS_THAN;
+            case '>':
+                return followedBy('=', next) ? TokenType.GT_EQUAL : TokenType.GREATER_THAN;
+            case '=':
+                return followedBy('=', next) ? TokenType.EQUAL : TokenType.ASSIGN;
+            case '!':
+                return followedBy('=', next) ? TokenType.NOT_EQUAL : TokenType.UNKNOWN;
+            case '/':
+                // comment openers were already consumed as whitespace
+                return TokenType.DIVIDE;
+            case '*':
+                // a stray comment closer is still reported so the parser rejects it
+                return followedBy('/', next) ? TokenType.END_COMMENT : TokenType.MULTIPLY;
+            case '+':
+                return TokenType.PLUS;
+            case '-':
+                return TokenType.MINUS;
+            case ';':
+                return TokenType.SEMICOLON;
+            case ',':
+                return TokenType.COMMA;
+            default:
+                return TokenType.UNKNOWN;
+        }
+    }
+
+    /**
+     * Consume the second character of a two character symbol if it matches.
+     */
+    private boolean followedBy(int expected, int next) {
+        if(next == expected) {
+            position++;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Check the <code>length</code> bytes at <code>start</code> against the
+     * C- keywords without building a String.
+     * @return the keyword type, or null if the bytes are an ordinary identifier
+     */
+    private TokenType matchKeyword(int start, int length) {
+        switch(length) {
+            case 2:
+                return matches(start, "if") ? TokenType.IF : null;
+            case 3:
+                return matches(start, "int") ? TokenType.INT : null;
+            case 4:
+                if(matches(start, "else")) return TokenType.ELSE;
+                if(matches(start, "void")) return TokenType.VOID;
+                return null;
+            case 5:
+                return matches(start, "while") ? TokenType.WHILE : null;
+            case 6:
+                return matches(start, "return") ? TokenType.RETURN : null;
+            default:
+                return null;
+        }
+    }
+
+    private boolean matches(int start, String keyword) {
+        for(int i = 0; i < keyword.length(); i++) {
+            if(byteAt(start + i) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private String text(int start, int end) {
+        char[] chars = new char[end - start];
+        for(int i = start; i < end; i++) {
+            chars[i - start] = (char) byteAt(i);
+        }
+
+        return new String(chars);
+    }
+
+    private int byteAt(int index) {
+        return buffer.get(index) & 0xFF;
+    }
+
+    /**
+     * Scan <code>filename</code> repeatedly and report throughput along with
+     * the bytes allocated per KB of source once the scanner is warm.
+     */
+    private static void benchmark(String filename, int runs) throws IOException {
+        ByteBuffer source = mapFile(filename);
+        java.lang.management.ThreadMXBean threads =
+            java.lang.management.ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations =
+            (threads instanceof com.sun.management.ThreadMXBean) ?
+                (com.sun.management.ThreadMXBean) threads : null;
+        long threadId = Thread.currentThread().getId();
+
+        // one scanner (and identifier table) per run, like a real compile
+        for(int run = 0; run < runs; run++) {
+            long allocatedBefore = (allocations == null) ? 0 : allocations.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+
+            MappedCMinusScanner scanner = new MappedCMinusScanner(source.duplicate());
+            int numTokens = 0;
+            while(scanner.getNextToken().getTokenType() != TokenType.EOF) {
+                numTokens++;
+            }
+
+            long elapsed = System.nanoTime() - start;
+            long allocated = (allocations == null) ? 0 : allocations.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            double kb = source.limit() / 1024.0;
+
+            System.out.printf("run %d: %d tokens, %.1f MB/s, %.1f bytes allocated per KB%n",
+                run, numTokens, source.limit() / (elapsed / 1e9) / (1024 * 1024), allocated / kb);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length > 0) {
+            benchmark(args[0], (args.length > 1) ? Integer.parseInt(args[1]) : 10);
+            return;
+        }
+
+        String testFile = "test4";
+        MappedCMinusScanner scanner = null;
+        try {
+            scanner = new MappedCMinusScanner(testFile + ".cm");
+        } catch (FileNotFoundException e) {
+            System.err.println("CMinus file not found.");
+            return;
+        }
+
+        PrintStream out = new PrintStream(new File(testFile + ".tok"));
+
+        Token t = scanner.getNextToken();
+        while(t.getTokenType() != TokenType.EOF) {
+            out.println(t);
+
+            t = scanner.getNextToken();
+        }
+        out.close();
+    }
+}
@@ -0,0 +1,228 @@
+package scanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Scans large C- sources on a ForkJoin pool.  The input is first split at
+ * top-level <code>;</code> and <code>}</code> characters (brace depth 0,
+ * outside comments), which can never fall inside a token, so every chunk can
+ * be lexed on its own.  Each chunk interns into a private IdentifierTable and
+ * the chunks are then stitched together in order, renumbering symbols as they
+ * go, so the result is token-for-token identical to
+ * <code>TokenStream.scan</code> on the whole input, symbol ids included.
+ */
+public class ParallelLexer {
+    // chunks smaller than this are not worth a task of their own
+    private static final int MIN_CHUNK_SIZE = 64 * 1024;
+
+    // chunks per worker, to even out chunks which lex slowly
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private static ForkJoinPool sharedPool = null;
+
+    /**
+     * The pool used when none is given, one worker per processor.
+     */
+    public static synchronized ForkJoinPool getPool() {
+        if(sharedPool == null) {
+            sharedPool = new ForkJoinPool();
+        }
+
+        return sharedPool;
+    }
+
+    /**
+     * Scan all of <code>buffer</code> on the shared pool.
+     */
+    public static TokenStream scan(ByteBuffer buffer) {
+        return scan(buffer, getPool());
+    }
+
+    /**
+     * Scan all of <code>buffer</code> on <code>pool</code>.  Inputs too small
+     * to split, or a pool with a single worker, are scanned on the calling
+     * thread.
+     */
+    public static TokenStream scan(ByteBuffer buffer, ForkJoinPool pool) {
+        if(pool.getParallelism() == 1) {
+            return TokenStream.scan(buffer);
+        }
+
+        int chunkSize = Math.max(MIN_CHUNK_SIZE,
+            buffer.remaining() / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        int[] splits = findSplitPoints(buffer, chunkSize);
+
+        if(splits.length <= 2) {
+            return TokenStream.scan(buffer);
+        }
+
+        TokenStream[] chunks = new TokenStream[splits.length - 1];
+        pool.invoke(new LexTask(buffer, splits, chunks, 0, chunks.length));
+
+        int total = 0;
+        for(TokenStream chunk : chunks) {
+            total += chunk.size();
+        }
+
+        // renumber each chunk's symbols in order of first appearance, just as
+        // a single sequential scan would have
+        IdentifierTable identifiers = new IdentifierTable();
+        TokenStream stream = new TokenStream(total, identifiers);
+        for(int i = 0; i < chunks.length; i++) {
+            IdentifierTable local = chunks[i].getIdentifiers();
+            int[] symbolMap = new int[local.size()];
+            for(int id = 0; id < symbolMap.length; id++) {
+                symbolMap[id] = identifiers.intern(local.getName(id));
+            }
+
+            stream.append(chunks[i], symbolMap, i == chunks.length - 1);
+        }
+
+        return stream;
+    }
+
+    /**
+     * Find the offsets to split <code>buffer</code> at, roughly every
+     * <code>chunkSize</code> bytes.  Splits fall just after a <code>;</code>
+     * or <code>}</code> at brace depth 0 which is not inside a comment, so a
+     * <code>chunkSize</code> of 1 splits between every pair of top-level
+     * declarations.
+     * @return the split offsets, starting with the buffer's position and ending
+     * with its limit
+     */
+    public static int[] findSplitPoints(ByteBuffer buffer, int chunkSize) {
+        int start = buffer.position();
+        int limit = buffer.limit();
+
+        int[] splits = new int[16];
+        int numSplits = 0;
+        splits[numSplits++] = start;
+
+        int next = start + chunkSize;
+        int depth = 0;
+        int i = start;
+        while(i < limit) {
+            int c = buffer.get(i) & 0xFF;
+
+            if(c == '/' && i + 1 < limit && buffer.get(i + 1) == '*') {
+                // skip the comment the same way the scanner does
+                i += 2;
+                while(i < limit && !(buffer.get(i) == '*' && i + 1 < limit && buffer.get(i + 1) == '/')) {
+                    i++;
+                }
+                i = Math.min(i + 2, limit);
+                continue;
+            }
+
+            if(c == '*' && i + 1 < limit && buffer.get(i + 1) == '/') {
+                // a stray comment closer is a single token
+                i += 2;
+                continue;
+            }
+
+            i++;
+            if(c == '{') {
+                depth++;
+            } else if(c == '}' || c == ';') {
+                if(c == '}' && depth > 0) {
+                    depth--;
+                }
+
+                if(depth == 0 && i >= next && i < limit) {
+                    if(numSplits == splits.length) {
+                        splits = Arrays.copyOf(splits, numSplits * 2);
+                    }
+                    splits[numSplits++] = i;
+                    next = i + chunkSize;
+                }
+            }
+        }
+
+        splits = Arrays.copyOf(splits, numSplits + 1);
+        splits[numSplits] = limit;
+        return splits;
+    }
+
+    /**
+     * Lexes the chunks between split <code>from</code> and split
+     * <code>to</code>, halving the range until there is a single chunk.
+     */
+    private static class LexTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private ByteBuffer buffer;
+        private int[] splits;
+        private TokenStream[] chunks;
+        private int from;
+        private int to;
+
+        LexTask(ByteBuffer buffer, int[] splits, TokenStream[] chunks, int from, int to) {
+            this.buffer = buffer;
+            this.splits = splits;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if(to - from == 1) {
+                ByteBuffer chunk = buffer.duplicate();
+                chunk.limit(splits[from + 1]);
+                chunk.position(splits[from]);
+                chunks[from] = TokenStream.scan(chunk);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LexTask(buffer, splits, chunks, from, middle),
+                          new LexTask(buffer, splits, chunks, middle, to));
+            }
+        }
+    }
+
+    /**
+     * Lex <code>filename</code> with 1 to N workers, checking the result
+     * against a sequential scan and reporting the speedup at each size.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length == 0) {
+            System.err.println("usage: ParallelLexer <file> [runs]");
+            return;
+        }
+
+        ByteBuffer source = MappedCMinusScanner.mapFile(args[0]);
+        int runs = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+        double mb = source.limit() / (1024.0 * 1024.0);
+
+        TokenStream expected = null;
+        long sequential = Long.MAX_VALUE;
+        for(int run = 0; run < runs; run++) {
+            long start = System.nanoTime();
+            expected = TokenStream.scan(source.duplicate());
+            sequential = Math.min(sequential, System.nanoTime() - start);
+        }
+        System.out.printf("sequential: %d tokens, %.1f ms, %.1f MB/s%n",
+            expected.size(), sequential / 1e6, mb / (sequential / 1e9));
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        for(int threads = 1; threads <= processors; threads++) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long best = Long.MAX_VALUE;
+            boolean same = true;
+
+            for(int run = 0; run < runs; run++) {
+                long start = System.nanoTime();
+                TokenStream tokens = scan(source.duplicate(), pool);
+                best = Math.min(best, System.nanoTime() - start);
+                same &= tokens.sameTokens(expected);
+            }
+            pool.shutdown();
+
+            System.out.printf("%d threads: %.1f ms, %.1f MB/s, speedup %.2fx%s%n",
+                threads, best / 1e6, mb / (best / 1e9), (double) sequential / best,
+                same ? "" : " (TOKENS DIFFER)");
+        }
+    }
+}
@@ -1,8 +1,19 @@
 package scanner;
 
 public class Token {
+	// one shared token for each type which carries no data
+	private static final Token[] SHARED = new Token[TokenType.values().length];
+
+	static {
+		for(TokenType type : TokenType.values()) {
+			SHARED[type.ordinal()] = new Token(type);
+		}
+	}
+
 	private TokenType tokenType;
 	private Object tokenData;
+	private int intValue;
+	private int symbol = -1;
 
 	public Token(TokenType type) {
 		this(type, null);
@@ -13,6 +24,26 @@ public class Token {
 		tokenData = data;
 	}
 	
+	/**
+	 * @param type the token type
+	 * @param data the token text
+	 * @param value the value of a NUM token
+	 * @param sym the symbol id of an ID token
+	 */
+	public Token(TokenType type, Object data, int value, int sym) {
+		this(type, data);
+		intValue = value;
+		symbol = sym;
+	}
+	
+	/**
+	 * Get the shared, data-less token for <code>type</code>.  Shared tokens
+	 * are used for keywords and punctuation and must not be modified.
+	 */
+	public static Token shared(TokenType type) {
+		return SHARED[type.ordinal()];
+	}
+	
 	public TokenType getTokenType() {
 		return tokenType;
 	}
@@ -21,6 +52,20 @@ public class Token {
 		return tokenData;
 	}
 	
+	/**
+	 * The value of a NUM token.
+	 */
+	public int getIntValue() {
+		return intValue;
+	}
+	
+	/**
+	 * The interned symbol id of an ID token, or -1 if it was never interned.
+	 */
+	public int getSymbol() {
+		return symbol;
+	}
+	
 	public void setTokenType(TokenType type) {
 		tokenType = type;
 	}
@@ -29,6 +74,10 @@ public class Token {
 		tokenData = data;
 	}
 	
+	public void setIntValue(int value) {
+		intValue = value;
+	}
+	
 	/**
 	 * Try to translate the identifier into a specific keyword token and 
 	 * and clear out their token data.
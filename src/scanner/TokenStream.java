@@ -0,0 +1,291 @@
+package scanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A buffer of scanned tokens held in parallel primitive arrays (type
+ * ordinals, NUM values, ID symbol ids and source offsets) rather than as Token
+ * objects.  The parser walks it with <code>peek</code> and
+ * <code>advance</code>, which are plain array reads, and may look any number
+ * of tokens ahead.
+ *
+ * A stream is either scanned from a buffer all at once or filled a chunk at a
+ * time from any other <code>Scanner</code> as the parser asks for tokens.
+ * Identifiers are always interned into the stream's
+ * <code>IdentifierTable</code>.  Past the last token the stream reports EOF
+ * forever.
+ */
+public class TokenStream {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    // tokens pulled from a Scanner per fill
+    private static final int CHUNK_SIZE = 1024;
+
+    private byte[] types;
+    private int[] values;
+    private int[] symbols;
+    private int[] offsets;
+    private int count = 0;
+    private int position = 0;
+
+    private IdentifierTable identifiers;
+
+    // where more tokens come from when the stream is filled lazily
+    private Scanner source = null;
+
+    TokenStream(int capacity, IdentifierTable identifiers) {
+        capacity = Math.max(capacity, 16);
+        types = new byte[capacity];
+        values = new int[capacity];
+        symbols = new int[capacity];
+        offsets = new int[capacity];
+        this.identifiers = identifiers;
+    }
+
+    /**
+     * Create a stream which pulls its tokens from <code>scanner</code> as
+     * they are needed.  Offsets are not known for tokens from a Scanner and
+     * are reported as -1.
+     */
+    public TokenStream(Scanner scanner) {
+        this(CHUNK_SIZE, (scanner instanceof MappedCMinusScanner) ?
+            ((MappedCMinusScanner) scanner).getIdentifiers() : new IdentifierTable());
+        source = scanner;
+    }
+
+    /**
+     * Scan all of <code>buffer</code> into a new stream.
+     */
+    public static TokenStream scan(ByteBuffer buffer) {
+        return scan(buffer, new IdentifierTable());
+    }
+
+    /**
+     * Scan all of <code>buffer</code> into a new stream, interning identifiers
+     * into <code>identifiers</code>.
+     */
+    public static TokenStream scan(ByteBuffer buffer, IdentifierTable identifiers) {
+        // C- averages well over three bytes a token
+        TokenStream stream = new TokenStream(buffer.remaining() / 3, identifiers);
+        MappedCMinusScanner scanner = new MappedCMinusScanner(buffer, identifiers);
+
+        TokenType type;
+        do {
+            type = scanner.scanNext();
+            stream.add(type, scanner.getTokenValue(), scanner.getTokenSymbol(), scanner.getTokenStart());
+        } while(type != TokenType.EOF);
+
+        return stream;
+    }
+
+    /**
+     * A stream over tokens <code>from</code> to <code>to</code> of this one,
+     * sharing its arrays, which reports EOF after the last of them.  Its
+     * positions still count from the start of this stream.
+     */
+    public TokenStream slice(int from, int to) {
+        fill(to - 1);
+
+        TokenStream slice = new TokenStream(0, identifiers);
+        slice.types = types;
+        slice.values = values;
+        slice.symbols = symbols;
+        slice.offsets = offsets;
+        slice.count = Math.min(to, count);
+        slice.position = from;
+        return slice;
+    }
+
+    /**
+     * Map and scan the whole of <code>filename</code>.
+     */
+    public static TokenStream scan(String filename) throws IOException {
+        return scan(MappedCMinusScanner.mapFile(filename));
+    }
+
+    public IdentifierTable getIdentifiers() {
+        return identifiers;
+    }
+
+    /**
+     * The type of the current token.
+     */
+    public TokenType peek() {
+        return peek(0);
+    }
+
+    /**
+     * The type of the token <code>k</code> places after the current one.
+     */
+    public TokenType peek(int k) {
+        int index = position + k;
+        if(index >= count && !fill(index)) {
+            return TokenType.EOF;
+        }
+
+        return TYPES[types[index]];
+    }
+
+    /**
+     * The type of the token at <code>index</code> in the stream, regardless of
+     * the current position.
+     */
+    public TokenType typeAt(int index) {
+        if(index >= count && !fill(index)) {
+            return TokenType.EOF;
+        }
+
+        return TYPES[types[index]];
+    }
+
+    /**
+     * Move on to the next token.
+     */
+    public void advance() {
+        if(position < count || fill(position)) {
+            position++;
+        }
+    }
+
+    /**
+     * The value of the current token, if it is a NUM.
+     */
+    public int intValue() {
+        return (peek() == TokenType.NUM) ? values[position] : 0;
+    }
+
+    /**
+     * The symbol id of the current token, if it is an ID, otherwise -1.
+     */
+    public int symbol() {
+        return (peek() == TokenType.ID) ? symbols[position] : -1;
+    }
+
+    /**
+     * The name of the current token, if it is an ID, otherwise null.
+     */
+    public String symbolName() {
+        int symbol = symbol();
+        return (symbol < 0) ? null : identifiers.getName(symbol);
+    }
+
+    /**
+     * Offset into the source of the current token, or -1 if it is not known.
+     */
+    public int offset() {
+        return (peek() == TokenType.EOF && position >= count) ? -1 : offsets[position];
+    }
+
+    /**
+     * Index of the current token in the stream.
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * Number of tokens buffered so far, including the final EOF once it has
+     * been reached.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Whether this stream holds exactly the same tokens, values, symbol ids
+     * and offsets as <code>other</code>.
+     */
+    public boolean sameTokens(TokenStream other) {
+        if(count != other.count) {
+            return false;
+        }
+
+        for(int i = 0; i < count; i++) {
+            if(types[i] != other.types[i] || values[i] != other.values[i] ||
+               symbols[i] != other.symbols[i] || offsets[i] != other.offsets[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Copy all of <code>chunk</code> onto the end of this stream, rewriting
+     * its symbol ids through <code>symbolMap</code>.  The EOF which ends the
+     * chunk is only kept if <code>last</code> is set.
+     */
+    void append(TokenStream chunk, int[] symbolMap, boolean last) {
+        int length = chunk.count;
+        if(!last && length > 0 && chunk.types[length - 1] == TokenType.EOF.ordinal()) {
+            length--;
+        }
+
+        if(count + length > types.length) {
+            int capacity = Math.max(types.length * 2, count + length);
+            types = Arrays.copyOf(types, capacity);
+            values = Arrays.copyOf(values, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+
+        System.arraycopy(chunk.types, 0, types, count, length);
+        System.arraycopy(chunk.values, 0, values, count, length);
+        System.arraycopy(chunk.offsets, 0, offsets, count, length);
+        for(int i = 0; i < length; i++) {
+            int symbol = chunk.symbols[i];
+            symbols[count + i] = (symbol < 0) ? symbol : symbolMap[symbol];
+        }
+        count += length;
+    }
+
+    private void add(TokenType type, int value, int symbol, int offset) {
+        if(count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            values = Arrays.copyOf(values, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+
+        types[count] = (byte) type.ordinal();
+        values[count] = value;
+        symbols[count] = symbol;
+        offsets[count] = offset;
+        count++;
+    }
+
+    /**
+     * Pull tokens from the source scanner until <code>index</code> is
+     * buffered, a chunk at a time.
+     * @return false if the input ends before <code>index</code>
+     */
+    private boolean fill(int index) {
+        while(index >= count) {
+            if(source == null) {
+                return false;
+            }
+
+            for(int i = 0; i < CHUNK_SIZE; i++) {
+                Token token = source.getNextToken();
+                TokenType type = token.getTokenType();
+
+                int symbol = -1;
+                if(type == TokenType.ID) {
+                    symbol = (token.getSymbol() >= 0) ? token.getSymbol() :
+                        identifiers.intern(String.valueOf(token.getTokenData()));
+                }
+                add(type, token.getIntValue(), symbol, -1);
+
+                if(type == TokenType.EOF) {
+                    source = null;
+                    break;
+                }
+            }
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,12 @@
+package x86codegen;
+
+  // thrown by X86RegisterAllocator when it gives up on a function before
+  // changing any of its opers, so the function can still be allocated some
+  // other way, such as by X86StackAllocator
+public class AllocationAbandonedException extends X86CodegenException{
+  private static final long serialVersionUID = 1L;
+
+  public AllocationAbandonedException(String msg) {
+    super (msg);
+  }
+}
@@ -2,6 +2,7 @@ package x86codegen;
 
 import lowlevel.*;
 import java.io.PrintWriter;
+import java.io.StringWriter;
 
 public class X86AssemblyGenerator {
 
@@ -25,28 +26,61 @@ public class X86AssemblyGenerator {
     for (CodeItem currItem = firstItem; currItem != null;
                                         currItem = currItem.getNextItem()) {
       if (currItem instanceof Data) {
-        if (state != DATA) {
-          outFile.println(".data");
-          state = DATA;
-        }
-        outFile.println(".comm\t" + ((Data) currItem).getName() + ",4,4");
-        outFile.println();
+        generateData((Data) currItem);
       }
       else {
-        Function func = (Function) currItem;
-        peepholeOpti(func);
-        generateFunction(func);
+        generateFunction((Function) currItem);
       }
     }
   }
 
-  private void generateFunction(Function func) {
+  /**
+   * Assemble a single function on its own, as generateAssembly would.
+   * @return the assembly text of the function, without the section directive
+   * which starts a run of functions
+   */
+  public static String assembleFunction(Function func) {
+    StringWriter text = new StringWriter();
+    X86AssemblyGenerator assembler =
+        new X86AssemblyGenerator(func, new PrintWriter(text));
+    assembler.peepholeOpti(func);
+    assembler.generateFunctionBody(func);
+    assembler.outFile.flush();
+    return text.toString();
+  }
+
+    /**
+     * Emit a function assembled earlier by assembleFunction.
+     */
+  public void generateFunction(String assembly) {
+    startFunctions();
+    outFile.print(assembly);
+  }
 
+  public void generateData(Data data) {
+    if (state != DATA) {
+      outFile.println(".data");
+      state = DATA;
+    }
+    outFile.println(".comm\t" + data.getName() + ",4,4");
+    outFile.println();
+  }
+
+  private void startFunctions() {
     if (state != FUNCTION) {
       outFile.println(".text");
       outFile.println("\t.align 4");
       state = FUNCTION;
     }
+  }
+
+  public void generateFunction(Function func) {
+    peepholeOpti(func);
+    startFunctions();
+    generateFunctionBody(func);
+  }
+
+  private void generateFunctionBody(Function func) {
     outFile.println(".globl  " + func.getName());
     outFile.println(func.getName() + ":");
 
@@ -118,6 +152,7 @@ public class X86AssemblyGenerator {
 
           case Operation.OPER_STORE_I:
               // movl   %ebx, (%eax)  or  movl $2, (%eax)  or movl %eax, a
+              // or  movl %ebx, -4(%ebp)
             outFile.print("\tmovl\t");
             src0 = currOper.getSrcOperand(0);
             if (src0.getType() == Operand.OPERAND_INT) {
@@ -126,6 +161,7 @@ public class X86AssemblyGenerator {
             else {
               outFile.print("%" + ((String)src0.getValue()));
             }
+            outFile.print(", ");
             Operand src2 = currOper.getSrcOperand(2);
             if (src2 != null) {
               if (src2.getType() == Operand.OPERAND_INT) {
@@ -137,13 +173,12 @@ public class X86AssemblyGenerator {
             }
             src1 = currOper.getSrcOperand(1);
             if (src1.getType() == Operand.OPERAND_MACRO) {
-              outFile.println(", (%" +
+              outFile.println("(%" +
                     ((String)src1.getValue()) + ")");
             }
               // else is global
             else {
-              outFile.println(", " +
-                    ((String)src1.getValue()));
+              outFile.println((String)src1.getValue());
             }
             break;
 
@@ -13,33 +13,37 @@ public class X86CodeGenerator {
   }
 
   public void convertToX86() {
-    x86ConvertFuncEntryAndExit();
-    x86ConvertReturnReg();
-    x86ConvertOperations();
+    for (CodeItem currItem = firstItem; currItem != null;
+                                          currItem = currItem.getNextItem()) {
+      if (currItem instanceof Data) {
+        continue;
+      }
+      convertToX86((Function) currItem);
+    }
   }
 
-  private void x86ConvertFuncEntryAndExit() {
+    // converts one function, touching nothing outside it
+  public void convertToX86(Function func) {
+    x86ConvertFuncEntryAndExit(func);
+    x86ConvertReturnReg(func);
+    x86ConvertOperations(func);
+  }
+
+  private void x86ConvertFuncEntryAndExit(Function func) {
 
     boolean foundEntry = false;
     boolean foundExit = false;
-    for (CodeItem currItem = firstItem; currItem != null;
-                                          currItem = currItem.getNextItem()) {
-      if (currItem instanceof Data) {
-        continue;
+    for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      if ( (currBlock.getFirstOper() != null) &&
+           (currBlock.getFirstOper().getType() == Operation.OPER_FUNC_ENTRY) ) {
+        x86ConvertFuncEntry(currBlock);
+        foundEntry = true;
       }
-      Function func = (Function) currItem;
-      for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
-                      currBlock = currBlock.getNextBlock()) {
-        if ( (currBlock.getFirstOper() != null) &&
-             (currBlock.getFirstOper().getType() == Operation.OPER_FUNC_ENTRY) ) {
-          x86ConvertFuncEntry(currBlock);
-          foundEntry = true;
-        }
-        else if ( (currBlock.getFirstOper() != null) &&
-                  (currBlock.getFirstOper().getType() == Operation.OPER_FUNC_EXIT)) {
-          x86ConvertFuncExit(currBlock);
-          foundExit = true;
-        }
+      else if ( (currBlock.getFirstOper() != null) &&
+                (currBlock.getFirstOper().getType() == Operation.OPER_FUNC_EXIT)) {
+        x86ConvertFuncExit(currBlock);
+        foundExit = true;
       }
     }
 
@@ -92,8 +96,7 @@ public class X86CodeGenerator {
     int paramOffset = FIRST_PARAM_OFFSET + frameSize;
     for (FuncParam currParam = func.getfirstParam(); currParam != null;
                           currParam = currParam.getNextParam() ) {
-      String name = currParam.getName();
-      int regNum = ((Integer) func.getTable().get(name)).intValue();
+      int regNum = currParam.getRegNum();
       Operation loadOper = new Operation(Operation.OPER_LOAD_I,block);
       src0 = new Operand(Operand.OPERAND_MACRO, "ESP");
       loadOper.setSrcOperand(0,src0);
@@ -131,110 +134,96 @@ public class X86CodeGenerator {
     block.insertOperAfter(oper1, oper2);
   }
 
-  private void x86ConvertReturnReg() {
-    for (CodeItem currItem = firstItem; currItem != null;
-                                        currItem = currItem.getNextItem()) {
-      if (currItem instanceof Data) {
-        continue;
-      }
-      Function func = (Function) currItem;
-      for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
-                      currBlock = currBlock.getNextBlock()) {
-        for (Operation currOper = currBlock.getFirstOper(); currOper != null;
-                      currOper = currOper.getNextOper()) {
-
-          for (int i=0; i < Operation.MAX_DEST_OPERANDS; i++) {
-            Operand currOperand = currOper.getDestOperand(i);
-            if ( (currOperand != null) &&
-                 (currOperand.getType() == Operand.OPERAND_MACRO) ) {
-              if ( ((String)currOperand.getValue()).compareTo("RetReg") == 0) {
-                currOperand.setValue(new String("EAX"));
-              }
+  private void x86ConvertReturnReg(Function func) {
+    for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      for (Operation currOper = currBlock.getFirstOper(); currOper != null;
+                    currOper = currOper.getNextOper()) {
+
+        for (int i=0; i < Operation.MAX_DEST_OPERANDS; i++) {
+          Operand currOperand = currOper.getDestOperand(i);
+          if ( (currOperand != null) &&
+               (currOperand.getType() == Operand.OPERAND_MACRO) ) {
+            if ( ((String)currOperand.getValue()).compareTo("RetReg") == 0) {
+              currOperand.setValue(new String("EAX"));
             }
           }
+        }
 
-            // update for uses
-          for (int i=0; i < Operation.MAX_SRC_OPERANDS; i++) {
-            Operand currOperand = currOper.getSrcOperand(i);
-            if ( (currOperand != null) &&
-                 (currOperand.getType() == Operand.OPERAND_MACRO) ) {
-              if ( ((String)currOperand.getValue()).compareTo("RetReg") == 0) {
-                currOperand.setValue(new String("EAX"));
-              }
+          // update for uses
+        for (int i=0; i < Operation.MAX_SRC_OPERANDS; i++) {
+          Operand currOperand = currOper.getSrcOperand(i);
+          if ( (currOperand != null) &&
+               (currOperand.getType() == Operand.OPERAND_MACRO) ) {
+            if ( ((String)currOperand.getValue()).compareTo("RetReg") == 0) {
+              currOperand.setValue(new String("EAX"));
             }
           }
         }
       }
     }
   }
-  private void x86ConvertOperations() {
-    for (CodeItem currItem = firstItem; currItem != null;
-                                        currItem = currItem.getNextItem()) {
-      if (currItem instanceof Data) {
-        continue;
-      }
-      Function func = (Function) currItem;
-      for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
-                      currBlock = currBlock.getNextBlock()) {
-        for (Operation currOper = currBlock.getFirstOper(); currOper != null;
-                      currOper = currOper.getNextOper()) {
-          switch (currOper.getType()) {
-            case Operation.OPER_ASSIGN:
-              x86ConvertAssignOper(currOper);
-              break;
-            case Operation.OPER_LT:
-            case Operation.OPER_LTE:
-            case Operation.OPER_GT:
-            case Operation.OPER_GTE:
-            case Operation.OPER_EQUAL:
-            case Operation.OPER_NOTEQ:
-              x86ConvertComparisonOper(currOper);
-              break;
-            case Operation.OPER_BEQ:
-            case Operation.OPER_BNE:
-              x86ConvertBranchOper(currOper);
-              break;
-            case Operation.OPER_PASS:
-              x86ConvertPassOper(currOper);
-              break;
-            case Operation.OPER_MUL_I:
-              x86ConvertMulOper(currOper);
-              break;
-            case Operation.OPER_DIV_I:
-              x86ConvertDivOper(currOper);
-              break;
-            case Operation.OPER_ADD_I:
-              x86ConvertAddOper(currOper);
-              break;
-            case Operation.OPER_SUB_I:
-              x86ConvertSubOper(currOper);
-              break;
-            case Operation.OPER_CALL:
-              x86ConvertCallOper(currOper);
-              break;
-            case Operation.OPER_UNKNOWN:
-            case Operation.OPER_FUNC_ENTRY:
-            case Operation.OPER_FUNC_EXIT:
-            case Operation.OPER_RETURN:
-            case Operation.OPER_JMP:
-            case Operation.OPER_LOAD_I:
-            case Operation.OPER_STORE_I:
-            case Operation.X86_OPER_PUSH:
-            case Operation.X86_OPER_POP:
-            case Operation.X86_OPER_MOV:
-            case Operation.X86_OPER_CMP:
-            case Operation.X86_OPER_BEQ:
-            case Operation.X86_OPER_BNE:
-            case Operation.X86_OPER_BLT:
-            case Operation.X86_OPER_BLE:
-            case Operation.X86_OPER_BGT:
-            case Operation.X86_OPER_BGE:
-            case Operation.X86_OPER_MUL_I:
-            case Operation.X86_OPER_DIV_I:
-              break;
-            default:
-              throw new X86CodegenException("convertOper: unexpected op type");
-          }
+  private void x86ConvertOperations(Function func) {
+    for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      for (Operation currOper = currBlock.getFirstOper(); currOper != null;
+                    currOper = currOper.getNextOper()) {
+        switch (currOper.getType()) {
+          case Operation.OPER_ASSIGN:
+            x86ConvertAssignOper(currOper);
+            break;
+          case Operation.OPER_LT:
+          case Operation.OPER_LTE:
+          case Operation.OPER_GT:
+          case Operation.OPER_GTE:
+          case Operation.OPER_EQUAL:
+          case Operation.OPER_NOTEQ:
+            x86ConvertComparisonOper(currOper);
+            break;
+          case Operation.OPER_BEQ:
+          case Operation.OPER_BNE:
+            x86ConvertBranchOper(currOper);
+            break;
+          case Operation.OPER_PASS:
+            x86ConvertPassOper(currOper);
+            break;
+          case Operation.OPER_MUL_I:
+            x86ConvertMulOper(currOper);
+            break;
+          case Operation.OPER_DIV_I:
+            x86ConvertDivOper(currOper);
+            break;
+          case Operation.OPER_ADD_I:
+            x86ConvertAddOper(currOper);
+            break;
+          case Operation.OPER_SUB_I:
+            x86ConvertSubOper(currOper);
+            break;
+          case Operation.OPER_CALL:
+            x86ConvertCallOper(currOper);
+            break;
+          case Operation.OPER_UNKNOWN:
+          case Operation.OPER_FUNC_ENTRY:
+          case Operation.OPER_FUNC_EXIT:
+          case Operation.OPER_RETURN:
+          case Operation.OPER_JMP:
+          case Operation.OPER_LOAD_I:
+          case Operation.OPER_STORE_I:
+          case Operation.X86_OPER_PUSH:
+          case Operation.X86_OPER_POP:
+          case Operation.X86_OPER_MOV:
+          case Operation.X86_OPER_CMP:
+          case Operation.X86_OPER_BEQ:
+          case Operation.X86_OPER_BNE:
+          case Operation.X86_OPER_BLT:
+          case Operation.X86_OPER_BLE:
+          case Operation.X86_OPER_BGT:
+          case Operation.X86_OPER_BGE:
+          case Operation.X86_OPER_MUL_I:
+          case Operation.X86_OPER_DIV_I:
+            break;
+          default:
+            throw new X86CodegenException("convertOper: unexpected op type");
         }
       }
     }
@@ -17,12 +17,31 @@ public class X86RegisterAllocator {
   private LinkedList spilledRegs;
   private int []regMap;
   private boolean []usedRegs;
+    // whether live ranges, the interference graph and allocation decisions
+    // are printed
+  private boolean printDebug = true;
+    // System.nanoTime() past which a function is abandoned, or 0 for none
+  private long deadline = 0;
+    // nums of the opers whose defs are never used; they are only deleted
+    // once the function can no longer be abandoned
+  private BitArraySet unusedDefs;
 
   public X86RegisterAllocator(CodeItem first, int numRegs) {
     firstItem = first;
     availableRegs = numRegs;
   }
 
+  public void setPrintDebug(boolean print) {
+    printDebug = print;
+  }
+
+    // sets when to give up on the function being allocated.  Until physical
+    // regs are assigned, allocation is abandoned with an
+    // AllocationAbandonedException once the deadline has passed
+  public void setDeadline(long nanoTime) {
+    deadline = nanoTime;
+  }
+
   public void performAllocation () {
       // opers are now annotated with liveness, so we can compute live ranges
       // from them
@@ -37,33 +56,66 @@ public class X86RegisterAllocator {
       if (currItem instanceof Data) {
         continue;
       }
-      Function func = (Function) currItem;
+      performAllocation((Function) currItem);
+    }
+
+  }
 
-      computeLiveRanges(func);
+    // allocates one function.  The fields above hold the state of the
+    // function being allocated, so functions allocated at the same time
+    // each need their own allocator
+  public void performAllocation (Function func) {
 
-        // remove opers where reg defined isn't used
-      removeUnusedDefs(func);
+    checkDeadline("liveness");
+    computeLiveRanges(func);
 
-      computeInterferenceGraph(func);
-        // make lists of regs spilled and allocated
+      // find opers where reg defined isn't used
+    findUnusedDefs(func);
 
-      determineAllocationOrderAndSpills(func);
-        // makes BitArraySet for 8 physical regs, for use by assignRegisters
-      computeLiveRangesForPhysicalRegs(func);
-        // for regs chosen for allocation, try to find an avail physical regs
-      assignPhysicalRegs(func);
-        // inside opers, convert virtual regs to x86 physical regs
-      annotateRegisters(func);
-        // need to insert push and pop for callee save, and adjust offsets to
-        // incoming params
-      updateForCalleeSave(func);
-        // for regs chosen for spill, insert spill code
-      annotateSpills(func);
+    checkDeadline("live ranges");
+    computeInterferenceGraph(func);
+      // make lists of regs spilled and allocated
 
-        // check that no virtual regs still exist
-      checkForUnallocatedRegs(func);
+    checkDeadline("interference graph");
+    determineAllocationOrderAndSpills(func);
+      // no oper has been changed yet, so a function we can't allocate is
+      // abandoned here or in assignPhysicalRegs rather than half rewritten
+    if (! spilledRegs.isEmpty()) {
+      throw new AllocationAbandonedException("RegAlloc: we don't handle spills yet");
     }
+      // makes BitArraySet for 8 physical regs, for use by assignRegisters
+    computeLiveRangesForPhysicalRegs(func);
+      // for regs chosen for allocation, try to find an avail physical regs
+    assignPhysicalRegs(func);
+      // the function is now sure to be allocated, so drop the dead defs
+    removeUnusedDefs(func);
+      // inside opers, convert virtual regs to x86 physical regs
+    annotateRegisters(func);
+      // need to insert push and pop for callee save, and adjust offsets to
+      // incoming params
+    updateForCalleeSave(func);
+      // for regs chosen for spill, insert spill code
+    annotateSpills(func);
+
+      // check that no virtual regs still exist
+    checkForUnallocatedRegs(func);
+
+      // the interference graph grows with the square of the regs, so don't
+      // hold on to it past this function
+    liveRanges = null;
+    physicalLiveRanges = null;
+    interferenceGraph = null;
+    allocatedRegs = null;
+    spilledRegs = null;
+    regMap = null;
+    usedRegs = null;
+    unusedDefs = null;
+  }
 
+  private void checkDeadline(String phase) {
+    if ( (deadline != 0) && (System.nanoTime() - deadline > 0) ) {
+      throw new AllocationAbandonedException("RegAlloc: out of time after " + phase);
+    }
   }
 
   private void computeLiveRanges(Function func) {
@@ -94,6 +146,9 @@ public class X86RegisterAllocator {
       }
     }
 
+    if (!printDebug) {
+      return;
+    }
     for (int i = 0; i < func.getMaxRegNum()+1; i++) {
       if (! liveRanges[i].isEmpty()) {
         System.out.println("For reg "+i+" live range is:");
@@ -108,7 +163,8 @@ public class X86RegisterAllocator {
   }
 
 
-  private void removeUnusedDefs(Function func) {
+  private void findUnusedDefs(Function func) {
+    unusedDefs = new BitArraySet(func.getMaxOperNum()+1);
       // looking for reg defs which aren't in the liverange of the next oper
     for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
                     currBlock = currBlock.getNextBlock()) {
@@ -153,7 +209,24 @@ public class X86RegisterAllocator {
           }
         }
         if (foundRegDest && canDelete) {
-          System.out.println("RegAlloc Deleted Oper #" + currOper.getNum());
+          unusedDefs.add(currOper.getNum());
+        }
+      }
+    }
+  }
+
+  private void removeUnusedDefs(Function func) {
+    for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      Operation nextOper = null;
+      for (Operation currOper = currBlock.getFirstOper(); currOper != null;
+                    currOper = nextOper) {
+          // we do this manually because a delete might mess up the list
+        nextOper = currOper.getNextOper();
+        if (unusedDefs.contains(currOper.getNum())) {
+          if (printDebug) {
+            System.out.println("RegAlloc Deleted Oper #" + currOper.getNum());
+          }
           currOper.delete();
         }
       }
@@ -175,15 +248,21 @@ public class X86RegisterAllocator {
         if (! liveRanges[i].intersect(liveRanges[j]).isEmpty() ) {
           interferenceGraph[i][j] = 1;
           interferenceGraph[j][i] = 1;
-          System.out.print("1  ");
+          if (printDebug) {
+            System.out.print("1  ");
+          }
         }
         else {
           interferenceGraph[i][j] = 0;
           interferenceGraph[j][i] = 0;
-          System.out.print("0  ");
+          if (printDebug) {
+            System.out.print("0  ");
+          }
         }
       }
-      System.out.println();
+      if (printDebug) {
+        System.out.println();
+      }
     }
   }
 
@@ -243,6 +322,7 @@ public class X86RegisterAllocator {
     int oldNumConflicts;
 
     while (numConflictingRegs > 0) {
+      checkDeadline("a round of allocation ordering");
 
       oldNumConflicts = numConflictingRegs;
       boolean somethingPulledOff = true;
@@ -299,6 +379,9 @@ public class X86RegisterAllocator {
       }
     }
 
+    if (!printDebug) {
+      return;
+    }
     Iterator allocateIterator = allocatedRegs.iterator();
     System.out.println("Allocated regs:");
     while (allocateIterator.hasNext()) {
@@ -347,6 +430,10 @@ public class X86RegisterAllocator {
         // walk backwards through opers
       for (Operation currOper = currBlock.getLastOper(); currOper != null;
                     currOper = currOper.getPrevOper()) {
+          // the unused defs are not deleted yet, but are as good as gone
+        if (unusedDefs.contains(currOper.getNum())) {
+          continue;
+        }
 
         for (int i=0; i < Operation.MAX_DEST_OPERANDS; i++) {
           Operand currOperand = currOper.getDestOperand(i);
@@ -495,7 +582,7 @@ public class X86RegisterAllocator {
         }
       }
       if (! foundReg) {
-        throw new X86CodegenException("RegAlloc: unable to match physical reg");
+        throw new AllocationAbandonedException("RegAlloc: unable to match physical reg");
       }
     }
 
@@ -0,0 +1,230 @@
+package x86codegen;
+
+import lowlevel.*;
+
+  // The allocator for -O0.  Instead of computing live ranges and coloring an
+  // interference graph, it gives every virtual reg its own stack slot in the
+  // frame, and around each oper loads the regs it reads into scratch regs
+  // and stores the regs it writes back.  Nothing stays in a register from
+  // one oper to the next, so it needs neither the control flow graph nor
+  // liveness, and its cost is linear in the size of the function.
+public class X86StackAllocator {
+
+    // scratch regs, in the order they are handed out within an oper.  ECX is
+    // never named by the code generator; the others are callee save, so are
+    // saved in the prologue if used
+  private static final String[] SCRATCH_REGS = { "ECX", "EBX", "ESI", "EDI" };
+
+  private CodeItem firstItem;
+
+  public X86StackAllocator(CodeItem first) {
+    firstItem = first;
+  }
+
+  public void performAllocation () {
+    for (CodeItem currItem = firstItem; currItem != null;
+                                        currItem = currItem.getNextItem()) {
+      if (currItem instanceof Data) {
+        continue;
+      }
+      performAllocation((Function) currItem);
+    }
+  }
+
+    // allocates one function, touching nothing outside it
+  public void performAllocation (Function func) {
+      // slot numbers are given out in order of first appearance, so the frame
+      // only holds regs which are actually used
+    int []slots = new int[func.getMaxRegNum()+1];
+    int numSlots = 0;
+    boolean []usedScratch = new boolean[SCRATCH_REGS.length];
+
+    for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      Operation nextOper;
+      for (Operation currOper = currBlock.getFirstOper(); currOper != null;
+                    currOper = nextOper) {
+          // we insert stores after currOper, so remember where to go next
+        nextOper = currOper.getNextOper();
+
+          // the virtual reg held in each scratch reg for this oper
+        int []scratchReg = new int[SCRATCH_REGS.length];
+        for (int i=0; i < SCRATCH_REGS.length; i++) {
+          scratchReg[i] = isNamed(currOper, SCRATCH_REGS[i]) ? -2 : -1;
+        }
+
+          // uses are loaded from their slots before the oper
+        for (int i=0; i < Operation.MAX_SRC_OPERANDS; i++) {
+          Operand currOperand = currOper.getSrcOperand(i);
+          if ( (currOperand == null) ||
+               (currOperand.getType() != Operand.OPERAND_REG) ) {
+            continue;
+          }
+          int regNum = ( (Integer) currOperand.getValue()).intValue();
+          if (slots[regNum] == 0) {
+            slots[regNum] = ++numSlots;
+          }
+          int scratch = findScratch(scratchReg, regNum);
+          if (scratchReg[scratch] != regNum) {
+            scratchReg[scratch] = regNum;
+            currBlock.insertOperBefore(currOper,
+                makeLoad(currBlock, SCRATCH_REGS[scratch], slots[regNum]));
+          }
+          usedScratch[scratch] = true;
+          currOper.setSrcOperand(i,
+              new Operand(Operand.OPERAND_MACRO, SCRATCH_REGS[scratch]));
+        }
+
+          // defs are stored to their slots after it.  A def which is also a
+          // use keeps the same scratch reg, as the x86 two address forms need;
+          // any other def can reuse a scratch reg the uses were loaded into,
+          // since they have been read by the time it is written
+        int []destScratchReg = new int[SCRATCH_REGS.length];
+        for (int i=0; i < SCRATCH_REGS.length; i++) {
+          destScratchReg[i] = (scratchReg[i] == -2) ? -2 : -1;
+        }
+        for (int i=0; i < Operation.MAX_DEST_OPERANDS; i++) {
+          Operand currOperand = currOper.getDestOperand(i);
+          if ( (currOperand == null) ||
+               (currOperand.getType() != Operand.OPERAND_REG) ) {
+            continue;
+          }
+          int regNum = ( (Integer) currOperand.getValue()).intValue();
+          if (slots[regNum] == 0) {
+            slots[regNum] = ++numSlots;
+          }
+          int scratch = -1;
+          for (int j=0; j < SCRATCH_REGS.length; j++) {
+            if (scratchReg[j] == regNum) {
+              scratch = j;
+            }
+          }
+          if (scratch < 0) {
+            scratch = findScratch(destScratchReg, regNum);
+          }
+          destScratchReg[scratch] = regNum;
+          usedScratch[scratch] = true;
+          currOper.setDestOperand(i,
+              new Operand(Operand.OPERAND_MACRO, SCRATCH_REGS[scratch]));
+          currBlock.insertOperAfter(currOper,
+              makeStore(currBlock, SCRATCH_REGS[scratch], slots[regNum]));
+        }
+      }
+    }
+
+    buildFrame(func, numSlots, usedScratch);
+  }
+
+    // the scratch reg already holding regNum, else the first free one
+  private int findScratch(int []scratchReg, int regNum) {
+    for (int i=0; i < scratchReg.length; i++) {
+      if (scratchReg[i] == regNum) {
+        return i;
+      }
+    }
+    for (int i=0; i < scratchReg.length; i++) {
+      if (scratchReg[i] == -1) {
+        return i;
+      }
+    }
+    throw new X86CodegenException("StackAlloc: out of scratch regs");
+  }
+
+  private boolean isNamed(Operation oper, String macro) {
+    for (int i=0; i < Operation.MAX_DEST_OPERANDS; i++) {
+      Operand currOperand = oper.getDestOperand(i);
+      if ( (currOperand != null) &&
+           (currOperand.getType() == Operand.OPERAND_MACRO) &&
+           macro.equals(currOperand.getValue()) ) {
+        return true;
+      }
+    }
+    for (int i=0; i < Operation.MAX_SRC_OPERANDS; i++) {
+      Operand currOperand = oper.getSrcOperand(i);
+      if ( (currOperand != null) &&
+           (currOperand.getType() == Operand.OPERAND_MACRO) &&
+           macro.equals(currOperand.getValue()) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+    // slot n lives at -4n(%EBP)
+  private Operation makeLoad(BasicBlock block, String scratch, int slot) {
+    Operation load = new Operation(Operation.OPER_LOAD_I, block);
+    load.setSrcOperand(0, new Operand(Operand.OPERAND_MACRO, "EBP"));
+    load.setSrcOperand(1, new Operand(Operand.OPERAND_INT, new Integer(-4 * slot)));
+    load.setDestOperand(0, new Operand(Operand.OPERAND_MACRO, scratch));
+    return load;
+  }
+
+  private Operation makeStore(BasicBlock block, String scratch, int slot) {
+    Operation store = new Operation(Operation.OPER_STORE_I, block);
+    store.setSrcOperand(0, new Operand(Operand.OPERAND_MACRO, scratch));
+    store.setSrcOperand(1, new Operand(Operand.OPERAND_MACRO, "EBP"));
+    store.setSrcOperand(2, new Operand(Operand.OPERAND_INT, new Integer(-4 * slot)));
+    return store;
+  }
+
+  private void buildFrame(Function func, int numSlots, boolean []usedScratch) {
+      // 3 things to do:
+      // 1. make room for the slots below the saved EBP in block0
+      // 2. read incoming params through EBP, since ESP has moved
+      // 3. save and restore the callee save scratch regs used
+    BasicBlock firstBlock = func.getFirstBlock();
+
+      // the 2nd oper should be the movl %esp, %ebp
+    Operation insertOper = firstBlock.getFirstOper().getNextOper();
+    if ((insertOper == null) ||
+        (insertOper.getType() != Operation.X86_OPER_MOV) ||
+        (insertOper.getDestOperand(0) == null) ||
+        (((String)insertOper.getDestOperand(0).getValue()).compareTo("EBP") != 0) ) {
+      throw new X86CodegenException("stackalloc: frame setup confused");
+    }
+
+    for (Operation currOper = insertOper.getNextOper(); currOper != null;
+                   currOper = currOper.getNextOper()) {
+      Operand base = currOper.getSrcOperand(0);
+      if ( (currOper.getType() == Operation.OPER_LOAD_I) &&
+           (base != null) && (base.getType() == Operand.OPERAND_MACRO) &&
+           "ESP".equals(base.getValue()) ) {
+        currOper.setSrcOperand(0, new Operand(Operand.OPERAND_MACRO, "EBP"));
+      }
+    }
+
+      // pushes go in after the sub, in reverse, so they end up in order
+    for (int i = SCRATCH_REGS.length-1; i > 0; i--) {
+      if (usedScratch[i]) {
+        Operation push = new Operation(Operation.X86_OPER_PUSH, firstBlock);
+        push.setSrcOperand(0, new Operand(Operand.OPERAND_MACRO, SCRATCH_REGS[i]));
+        firstBlock.insertOperAfter(insertOper, push);
+      }
+    }
+    if (numSlots > 0) {
+      Operation sub = new Operation(Operation.OPER_SUB_I, firstBlock);
+      sub.setSrcOperand(0, new Operand(Operand.OPERAND_MACRO, "ESP"));
+      sub.setSrcOperand(1, new Operand(Operand.OPERAND_INT, new Integer(4 * numSlots)));
+      sub.setDestOperand(0, new Operand(Operand.OPERAND_MACRO, "ESP"));
+      firstBlock.insertOperAfter(insertOper, sub);
+    }
+
+      // pops go in before the movl %ebp, %esp of the return block
+    for (BasicBlock currBlock = func.getFirstBlock(); currBlock != null;
+                    currBlock = currBlock.getNextBlock()) {
+      if (currBlock.getLastOper() == null ||
+          currBlock.getLastOper().getType() != Operation.OPER_RETURN) {
+        continue;
+      }
+      Operation firstOper = currBlock.getFirstOper();
+      for (int i = 1; i < SCRATCH_REGS.length; i++) {
+        if (usedScratch[i]) {
+          Operation pop = new Operation(Operation.X86_OPER_POP, currBlock);
+          pop.setDestOperand(0, new Operand(Operand.OPERAND_MACRO, SCRATCH_REGS[i]));
+          currBlock.insertOperBefore(firstOper, pop);
+          firstOper = pop;
+        }
+      }
+    }
+  }
+}